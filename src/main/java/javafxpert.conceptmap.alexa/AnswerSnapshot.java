@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only, memory-mapped snapshot of the answers to the most asked questions, written ahead
+ * of time by {@link AnswerSnapshotBuilder}, so they can be given without calling ConceptMap. Like
+ * a {@link LabelDictionary}, the file stays off-heap and is only paged in as it's read, and a
+ * lookup is a binary search over its sorted keys.
+ * <p>
+ * The file is laid out as:
+ * <pre>
+ *   int   magic "CMAS"
+ *   int   format version
+ *   long  when the snapshot was built, in epoch millis
+ *   int   entry count
+ *   int[] offset of each entry, in key order
+ *   entries of: unsigned short key length, UTF-8 key bytes, long when the answer was fetched,
+ *     int numeric Q-ID, unsigned short picture URL length, UTF-8 picture URL bytes, int label
+ *     count, then for each label its int numeric Q-ID, unsigned short length and UTF-8 bytes
+ * </pre>
+ * A key is the normalized item name and the relationship's name, separated by a tab, and keys are
+ * sorted by their unsigned UTF-8 bytes. The picture URL is the resolved target of the item's
+ * picture, or empty if it has none.
+ */
+public class AnswerSnapshot {
+  static final int MAGIC = 0x434d4153;
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 20;
+
+  private final File file;
+  private final MappedByteBuffer buffer;
+  private final long builtAtMillis;
+  private final int count;
+
+  private AnswerSnapshot(File file, MappedByteBuffer buffer) throws IOException {
+    this.file = file;
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+      throw new IOException(file + " is not an answer snapshot");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException(file + " has unsupported version " + buffer.getInt(4));
+    }
+    this.builtAtMillis = buffer.getLong(8);
+    this.count = buffer.getInt(16);
+  }
+
+  /**
+   * Map a snapshot file into memory
+   *
+   * @throws IOException if the file couldn't be mapped or isn't an answer snapshot
+   */
+  public static AnswerSnapshot open(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      // The mapping outlives the channel, so the file can be closed straight away
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new AnswerSnapshot(file, buffer);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * @return the answer for the item and relationship, or null if the snapshot doesn't hold it
+   */
+  public Answer lookup(String itemName, Relationship relationship) {
+    byte[] key = toKey(itemName, relationship.getName()).getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int entryOffset = buffer.getInt(HEADER_BYTES + mid * 4);
+      int comparison = LabelDictionary.compareKey(buffer, entryOffset, key);
+      if (comparison < 0) {
+        low = mid + 1;
+      }
+      else if (comparison > 0) {
+        high = mid - 1;
+      }
+      else {
+        return readAnswer(entryOffset + 2 + key.length);
+      }
+    }
+    return null;
+  }
+
+  private Answer readAnswer(int offset) {
+    long fetchedAtMillis = buffer.getLong(offset);
+    int numericItemId = buffer.getInt(offset + 8);
+    offset += 12;
+    String pictureUrl = readString(buffer, offset);
+    offset += 2 + (buffer.getShort(offset) & 0xffff);
+
+    int labelCount = buffer.getInt(offset);
+    offset += 4;
+    ClaimsInfo claimsInfo = new ClaimsInfo();
+    for (int i = 0; i < labelCount; i++) {
+      int labelItemId = buffer.getInt(offset);
+      String label = readString(buffer, offset + 4);
+      offset += 6 + (buffer.getShort(offset + 4) & 0xffff);
+      claimsInfo.addItem(labelItemId, label);
+    }
+    claimsInfo.trimToSize();
+    return new Answer(ItemInfo.toId(numericItemId),
+        pictureUrl.length() > 0 ? pictureUrl : null, fetchedAtMillis, claimsInfo);
+  }
+
+  private static String readString(ByteBuffer buffer, int offset) {
+    int length = buffer.getShort(offset) & 0xffff;
+    byte[] bytes = new byte[length];
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset + 2);
+    slice.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Make the key for an item and relationship the same way for building and looking up the
+   * snapshot
+   */
+  static String toKey(String itemName, String relationshipName) {
+    return LabelDictionary.normalize(itemName) + '\t' + relationshipName;
+  }
+
+  /**
+   * Read the whole file into memory now, so lookups don't wait for it to be paged in
+   */
+  public void preload() {
+    buffer.load();
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public long getBuiltAtMillis() {
+    return builtAtMillis;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "AnswerSnapshot{" +
+        "file=" + file +
+        ", count=" + count +
+        ", builtAtMillis=" + builtAtMillis +
+        '}';
+  }
+
+  /**
+   * The claims, Item ID and picture for an item and relationship, as they were when fetched
+   */
+  public static class Answer {
+    private final String itemId;
+    private final String pictureUrl;
+    private final long fetchedAtMillis;
+    private final ClaimsInfo claimsInfo;
+
+    Answer(String itemId, String pictureUrl, long fetchedAtMillis, ClaimsInfo claimsInfo) {
+      this.itemId = itemId;
+      this.pictureUrl = pictureUrl;
+      this.fetchedAtMillis = fetchedAtMillis;
+      this.claimsInfo = claimsInfo;
+    }
+
+    public String getItemId() {
+      return itemId;
+    }
+
+    /**
+     * @return the resolved picture URL for the card, or null if the item has none
+     */
+    public String getPictureUrl() {
+      return pictureUrl;
+    }
+
+    public long getFetchedAtMillis() {
+      return fetchedAtMillis;
+    }
+
+    public ClaimsInfo getClaimsInfo() {
+      return claimsInfo;
+    }
+
+    /**
+     * @return whether the answer is older than the given age, and should be fetched again
+     */
+    public boolean isStale(long maxAgeMillis) {
+      return System.currentTimeMillis() - fetchedAtMillis > maxAgeMillis;
+    }
+
+    @java.lang.Override
+    public java.lang.String toString() {
+      return "Answer{" +
+          "itemId='" + itemId + '\'' +
+          ", pictureUrl='" + pictureUrl + '\'' +
+          ", fetchedAtMillis=" + fetchedAtMillis +
+          ", claimsInfo=" + claimsInfo +
+          '}';
+    }
+  }
+}
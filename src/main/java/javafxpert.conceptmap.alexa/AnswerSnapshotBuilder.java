@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.apache.commons.lang3.text.WordUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Command line tool that writes an {@link AnswerSnapshot} by asking ConceptMap each question in a
+ * list the way the skill would: locating the item's ID, traversing the relationship and resolving
+ * the item's picture for the card. The ConceptMap settings are read as usual, so it asks the same
+ * endpoints the skill does.
+ * <p>
+ * The list has an item name on each line, optionally followed by a tab and a comma separated list
+ * of relationship phrases, such as {@code Lionel Messi\tteams,teammates}. An item on its own is
+ * asked about the default relationship. Write the snapshot to
+ * {@code src/main/resources/answers.snapshot} to bundle it with the skill, or point the
+ * {@code answerSnapshotPath} setting at it.
+ * <pre>
+ *   java javafxpert.conceptmap.alexa.AnswerSnapshotBuilder top-items.tsv answers.snapshot
+ * </pre>
+ */
+public class AnswerSnapshotBuilder {
+  private static final long QUESTION_BUDGET_MILLIS = 30000;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: AnswerSnapshotBuilder <top-items.tsv> <output.snapshot>");
+      System.exit(1);
+    }
+    ConceptMapClient conceptMapClient =
+        new ConceptMapClient(ConceptMapClientConfig.fromSystemProperties());
+    try {
+      int count = build(new File(args[0]), new File(args[1]), conceptMapClient,
+          RelationshipIndex.getDefault());
+      System.out.println("Wrote " + count + " answers to " + args[1] + " ("
+          + new File(args[1]).length() + " bytes)");
+    } finally {
+      conceptMapClient.close();
+    }
+  }
+
+  /**
+   * Ask ConceptMap every question in the list and write the answers to a snapshot file.
+   * Questions that can't be answered are reported and left out.
+   *
+   * @return the number of answers written
+   * @throws IOException if the list couldn't be read or the snapshot couldn't be written
+   */
+  public static int build(File questions, File output, ConceptMapClient conceptMapClient,
+                          RelationshipIndex relationshipIndex) throws IOException {
+    TraversalEngine traversalEngine = new TraversalEngine(conceptMapClient);
+    long builtAtMillis = System.currentTimeMillis();
+    List<Entry> entries = new ArrayList<>();
+    Set<String> keys = new HashSet<>();
+    int skipped = 0;
+
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(questions), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.trim().length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        int tab = line.indexOf('\t');
+        String itemName =
+            WordUtils.capitalize((tab < 0 ? line : line.substring(0, tab)).trim());
+        List<Relationship> relationships = new ArrayList<>();
+        if (tab < 0) {
+          relationships.add(relationshipIndex.getDefaultRelationship());
+        }
+        else {
+          for (String phrase : line.substring(tab + 1).split(",")) {
+            Relationship relationship = relationshipIndex.resolve(phrase.trim());
+            if (relationship == null) {
+              System.out.println("  " + itemName + " / " + phrase.trim()
+                  + ": unknown relationship");
+              skipped++;
+            }
+            else {
+              relationships.add(relationship);
+            }
+          }
+        }
+
+        for (Relationship relationship : relationships) {
+          String key = AnswerSnapshot.toKey(itemName, relationship.getName());
+          if (!keys.add(key)) {
+            continue;
+          }
+          Entry entry = fetch(itemName, relationship, key, conceptMapClient, traversalEngine);
+          if (entry != null) {
+            entries.add(entry);
+          }
+          else {
+            skipped++;
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    Collections.sort(entries);
+
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+    try {
+      out.writeInt(AnswerSnapshot.MAGIC);
+      out.writeInt(AnswerSnapshot.VERSION);
+      out.writeLong(builtAtMillis);
+      out.writeInt(entries.size());
+      int offset = AnswerSnapshot.HEADER_BYTES + entries.size() * 4;
+      for (Entry entry : entries) {
+        out.writeInt(offset);
+        offset += entry.bytes.length;
+      }
+      for (Entry entry : entries) {
+        out.write(entry.bytes);
+      }
+    } finally {
+      out.close();
+    }
+    if (skipped > 0) {
+      System.out.println("Left out " + skipped + " unanswered questions");
+    }
+    return entries.size();
+  }
+
+  /**
+   * Answer one question as the skill would
+   *
+   * @return the entry to write, or null if the question couldn't be answered
+   */
+  private static Entry fetch(String itemName, Relationship relationship, String key,
+                             ConceptMapClient conceptMapClient, TraversalEngine traversalEngine) {
+    String question = itemName + " / " + relationship.getName();
+    Deadline deadline = new Deadline(QUESTION_BUDGET_MILLIS);
+    try {
+      String itemId = conceptMapClient.locateItemId(itemName, deadline);
+      int numericItemId = ItemInfo.toNumericId(itemId);
+      if (numericItemId == 0) {
+        System.out.println("  " + question + ": item not located");
+        return null;
+      }
+      ClaimsInfo claimsInfo = traversalEngine.traverse(itemId, relationship, deadline, 0);
+      if (claimsInfo.getItemCount() == 0) {
+        System.out.println("  " + question + ": no claims");
+        return null;
+      }
+      String pictureUrl = claimsInfo.getPictureUrl() != null
+          ? conceptMapClient.resolveRedirect(claimsInfo.getPictureUrl(), deadline) : null;
+
+      Entry entry = new Entry(key, System.currentTimeMillis(), numericItemId, pictureUrl,
+          claimsInfo);
+      System.out.println("  " + question + ": " + claimsInfo.getItemCount() + " claims");
+      return entry;
+    } catch (IOException e) {
+      System.out.println("  " + question + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * An answer's key and its bytes as they're laid out in the snapshot, ordered by the key's
+   * unsigned bytes
+   */
+  private static class Entry implements Comparable<Entry> {
+    private final byte[] key;
+    private final byte[] bytes;
+
+    private Entry(String key, long fetchedAtMillis, int numericItemId, String pictureUrl,
+                  ClaimsInfo claimsInfo) throws IOException {
+      this.key = key.getBytes(StandardCharsets.UTF_8);
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(buffer);
+      writeBytes(out, this.key);
+      out.writeLong(fetchedAtMillis);
+      out.writeInt(numericItemId);
+      writeBytes(out, (pictureUrl != null ? pictureUrl : "").getBytes(StandardCharsets.UTF_8));
+      out.writeInt(claimsInfo.getItemCount());
+      for (int i = 0; i < claimsInfo.getItemCount(); i++) {
+        out.writeInt(claimsInfo.getNumericItemId(i));
+        writeBytes(out, claimsInfo.getItemLabel(i).getBytes(StandardCharsets.UTF_8));
+      }
+      out.flush();
+      this.bytes = buffer.toByteArray();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+      if (value.length > 0xffff) {
+        throw new IOException("Too long for an answer snapshot: " + value.length + " bytes");
+      }
+      out.writeShort(value.length);
+      out.write(value);
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int length = Math.min(key.length, other.key.length);
+      for (int i = 0; i < length; i++) {
+        int difference = (key[i] & 0xff) - (other.key[i] & 0xff);
+        if (difference != 0) {
+          return difference;
+        }
+      }
+      return key.length - other.key.length;
+    }
+  }
+}
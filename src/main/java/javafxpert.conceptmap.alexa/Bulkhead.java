@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how many calls to one endpoint can be in flight at once, so a slow endpoint can only tie
+ * up that many threads and connections. A call over the cap is refused rather than queued.
+ */
+public class Bulkhead {
+  private final String name;
+  private final int maxConcurrentCalls;
+  private final Semaphore permits;
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  public Bulkhead(String name, int maxConcurrentCalls) {
+    this.name = name;
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.permits = new Semaphore(maxConcurrentCalls);
+  }
+
+  /**
+   * Take a place for a call, which must be given back with {@link #release()}
+   *
+   * @throws CallNotPermittedException if the endpoint already has its fill of calls in flight
+   */
+  public void acquire() throws CallNotPermittedException {
+    if (!permits.tryAcquire()) {
+      rejected.incrementAndGet();
+      throw new CallNotPermittedException("Bulkhead for " + name + " is full with "
+          + maxConcurrentCalls + " calls in flight");
+    }
+  }
+
+  public void release() {
+    permits.release();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getInFlight() {
+    return maxConcurrentCalls - permits.availablePermits();
+  }
+
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "Bulkhead{" +
+        "name='" + name + '\'' +
+        ", inFlight=" + getInFlight() +
+        ", maxConcurrentCalls=" + maxConcurrentCalls +
+        ", rejected=" + rejected +
+        '}';
+  }
+}
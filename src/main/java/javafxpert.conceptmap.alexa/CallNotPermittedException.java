@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an upstream call is refused without being attempted, because the endpoint's
+ * {@link CircuitBreaker} is open, its {@link Bulkhead} is full or no pooled connection was free
+ */
+public class CallNotPermittedException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  public CallNotPermittedException(String message) {
+    super(message);
+  }
+
+  public CallNotPermittedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
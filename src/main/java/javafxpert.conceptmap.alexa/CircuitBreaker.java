@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops calling an endpoint that is failing or slow, so requests fail fast instead of each
+ * waiting out its timeouts. The outcomes of the most recent calls are kept in a window, and the
+ * circuit opens when enough of them failed or were slow. Once open it refuses every call for a
+ * while, then lets a few trial calls through and closes again if they all succeed.
+ */
+public class CircuitBreaker {
+  private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final long slowCallNanos;
+  private final double slowCallRateThreshold;
+  private final long openMillis;
+  private final int halfOpenCalls;
+
+  // Outcomes of the most recent calls, oldest overwritten first
+  private final boolean[] failed;
+  private final boolean[] slow;
+  private int recorded;
+  private int next;
+  private int failures;
+  private int slowCalls;
+
+  private State state = State.CLOSED;
+  private long openedAtMillis;
+  private int halfOpenPermits;
+  private int halfOpenSuccesses;
+
+  private final AtomicLong opened = new AtomicLong();
+  private final AtomicLong halfOpened = new AtomicLong();
+  private final AtomicLong closed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  public CircuitBreaker(String name, ConceptMapClientConfig config) {
+    this.name = name;
+    this.minimumCalls = Math.max(1, config.getBreakerMinimumCalls());
+    this.failureRateThreshold = config.getBreakerFailureRateThreshold();
+    this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getBreakerSlowCallMillis());
+    this.slowCallRateThreshold = config.getBreakerSlowCallRateThreshold();
+    this.openMillis = config.getBreakerOpenMillis();
+    this.halfOpenCalls = Math.max(1, config.getBreakerHalfOpenCalls());
+    int windowSize = Math.max(this.minimumCalls, config.getBreakerWindowSize());
+    this.failed = new boolean[windowSize];
+    this.slow = new boolean[windowSize];
+  }
+
+  /**
+   * Ask to make a call. Every permitted call must be followed by {@link #onSuccess},
+   * {@link #onFailure} or {@link #onNotAttempted}.
+   *
+   * @throws CallNotPermittedException if the circuit is open, or half open with its trial calls
+   *     already under way
+   */
+  public synchronized void acquirePermission() throws CallNotPermittedException {
+    if (state == State.OPEN && System.currentTimeMillis() - openedAtMillis >= openMillis) {
+      transitionTo(State.HALF_OPEN);
+    }
+    if (state == State.OPEN || (state == State.HALF_OPEN && halfOpenPermits >= halfOpenCalls)) {
+      rejected.incrementAndGet();
+      throw new CallNotPermittedException("Circuit breaker for " + name + " is " + state);
+    }
+    if (state == State.HALF_OPEN) {
+      halfOpenPermits++;
+    }
+  }
+
+  /**
+   * Record a permitted call that got an answer from the endpoint
+   */
+  public synchronized void onSuccess(long durationNanos) {
+    boolean wasSlow = durationNanos >= slowCallNanos;
+    if (state == State.HALF_OPEN) {
+      if (wasSlow) {
+        transitionTo(State.OPEN);
+      }
+      else if (++halfOpenSuccesses >= halfOpenCalls) {
+        transitionTo(State.CLOSED);
+      }
+      return;
+    }
+    record(false, wasSlow);
+  }
+
+  /**
+   * Record a permitted call that failed or timed out
+   */
+  public synchronized void onFailure(long durationNanos) {
+    if (state == State.HALF_OPEN) {
+      transitionTo(State.OPEN);
+      return;
+    }
+    record(true, durationNanos >= slowCallNanos);
+  }
+
+  /**
+   * Hand back a permission for a call that was never made
+   */
+  public synchronized void onNotAttempted() {
+    if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+      halfOpenPermits--;
+    }
+  }
+
+  private void record(boolean callFailed, boolean callWasSlow) {
+    if (recorded == failed.length) {
+      failures -= failed[next] ? 1 : 0;
+      slowCalls -= slow[next] ? 1 : 0;
+    }
+    else {
+      recorded++;
+    }
+    failed[next] = callFailed;
+    slow[next] = callWasSlow;
+    failures += callFailed ? 1 : 0;
+    slowCalls += callWasSlow ? 1 : 0;
+    next = (next + 1) % failed.length;
+
+    if (state == State.CLOSED && recorded >= minimumCalls
+        && ((double) failures / recorded >= failureRateThreshold
+            || (double) slowCalls / recorded >= slowCallRateThreshold)) {
+      transitionTo(State.OPEN);
+    }
+  }
+
+  private void transitionTo(State newState) {
+    log.warn("Circuit breaker for {} {} -> {}, failures={}/{}, slowCalls={}/{}",
+        name, state, newState, failures, recorded, slowCalls, recorded);
+    state = newState;
+    halfOpenPermits = 0;
+    halfOpenSuccesses = 0;
+    switch (newState) {
+      case OPEN:
+        openedAtMillis = System.currentTimeMillis();
+        opened.incrementAndGet();
+        break;
+      case HALF_OPEN:
+        halfOpened.incrementAndGet();
+        break;
+      default:
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+        closed.incrementAndGet();
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return how many times the circuit has opened
+   */
+  public long getOpened() {
+    return opened.get();
+  }
+
+  public long getHalfOpened() {
+    return halfOpened.get();
+  }
+
+  public long getClosed() {
+    return closed.get();
+  }
+
+  /**
+   * @return how many calls were refused while the circuit was open
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @java.lang.Override
+  public synchronized java.lang.String toString() {
+    return "CircuitBreaker{" +
+        "name='" + name + '\'' +
+        ", state=" + state +
+        ", failures=" + failures +
+        ", slowCalls=" + slowCalls +
+        ", recorded=" + recorded +
+        ", opened=" + opened +
+        ", rejected=" + rejected +
+        '}';
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact binary form of a {@link ClaimsInfo}, for storing claims outside the process. It's a
+ * version byte, the picture URL, ETag and Last-Modified validators if there are any, then the
+ * number of related items and each one's Q-ID number and label. The validators are kept so
+ * claims read back can be revalidated rather than downloaded again once they expire. Numbers are
+ * written as variable length integers, so most Q-IDs take three or four bytes, and strings as
+ * modified UTF-8.
+ */
+public final class ClaimsCodec {
+  private static final int VERSION = 1;
+
+  private ClaimsCodec() {
+  }
+
+  public static byte[] encode(ClaimsInfo claimsInfo) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeByte(VERSION);
+      writeOptionalUTF(out, claimsInfo.getPictureUrl());
+      writeOptionalUTF(out, claimsInfo.getEtag());
+      writeOptionalUTF(out, claimsInfo.getLastModified());
+      writeVarInt(out, claimsInfo.getItemCount());
+      for (int i = 0; i < claimsInfo.getItemCount(); i++) {
+        writeVarInt(out, claimsInfo.getNumericItemId(i));
+        out.writeUTF(claimsInfo.getItemLabel(i));
+      }
+      out.flush();
+    } catch (IOException e) {
+      // A ByteArrayOutputStream doesn't throw
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @throws IOException if the bytes aren't claims in a version this build understands
+   */
+  public static ClaimsInfo decode(byte[] encoded) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+    int version = in.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("Unknown claims encoding version " + version);
+    }
+    ClaimsInfo claimsInfo = new ClaimsInfo();
+    claimsInfo.setPictureUrl(readOptionalUTF(in));
+    claimsInfo.setEtag(readOptionalUTF(in));
+    claimsInfo.setLastModified(readOptionalUTF(in));
+    int count = readVarInt(in);
+    for (int i = 0; i < count; i++) {
+      int numericItemId = readVarInt(in);
+      claimsInfo.addItem(numericItemId, in.readUTF());
+    }
+    claimsInfo.trimToSize();
+    return claimsInfo;
+  }
+
+  private static void writeOptionalUTF(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readOptionalUTF(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /**
+   * Write a non-negative number seven bits at a time, low bits first
+   */
+  static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length integer");
+  }
+}
@@ -15,22 +15,34 @@
  */
 package javafxpert.conceptmap.alexa;
 
-import java.util.List;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Represents the claims related to an item
+ * Represents the claims related to an item. As claims are what the caches hold, the related
+ * items are kept compactly: their Q-IDs as numbers and their labels in a flat array, each label
+ * being the copy shared through the {@link LabelInterner}. Both are in the same order, so a
+ * traversal can be continued from the IDs.
  */
 public class ClaimsInfo {
+  private static final int[] NO_IDS = new int[0];
+  private static final String[] NO_LABELS = new String[0];
+
   private String pictureUrl;
-  private List<String> itemLabels = new ArrayList<>();
+  private String etag;
+  private String lastModified;
+  private int[] itemIds = NO_IDS;
+  private String[] itemLabels = NO_LABELS;
+  private int itemCount;
 
   public ClaimsInfo() {
   }
 
   public ClaimsInfo(String pictureUrl, List<String> itemNames) {
     this.pictureUrl = pictureUrl;
-    this.itemLabels = itemLabels;
+    setItemLabels(itemNames);
   }
 
   public String getPictureUrl() {
@@ -41,32 +53,188 @@ public class ClaimsInfo {
     this.pictureUrl = pictureUrl;
   }
 
+  /**
+   * @return the ETag the claims were served with, to revalidate them, or null if there was none
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  public void setEtag(String etag) {
+    this.etag = etag;
+  }
+
+  /**
+   * @return the Last-Modified date the claims were served with, or null if there was none
+   */
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(String lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  public int getItemCount() {
+    return itemCount;
+  }
+
+  public String getItemLabel(int index) {
+    checkIndex(index);
+    return itemLabels[index];
+  }
+
+  /**
+   * @return the related item's Q-ID, or null if it wasn't a Q-ID
+   */
+  public String getItemId(int index) {
+    checkIndex(index);
+    return ItemInfo.toId(itemIds[index]);
+  }
+
+  /**
+   * @return the number in the related item's Q-ID, or 0 if it wasn't a Q-ID
+   */
+  public int getNumericItemId(int index) {
+    checkIndex(index);
+    return itemIds[index];
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= itemCount) {
+      throw new IndexOutOfBoundsException("Index " + index + " of " + itemCount + " items");
+    }
+  }
+
+  /**
+   * @return a read-only view of the labels
+   */
   public List<String> getItemLabels() {
-    return itemLabels;
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return getItemLabel(index);
+      }
+
+      @Override
+      public int size() {
+        return itemCount;
+      }
+    };
   }
 
+  /**
+   * Replace the related items with ones that have labels but no IDs
+   */
   public void setItemLabels(List<String> itemLabels) {
-    this.itemLabels = itemLabels;
+    this.itemIds = new int[itemLabels.size()];
+    this.itemLabels = new String[itemLabels.size()];
+    this.itemCount = 0;
+    for (String itemLabel : itemLabels) {
+      addItem(0, itemLabel);
+    }
+  }
+
+  /**
+   * @return the related items' Q-IDs, leaving out any that weren't Q-IDs
+   */
+  public List<String> getItemIds() {
+    List<String> ids = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      if (itemIds[i] > 0) {
+        ids.add(ItemInfo.toId(itemIds[i]));
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Add a related item
+   */
+  public void addItem(String itemId, String itemLabel) {
+    addItem(ItemInfo.toNumericId(itemId), itemLabel);
+  }
+
+  /**
+   * Add a related item
+   *
+   * @param numericItemId the number in its Q-ID, or 0 if it has none
+   */
+  public void addItem(int numericItemId, String itemLabel) {
+    if (itemCount == itemLabels.length) {
+      int capacity = Math.max(8, itemCount * 2);
+      itemIds = Arrays.copyOf(itemIds, capacity);
+      itemLabels = Arrays.copyOf(itemLabels, capacity);
+    }
+    itemIds[itemCount] = numericItemId;
+    itemLabels[itemCount] = LabelInterner.getDefault().intern(itemLabel);
+    itemCount++;
+  }
+
+  /**
+   * Drop the room kept for more items, once there won't be any
+   */
+  public void trimToSize() {
+    if (itemCount < itemLabels.length) {
+      itemIds = Arrays.copyOf(itemIds, itemCount);
+      itemLabels = Arrays.copyOf(itemLabels, itemCount);
+    }
   }
 
   public String toItemLabelsSpeech() {
-    StringBuffer itemLabelsSpeech = new StringBuffer();
-    if (itemLabels.size() > 0) {
-      for (int i = 0; i < itemLabels.size(); i++) {
-        itemLabelsSpeech.append(itemLabels.get(i) + ",\n");
-        if ((itemLabels.size() > 1) && (i == itemLabels.size() - 2)) {
-          itemLabelsSpeech.append(" and ");
-        }
+    return toItemLabelsSpeech(0, itemCount);
+  }
+
+  /**
+   * Speak the labels from fromIndex up to but not including toIndex. The last two are joined
+   * with "and" only when the page reaches the end of the list.
+   */
+  public String toItemLabelsSpeech(int fromIndex, int toIndex) {
+    StringBuilder itemLabelsSpeech = new StringBuilder();
+    for (int i = fromIndex; i < toIndex; i++) {
+      itemLabelsSpeech.append(itemLabels[i]).append(",\n");
+      if (toIndex == itemCount && toIndex - fromIndex > 1 && i == toIndex - 2) {
+        itemLabelsSpeech.append(" and ");
       }
     }
     return itemLabelsSpeech.toString();
   }
 
+  /**
+   * Speak a page of labels that aren't held in a ClaimsInfo, as {@link #toItemLabelsSpeech(int,
+   * int)} does
+   */
+  public static String toItemLabelsSpeech(List<String> itemLabels, int fromIndex, int toIndex) {
+    StringBuilder itemLabelsSpeech = new StringBuilder();
+    for (int i = fromIndex; i < toIndex; i++) {
+      itemLabelsSpeech.append(itemLabels.get(i)).append(",\n");
+      if (toIndex == itemLabels.size() && toIndex - fromIndex > 1 && i == toIndex - 2) {
+        itemLabelsSpeech.append(" and ");
+      }
+    }
+    return itemLabelsSpeech.toString();
+  }
+
+  /**
+   * Rough number of bytes held by this object, used to cap the size of the claims cache. The
+   * labels are shared, so only the references to them are counted.
+   */
+  public long estimateSizeBytes() {
+    return 40 + (pictureUrl != null ? 40 + 2 * pictureUrl.length() : 0)
+        + (etag != null ? 40 + 2 * etag.length() : 0)
+        + (lastModified != null ? 40 + 2 * lastModified.length() : 0)
+        + 16 + 4L * itemIds.length
+        + 16 + 4L * itemLabels.length;
+  }
+
   @java.lang.Override
   public java.lang.String toString() {
     return "ClaimsInfo{" +
         "pictureUrl='" + pictureUrl + '\'' +
-        ", itemLabels=" + itemLabels +
+        ", etag='" + etag + '\'' +
+        ", lastModified='" + lastModified + '\'' +
+        ", itemLabels=" + getItemLabels() +
+        ", itemIds=" + getItemIds() +
         '}';
   }
 }
@@ -0,0 +1,781 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazonaws.util.json.JSONException;
+import com.amazonaws.util.json.JSONObject;
+import com.amazonaws.util.json.JSONTokener;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Client for the ConceptMap web service. One instance is owned by the speechlet and reused for
+ * every request it handles, so connections are pooled and kept alive across invocations.
+ */
+public class ConceptMapClient implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(ConceptMapClient.class);
+
+  public static final String ENDPOINT_IDLOCATOR = "idlocator";
+  public static final String ENDPOINT_TRAVERSAL = "traversal";
+  public static final String ENDPOINT_PICTURE = "picture";
+  private static final String ITEM_ID_KEY_PREFIX = "itemId:";
+  private static final String CLAIMS_KEY_PREFIX = "claims:";
+  private static final String BUNDLED_ANSWER_SNAPSHOT = "/answers.snapshot";
+
+  public static final List<String> ENDPOINTS = Collections.unmodifiableList(
+      Arrays.asList(ENDPOINT_IDLOCATOR, ENDPOINT_TRAVERSAL, ENDPOINT_PICTURE));
+
+  private final ConceptMapClientConfig config;
+  private final ConceptMapTransport transport;
+  private final TraversalResponseParser traversalResponseParser;
+  private final LabelDictionary labelDictionary;
+  private final AnswerSnapshot answerSnapshot;
+  private final DynamoDbCache dynamoDbCache;
+  private final ExpiringLruCache<String, String> itemIdCache;
+  private final SingleFlight<String, String> itemIdFlights = new SingleFlight<>();
+  private final SingleFlight<TraversalKey, ClaimsInfo> claimsFlights = new SingleFlight<>();
+  private final Map<String, CircuitBreaker> circuitBreakers = new LinkedHashMap<>();
+  private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+  private final ExecutorService refreshExecutor;
+  private final Hedger hedger;
+  private final AtomicBoolean prewarming = new AtomicBoolean();
+  private final AtomicLong prewarms = new AtomicLong();
+  private final AtomicLong prewarmedConnections = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicLong bytesDecoded = new AtomicLong();
+  private final StaleWhileRevalidateCache<TraversalKey, ClaimsInfo> claimsCache;
+  private final StaleWhileRevalidateCache.Loader<TraversalKey, ClaimsInfo> refreshLoader =
+      new StaleWhileRevalidateCache.Loader<TraversalKey, ClaimsInfo>() {
+        @Override
+        public ClaimsInfo load(TraversalKey key) throws IOException {
+          return loadClaimsOnce(key, newBackgroundDeadline());
+        }
+      };
+
+  public ConceptMapClient(ConceptMapClientConfig config) {
+    this(config, new HttpClientTransport(config));
+  }
+
+  public ConceptMapClient(ConceptMapClientConfig config, ConceptMapTransport transport) {
+    this(config, transport, openDynamoDbCache(config));
+  }
+
+  /**
+   * @param dynamoDbCache the second level cache shared with other containers, or null for none
+   */
+  public ConceptMapClient(ConceptMapClientConfig config, ConceptMapTransport transport,
+                          DynamoDbCache dynamoDbCache) {
+    this.config = config;
+    this.transport = transport;
+    this.traversalResponseParser = new TraversalResponseParser(config.getMaxLabels());
+    this.labelDictionary = openLabelDictionary(config.getLabelDictionaryPath());
+    this.answerSnapshot = openAnswerSnapshot(config.getAnswerSnapshotPath());
+    this.dynamoDbCache = dynamoDbCache;
+    this.itemIdCache =
+        new ExpiringLruCache<>(config.getItemIdCacheSize(), config.getItemIdTtlMillis());
+    for (String endpoint : ENDPOINTS) {
+      circuitBreakers.put(endpoint, new CircuitBreaker(endpoint, config));
+      bulkheads.put(endpoint,
+          new Bulkhead(endpoint, bulkheadMaxConcurrentCalls(config, endpoint)));
+    }
+    this.refreshExecutor = Executors.newFixedThreadPool(config.getRefreshThreads(),
+        new DaemonThreadFactory("conceptmap-refresh"));
+    this.hedger = config.isHedgingEnabled() ? new Hedger(config) : null;
+    this.claimsCache = new StaleWhileRevalidateCache<>(config.getClaimsFreshMillis(),
+        config.getClaimsMaxStaleMillis(), config.getClaimsCacheMaxBytes(),
+        new StaleWhileRevalidateCache.Weigher<ClaimsInfo>() {
+          @Override
+          public long weigh(ClaimsInfo claimsInfo) {
+            return claimsInfo.estimateSizeBytes();
+          }
+        },
+        refreshLoader, refreshExecutor);
+  }
+
+  /**
+   * Get the Item ID for a given article name, from the local label dictionary if it has the
+   * name, otherwise from the caches or a ConceptMap endpoint. Concurrent lookups of the same name
+   * share one call to the endpoint.
+   *
+   * @return the Item ID, or an empty string if the service doesn't know the name
+   * @throws IOException if the service couldn't be reached in the time remaining or its
+   *     response couldn't be parsed
+   * @throws IllegalArgumentException if the name is null or blank
+   */
+  public String locateItemId(final String itemValue, final Deadline deadline)
+      throws IOException {
+    if (itemValue == null || itemValue.trim().length() == 0) {
+      throw new IllegalArgumentException("An item name to locate is required");
+    }
+    String itemId = labelDictionary != null ? labelDictionary.lookup(itemValue) : null;
+    if (itemId != null) {
+      return itemId;
+    }
+
+    String cacheKey = itemValue.trim().toLowerCase(Locale.ENGLISH);
+    itemId = itemIdCache.get(cacheKey);
+    if (itemId != null) {
+      return itemId;
+    }
+
+    return itemIdFlights.load(cacheKey, new StaleWhileRevalidateCache.Loader<String, String>() {
+      @Override
+      public String load(String cacheKey) throws IOException {
+        byte[] shared = getShared(ITEM_ID_KEY_PREFIX + cacheKey, deadline);
+        String itemId = shared != null ? new String(shared, StandardCharsets.UTF_8) : null;
+        if (itemId == null) {
+          itemId = fetchItemId(itemValue, deadline);
+          putShared(ITEM_ID_KEY_PREFIX + cacheKey, itemId.getBytes(StandardCharsets.UTF_8),
+              itemIdTtlMillis(itemId));
+        }
+        itemIdCache.put(cacheKey, itemId, itemIdTtlMillis(itemId));
+        return itemId;
+      }
+    }, deadline);
+  }
+
+  /**
+   * Names the service doesn't know are remembered for less time, as they may be added
+   */
+  private long itemIdTtlMillis(String itemId) {
+    return itemId.length() > 0 ? config.getItemIdTtlMillis() : config.getItemIdNotFoundTtlMillis();
+  }
+
+  /**
+   * @return the Item ID, or an empty string if the service answered without one
+   * @throws IOException if the service couldn't be reached or its response couldn't be parsed,
+   *     which says nothing about whether it knows the name
+   */
+  private String fetchItemId(String itemValue, Deadline deadline) throws IOException {
+    // Spaces stay %20 rather than the form encoding's +, as the service has always been sent
+    String queryString = "?name="
+        + URLEncoder.encode(itemValue, StandardCharsets.UTF_8.name()).replace("+", "%20")
+        + "&lang=en";
+    String body = fetch(ENDPOINT_IDLOCATOR, config.getIdLocatorEndpoint() + queryString,
+        deadline);
+    if (RequestLog.isVerbose()) {
+      log.info("locateItemId body={}", RequestLog.truncate(body));
+    }
+
+    Object itemId;
+    try {
+      itemId = new JSONObject(new JSONTokener(body)).opt("itemId");
+    } catch (JSONException e) {
+      throw new IOException("Couldn't parse idlocator response: " + e.getMessage(), e);
+    }
+    if (RequestLog.isVerbose()) {
+      log.info("locateItemId itemId={}", itemId);
+    }
+    // A missing or null itemId is the service's answer for a name it doesn't know
+    return itemId instanceof String ? (String) itemId : "";
+  }
+
+  /**
+   * Call a ConceptMap endpoint to retrieve the claims related to an item. Repeat requests are
+   * answered from the claims cache, which may serve a stale result while refreshing it, and
+   * concurrent requests for the same traversal share one call to the endpoint. Expired claims
+   * are revalidated, so claims that haven't changed aren't downloaded or parsed again.
+   *
+   * @throws IOException if the service couldn't be reached in the time remaining or its
+   *     response couldn't be parsed
+   */
+  public ClaimsInfo fetchClaims(String itemId, String direction, String propId, int depth,
+                                final Deadline deadline) throws IOException {
+    return claimsCache.get(new TraversalKey(itemId, direction, propId, depth),
+        new StaleWhileRevalidateCache.Loader<TraversalKey, ClaimsInfo>() {
+          @Override
+          public ClaimsInfo load(TraversalKey key) throws IOException {
+            return loadClaimsOnce(key, deadline);
+          }
+        });
+  }
+
+  /**
+   * Load the claims, or wait for a load of the same traversal that is already in flight
+   */
+  private ClaimsInfo loadClaimsOnce(TraversalKey key, final Deadline deadline)
+      throws IOException {
+    return claimsFlights.load(key,
+        new StaleWhileRevalidateCache.Loader<TraversalKey, ClaimsInfo>() {
+          @Override
+          public ClaimsInfo load(TraversalKey key) throws IOException {
+            return loadClaims(key, deadline);
+          }
+        }, deadline);
+  }
+
+  private ClaimsInfo loadClaims(TraversalKey key, Deadline deadline) throws IOException {
+    String sharedKey = CLAIMS_KEY_PREFIX + key.toQueryString();
+    byte[] shared = getShared(sharedKey, deadline);
+    if (shared != null) {
+      try {
+        return ClaimsCodec.decode(shared);
+      } catch (IOException e) {
+        log.info("Ignoring undecodable shared claims for {}: {}", key, e.toString());
+      }
+    }
+
+    ClaimsInfo claimsInfo = fetchClaimsFromService(key, deadline);
+    putShared(sharedKey, ClaimsCodec.encode(claimsInfo), config.getClaimsFreshMillis());
+    return claimsInfo;
+  }
+
+  private ClaimsInfo fetchClaimsFromService(TraversalKey key, Deadline deadline)
+      throws IOException {
+    String url = config.getTraversalEndpoint() + key.toQueryString();
+    if (RequestLog.isVerbose()) {
+      log.info("fetch url={}", url);
+    }
+
+    ConceptMapRequest request = newJsonRequest(url, deadline);
+    ClaimsInfo cached = config.isRevalidationEnabled() ? claimsCache.getIfPresent(key) : null;
+    if (cached != null) {
+      if (cached.getEtag() != null) {
+        request.getHeaders().put("If-None-Match", cached.getEtag());
+      }
+      if (cached.getLastModified() != null) {
+        request.getHeaders().put("If-Modified-Since", cached.getLastModified());
+      }
+    }
+
+    long stageStart = deadline.elapsedNanos();
+    ConceptMapResponse response = execute(ENDPOINT_TRAVERSAL, request);
+    deadline.recordStage("traversalFetch", stageStart);
+    try {
+      if (response.isNotModified()) {
+        if (cached == null) {
+          throw new IOException("Not modified answer to an unconditional request for " + url);
+        }
+        // Cached again as it is, which starts its freshness window over
+        notModified.incrementAndGet();
+        return cached;
+      }
+      stageStart = deadline.elapsedNanos();
+      ClaimsInfo claimsInfo = traversalResponseParser.parse(response.getBody(), key.getItemId());
+      claimsInfo.setEtag(response.getHeader("ETag"));
+      claimsInfo.setLastModified(response.getHeader("Last-Modified"));
+      deadline.recordStage("jsonParse", stageStart);
+      return claimsInfo;
+    } finally {
+      response.close();
+    }
+  }
+
+  /**
+   * Get the target of a picture URL's redirect without following it
+   *
+   * @return the redirect location, or null if the URL doesn't redirect
+   * @throws IOException if the picture URL couldn't be reached in the time remaining
+   */
+  public String resolveRedirect(String pictureUrl, Deadline deadline) throws IOException {
+    return resolveRedirect(newRedirectRequest(pictureUrl, deadline));
+  }
+
+  /**
+   * Create the request for a picture URL's redirect, which can be aborted from another thread
+   * while {@link #resolveRedirect(ConceptMapRequest)} waits for it
+   */
+  public ConceptMapRequest newRedirectRequest(String pictureUrl, Deadline deadline)
+      throws DeadlineExceededException {
+    ConceptMapRequest request = newRequest(pictureUrl, deadline);
+    request.setFollowRedirects(false);
+    return request;
+  }
+
+  /**
+   * Get the target of a redirect request's URL without following it
+   *
+   * @return the redirect location, or null if the URL doesn't redirect
+   * @throws IOException if the picture URL couldn't be reached, or the request was aborted
+   */
+  public String resolveRedirect(ConceptMapRequest request) throws IOException {
+    ConceptMapResponse response = call(ENDPOINT_PICTURE, request);
+    try {
+      return response.getHeader("Location");
+    } finally {
+      response.close();
+    }
+  }
+
+  private String fetch(String endpoint, String url, Deadline deadline) throws IOException {
+    if (RequestLog.isVerbose()) {
+      log.info("fetch url={}", url);
+    }
+
+    ConceptMapResponse response = execute(endpoint, newJsonRequest(url, deadline));
+    BufferedReader bufferedReader = null;
+    StringBuilder builder = new StringBuilder();
+    try {
+      String line;
+      bufferedReader = new BufferedReader(
+          new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+      while ((line = bufferedReader.readLine()) != null) {
+        builder.append(line);
+      }
+    } finally {
+      IOUtils.closeQuietly(bufferedReader);
+      response.close();
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Get ready for a request that is likely to follow, such as the question after a launch, on a
+   * background thread: page in the label dictionary, and open connections to the ConceptMap
+   * hosts and park them in the pool. Returns straight away, and does nothing if a prewarm is
+   * already under way.
+   */
+  public void prewarmAsync() {
+    if (!prewarming.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      refreshExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            prewarm();
+          } finally {
+            prewarming.set(false);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      prewarming.set(false);
+    }
+  }
+
+  private void prewarm() {
+    prewarms.incrementAndGet();
+    if (labelDictionary != null) {
+      labelDictionary.preload();
+    }
+    if (answerSnapshot != null) {
+      answerSnapshot.preload();
+    }
+
+    // Connecting to a host whose circuit is open would only fail slowly
+    if (circuitBreakers.get(ENDPOINT_TRAVERSAL).getState() == CircuitBreaker.State.OPEN) {
+      return;
+    }
+    Set<String> hosts = new LinkedHashSet<>();
+    for (String url : new String[] {config.getTraversalEndpoint(),
+        config.getIdLocatorEndpoint()}) {
+      URI uri = URI.create(url);
+      if (hosts.add(uri.getScheme() + "://" + uri.getAuthority())) {
+        try {
+          prewarmedConnections.addAndGet(transport.prewarm(url, config.getPrewarmConnections(),
+              config.getConnectTimeoutMillis()));
+        } catch (IOException | RuntimeException e) {
+          log.info("Couldn't prewarm connections to {}: {}", uri.getHost(), e.toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Look a key up in the second level cache, if there is one and there's time for it
+   *
+   * @return the value, or null if there isn't one
+   */
+  private byte[] getShared(String key, Deadline deadline) {
+    if (dynamoDbCache == null || !deadline.hasRemaining(config.getDynamoTimeoutMillis())) {
+      return null;
+    }
+    long stageStart = deadline.elapsedNanos();
+    byte[] value = dynamoDbCache.get(key);
+    deadline.recordStage("dynamoGet", stageStart);
+    return value;
+  }
+
+  private void putShared(String key, byte[] value, long ttlMillis) {
+    if (dynamoDbCache != null) {
+      dynamoDbCache.putAsync(key, value, ttlMillis);
+    }
+  }
+
+  /**
+   * Each endpoint's bulkhead can take the whole connection pool, so a burst of calls to one
+   * endpoint isn't refused while the pool has room. When the endpoints together want more than
+   * the pool, a call waits up to poolTimeoutMillis for a connection, and is then refused without
+   * counting against the endpoint.
+   *
+   * @return the most calls to the endpoint that can be in flight at once, at least one
+   */
+  static int bulkheadMaxConcurrentCalls(ConceptMapClientConfig config, String endpoint) {
+    int maxConcurrentCalls = Math.max(1, config.getMaxConnections());
+    if (config.getBulkheadMaxConcurrentCalls() > 0) {
+      maxConcurrentCalls = Math.min(maxConcurrentCalls, config.getBulkheadMaxConcurrentCalls());
+    }
+    return maxConcurrentCalls;
+  }
+
+  private static DynamoDbCache openDynamoDbCache(ConceptMapClientConfig config) {
+    if (config.getDynamoTableName() == null) {
+      return null;
+    }
+    DynamoDbCache dynamoDbCache = new DynamoDbCache(config);
+    log.info("Opened second level cache in DynamoDB table " + config.getDynamoTableName());
+    return dynamoDbCache;
+  }
+
+  private static LabelDictionary openLabelDictionary(String path) {
+    if (path == null) {
+      return null;
+    }
+    try {
+      LabelDictionary dictionary = LabelDictionary.open(new File(path));
+      log.info("Opened " + dictionary);
+      return dictionary;
+    } catch (IOException e) {
+      log.error("Couldn't open label dictionary " + path + ", using the idlocator only.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Open the snapshot at the path, or the one bundled with the skill if no path is given. A
+   * bundled snapshot that was left in a jar is copied out first, as it can only be mapped from a
+   * file.
+   */
+  private static AnswerSnapshot openAnswerSnapshot(String path) {
+    File file = path != null ? new File(path) : null;
+    try {
+      if (file == null) {
+        URL resource = ConceptMapClient.class.getResource(BUNDLED_ANSWER_SNAPSHOT);
+        if (resource == null) {
+          return null;
+        }
+        if ("file".equals(resource.getProtocol())) {
+          file = new File(resource.toURI());
+        }
+        else {
+          file = File.createTempFile("answers", ".snapshot");
+          file.deleteOnExit();
+          InputStream in = resource.openStream();
+          try {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          } finally {
+            in.close();
+          }
+        }
+      }
+      AnswerSnapshot snapshot = AnswerSnapshot.open(file);
+      log.info("Opened " + snapshot);
+      return snapshot;
+    } catch (IOException | URISyntaxException e) {
+      log.error("Couldn't open answer snapshot " + (file != null ? file : BUNDLED_ANSWER_SNAPSHOT)
+          + ", answering every question live.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Execute the request, hedged if hedging is enabled, failing if the service didn't answer with
+   * a success status or, for a conditional request, not modified. A compressed body is
+   * decompressed as it's read.
+   */
+  private ConceptMapResponse execute(final String endpoint, ConceptMapRequest request)
+      throws IOException {
+    ConceptMapResponse response;
+    if (hedger != null) {
+      response = hedger.execute(endpoint, request, new Hedger.Attempt() {
+        @Override
+        public ConceptMapResponse call(ConceptMapRequest attemptRequest) throws IOException {
+          return ConceptMapClient.this.call(endpoint, attemptRequest);
+        }
+      });
+    }
+    else {
+      response = call(endpoint, request);
+    }
+    if (!response.isSuccessful() && !response.isNotModified()) {
+      response.close();
+      throw new IOException("Server returned HTTP response code: " + response.getStatusCode()
+          + " for URL: " + request.getUrl());
+    }
+    try {
+      return decode(response);
+    } catch (IOException | RuntimeException e) {
+      response.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Wrap the body so it's decompressed if need be, and the bytes received and decoded are
+   * counted once the response is closed
+   */
+  private ConceptMapResponse decode(final ConceptMapResponse response) throws IOException {
+    final CountingInputStream received = new CountingInputStream(response.getBody());
+    InputStream body = received;
+    if ("gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"))) {
+      body = new GZIPInputStream(received, 8192);
+    }
+    final CountingInputStream decoded = new CountingInputStream(body);
+    return new ConceptMapResponse(response.getStatusCode(), response.getHeaders(), decoded,
+        new Closeable() {
+          @Override
+          public void close() {
+            bytesReceived.addAndGet(received.getByteCount());
+            bytesDecoded.addAndGet(decoded.getByteCount());
+            response.close();
+          }
+        });
+  }
+
+  /**
+   * Make the call through the endpoint's circuit breaker and bulkhead, which refuse it straight
+   * away when the endpoint is failing or already has its fill of calls in flight. The bulkhead
+   * place is held until the response is closed.
+   *
+   * @throws CallNotPermittedException if the call was refused without being attempted
+   */
+  private ConceptMapResponse call(String endpoint, ConceptMapRequest request) throws IOException {
+    CircuitBreaker circuitBreaker = circuitBreakers.get(endpoint);
+    final Bulkhead bulkhead = bulkheads.get(endpoint);
+    circuitBreaker.acquirePermission();
+    try {
+      bulkhead.acquire();
+    } catch (CallNotPermittedException e) {
+      circuitBreaker.onNotAttempted();
+      throw e;
+    }
+
+    long startNanos = System.nanoTime();
+    final ConceptMapResponse response;
+    try {
+      response = transport.execute(request);
+    } catch (IOException | RuntimeException e) {
+      if (request.isAborted()) {
+        // Given up on for a backup request's answer, which says nothing about the endpoint
+        circuitBreaker.onNotAttempted();
+      }
+      else if (e instanceof CallNotPermittedException) {
+        // Refused by the transport before it reached the endpoint, such as for a free connection
+        circuitBreaker.onNotAttempted();
+      }
+      else if (isDeadlineTimeout(request, e)) {
+        // Timed out within what was left of the caller's budget, not the endpoint's timeouts
+        circuitBreaker.onNotAttempted();
+      }
+      else {
+        circuitBreaker.onFailure(System.nanoTime() - startNanos);
+      }
+      bulkhead.release();
+      throw e;
+    }
+
+    // A server error or throttling means the endpoint is struggling, a 404 doesn't
+    int status = response.getStatusCode();
+    if (status >= 500 || status == 429) {
+      circuitBreaker.onFailure(System.nanoTime() - startNanos);
+    }
+    else {
+      circuitBreaker.onSuccess(System.nanoTime() - startNanos);
+    }
+
+    final AtomicBoolean released = new AtomicBoolean();
+    return new ConceptMapResponse(status, response.getHeaders(), response.getBody(),
+        new Closeable() {
+          @Override
+          public void close() {
+            response.close();
+            if (released.compareAndSet(false, true)) {
+              bulkhead.release();
+            }
+          }
+        });
+  }
+
+  /**
+   * @return whether the call timed out sooner than the configured timeouts allow, as they were
+   *     cut short to the time left before the request's deadline
+   */
+  private boolean isDeadlineTimeout(ConceptMapRequest request, Exception e) {
+    if (e instanceof SocketTimeoutException) {
+      return request.getReadTimeoutMillis() < config.getReadTimeoutMillis();
+    }
+    // Connect timeouts are reported as other interrupted I/O
+    return e instanceof InterruptedIOException
+        && request.getConnectTimeoutMillis() < config.getConnectTimeoutMillis();
+  }
+
+  /**
+   * Create a request whose timeouts are capped to the time remaining before the deadline
+   */
+  private ConceptMapRequest newRequest(String url, Deadline deadline)
+      throws DeadlineExceededException {
+    return new ConceptMapRequest(url, deadline.timeoutMillis(config.getConnectTimeoutMillis()),
+        deadline.timeoutMillis(config.getReadTimeoutMillis()));
+  }
+
+  /**
+   * Create a request for a JSON endpoint, which may answer with a compressed body
+   */
+  private ConceptMapRequest newJsonRequest(String url, Deadline deadline)
+      throws DeadlineExceededException {
+    ConceptMapRequest request = newRequest(url, deadline);
+    if (config.isGzipEnabled()) {
+      request.getHeaders().put("Accept-Encoding", "gzip");
+    }
+    return request;
+  }
+
+  /**
+   * Background work isn't holding up a response, so it only has the configured timeouts to meet
+   */
+  private Deadline newBackgroundDeadline() {
+    return new Deadline(config.getConnectTimeoutMillis() + config.getReadTimeoutMillis());
+  }
+
+  /**
+   * Send the second level cache writes queued so far, waiting no longer than the dynamoFlushMillis
+   * setting. Lambda calls this before returning, as it freezes the thread that sends them along
+   * with the container.
+   */
+  public void flush() {
+    if (dynamoDbCache != null) {
+      dynamoDbCache.flush(config.getDynamoFlushMillis());
+    }
+  }
+
+  public ExpiringLruCache<String, String> getItemIdCache() {
+    return itemIdCache;
+  }
+
+  public StaleWhileRevalidateCache<TraversalKey, ClaimsInfo> getClaimsCache() {
+    return claimsCache;
+  }
+
+  /**
+   * @return the second level cache shared with other containers, or null if there is none
+   */
+  public DynamoDbCache getDynamoDbCache() {
+    return dynamoDbCache;
+  }
+
+  public SingleFlight<String, String> getItemIdFlights() {
+    return itemIdFlights;
+  }
+
+  public SingleFlight<TraversalKey, ClaimsInfo> getClaimsFlights() {
+    return claimsFlights;
+  }
+
+  public CircuitBreaker getCircuitBreaker(String endpoint) {
+    return circuitBreakers.get(endpoint);
+  }
+
+  public Bulkhead getBulkhead(String endpoint) {
+    return bulkheads.get(endpoint);
+  }
+
+  /**
+   * @return the precomputed answers to the most asked questions, or null if there's no snapshot
+   */
+  public AnswerSnapshot getAnswerSnapshot() {
+    return answerSnapshot;
+  }
+
+  /**
+   * @return what sends backup requests for slow calls, or null if hedging isn't enabled
+   */
+  public Hedger getHedger() {
+    return hedger;
+  }
+
+  public long getPrewarms() {
+    return prewarms.get();
+  }
+
+  /**
+   * @return how many connections have been opened ahead of the requests that used them
+   */
+  public long getPrewarmedConnections() {
+    return prewarmedConnections.get();
+  }
+
+  /**
+   * @return how many expired claims were found to be unchanged, and kept without a download
+   */
+  public long getNotModified() {
+    return notModified.get();
+  }
+
+  /**
+   * @return the bytes of response bodies read off the wire, compressed or not
+   */
+  public long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  /**
+   * @return the bytes of response bodies after decompression
+   */
+  public long getBytesDecoded() {
+    return bytesDecoded.get();
+  }
+
+  public ConceptMapClientConfig getConfig() {
+    return config;
+  }
+
+  @Override
+  public void close() throws IOException {
+    refreshExecutor.shutdownNow();
+    if (hedger != null) {
+      hedger.close();
+    }
+    if (dynamoDbCache != null) {
+      dynamoDbCache.close();
+    }
+    transport.close();
+  }
+}
@@ -0,0 +1,944 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+/**
+ * Settings for the {@link ConceptMapClient}. Each value can be overridden with a system property
+ * such as {@code javafxpert.conceptmap.connectTimeoutMillis}, or on Lambda with the matching
+ * environment variable such as {@code CONCEPTMAP_CONNECT_TIMEOUT_MILLIS}.
+ */
+public class ConceptMapClientConfig {
+  static final String PROPERTY_PREFIX = "javafxpert.conceptmap.";
+
+  private String traversalEndpoint = "https://conceptmap.cfapps.io/traversal";
+  private String idLocatorEndpoint = "https://conceptmap.cfapps.io/idlocator";
+  private int maxConnections = 20;
+  private int connectTimeoutMillis = 2000;
+  private int readTimeoutMillis = 3000;
+  private int poolTimeoutMillis = 500;
+  private long keepAliveMillis = 60000;
+  private long maxDrainBytes = 16 * 1024;
+  private int itemIdCacheSize = 10000;
+  private long itemIdTtlMillis = 24 * 60 * 60 * 1000L;
+  private long itemIdNotFoundTtlMillis = 10 * 60 * 1000L;
+  private long claimsFreshMillis = 60 * 60 * 1000L;
+  private long claimsMaxStaleMillis = 7 * 24 * 60 * 60 * 1000L;
+  private long claimsCacheMaxBytes = 32 * 1024 * 1024L;
+  private int refreshThreads = 2;
+  private int maxLabels = 100;
+  private long requestBudgetMillis = 6000;
+  private long pictureMinBudgetMillis = 750;
+  private long pictureTimeSliceMillis = 1000;
+  private long pictureRedirectTtlMillis = 24 * 60 * 60 * 1000L;
+  private int pictureCacheSize = 5000;
+  private int pictureThreads = 4;
+  private String labelDictionaryPath;
+  private long metricsSummaryMillis = 60000;
+  private double logSampleRate = 0.01;
+  private int logBodyMaxChars = 256;
+  private String debugSessionId;
+  private int breakerWindowSize = 20;
+  private int breakerMinimumCalls = 10;
+  private double breakerFailureRateThreshold = 0.5;
+  private long breakerSlowCallMillis = 2000;
+  private double breakerSlowCallRateThreshold = 0.8;
+  private long breakerOpenMillis = 30000;
+  private int breakerHalfOpenCalls = 3;
+  private int bulkheadMaxConcurrentCalls;
+  private String dynamoTableName;
+  private String dynamoEndpoint;
+  private String dynamoRegion = "us-east-1";
+  private int dynamoTimeoutMillis = 250;
+  private int dynamoWriteQueueSize = 1000;
+  private long dynamoFlushMillis = 200;
+  private boolean warmupEnabled = true;
+  private boolean warmupPreloadClasses = true;
+  private int prewarmConnections = 2;
+  private int speechPageSize = 5;
+  private int traversalMaxDepth = 3;
+  private int traversalMaxNodes = 200;
+  private int traversalParallelism = 4;
+  private int traversalThreads = 16;
+  private int labelInternerMaxSize = 100000;
+  private boolean gzipEnabled = true;
+  private boolean revalidationEnabled = true;
+  private String recordingPath;
+  private int recordingQueueSize = 1000;
+  private long recordingFlushMillis = 200;
+  private boolean hedgingEnabled;
+  private double hedgePercentile = 90;
+  private int hedgeMinDelayMillis = 20;
+  private double hedgeBudgetPercent = 5;
+  private int hedgeWindowSize = 200;
+  private int hedgeThreads = 8;
+  private String answerSnapshotPath;
+  private long answerSnapshotMaxAgeMillis = 7 * 24 * 60 * 60 * 1000L;
+
+  public ConceptMapClientConfig() {
+  }
+
+  /**
+   * Create a config from the defaults, overridden by any system properties or environment variables
+   */
+  public static ConceptMapClientConfig fromSystemProperties() {
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    config.setTraversalEndpoint(getSetting("traversalEndpoint", config.getTraversalEndpoint()));
+    config.setIdLocatorEndpoint(getSetting("idLocatorEndpoint", config.getIdLocatorEndpoint()));
+    config.setMaxConnections(getInt("maxConnections", config.getMaxConnections()));
+    config.setConnectTimeoutMillis(getInt("connectTimeoutMillis", config.getConnectTimeoutMillis()));
+    config.setReadTimeoutMillis(getInt("readTimeoutMillis", config.getReadTimeoutMillis()));
+    config.setPoolTimeoutMillis(getInt("poolTimeoutMillis", config.getPoolTimeoutMillis()));
+    config.setKeepAliveMillis(getLong("keepAliveMillis", config.getKeepAliveMillis()));
+    config.setMaxDrainBytes(getLong("maxDrainBytes", config.getMaxDrainBytes()));
+    config.setItemIdCacheSize(getInt("itemIdCacheSize", config.getItemIdCacheSize()));
+    config.setItemIdTtlMillis(getLong("itemIdTtlMillis", config.getItemIdTtlMillis()));
+    config.setItemIdNotFoundTtlMillis(
+        getLong("itemIdNotFoundTtlMillis", config.getItemIdNotFoundTtlMillis()));
+    config.setClaimsFreshMillis(getLong("claimsFreshMillis", config.getClaimsFreshMillis()));
+    config.setClaimsMaxStaleMillis(getLong("claimsMaxStaleMillis", config.getClaimsMaxStaleMillis()));
+    config.setClaimsCacheMaxBytes(getLong("claimsCacheMaxBytes", config.getClaimsCacheMaxBytes()));
+    config.setRefreshThreads(getInt("refreshThreads", config.getRefreshThreads()));
+    config.setMaxLabels(getInt("maxLabels", config.getMaxLabels()));
+    config.setRequestBudgetMillis(getLong("requestBudgetMillis", config.getRequestBudgetMillis()));
+    config.setPictureMinBudgetMillis(
+        getLong("pictureMinBudgetMillis", config.getPictureMinBudgetMillis()));
+    config.setPictureTimeSliceMillis(
+        getLong("pictureTimeSliceMillis", config.getPictureTimeSliceMillis()));
+    config.setPictureRedirectTtlMillis(
+        getLong("pictureRedirectTtlMillis", config.getPictureRedirectTtlMillis()));
+    config.setPictureCacheSize(getInt("pictureCacheSize", config.getPictureCacheSize()));
+    config.setPictureThreads(getInt("pictureThreads", config.getPictureThreads()));
+    config.setLabelDictionaryPath(getSetting("labelDictionaryPath", config.getLabelDictionaryPath()));
+    config.setMetricsSummaryMillis(getLong("metricsSummaryMillis", config.getMetricsSummaryMillis()));
+    config.setLogSampleRate(getDouble("logSampleRate", config.getLogSampleRate()));
+    config.setLogBodyMaxChars(getInt("logBodyMaxChars", config.getLogBodyMaxChars()));
+    config.setDebugSessionId(getSetting("debugSessionId", config.getDebugSessionId()));
+    config.setBreakerWindowSize(getInt("breakerWindowSize", config.getBreakerWindowSize()));
+    config.setBreakerMinimumCalls(getInt("breakerMinimumCalls", config.getBreakerMinimumCalls()));
+    config.setBreakerFailureRateThreshold(
+        getDouble("breakerFailureRateThreshold", config.getBreakerFailureRateThreshold()));
+    config.setBreakerSlowCallMillis(
+        getLong("breakerSlowCallMillis", config.getBreakerSlowCallMillis()));
+    config.setBreakerSlowCallRateThreshold(
+        getDouble("breakerSlowCallRateThreshold", config.getBreakerSlowCallRateThreshold()));
+    config.setBreakerOpenMillis(getLong("breakerOpenMillis", config.getBreakerOpenMillis()));
+    config.setBreakerHalfOpenCalls(
+        getInt("breakerHalfOpenCalls", config.getBreakerHalfOpenCalls()));
+    config.setBulkheadMaxConcurrentCalls(
+        getInt("bulkheadMaxConcurrentCalls", config.getBulkheadMaxConcurrentCalls()));
+    config.setDynamoTableName(getSetting("dynamoTableName", config.getDynamoTableName()));
+    config.setDynamoEndpoint(getSetting("dynamoEndpoint", config.getDynamoEndpoint()));
+    config.setDynamoRegion(getSetting("dynamoRegion", config.getDynamoRegion()));
+    config.setDynamoTimeoutMillis(getInt("dynamoTimeoutMillis", config.getDynamoTimeoutMillis()));
+    config.setDynamoWriteQueueSize(
+        getInt("dynamoWriteQueueSize", config.getDynamoWriteQueueSize()));
+    config.setDynamoFlushMillis(getLong("dynamoFlushMillis", config.getDynamoFlushMillis()));
+    config.setWarmupEnabled(getBoolean("warmupEnabled", config.isWarmupEnabled()));
+    config.setWarmupPreloadClasses(
+        getBoolean("warmupPreloadClasses", config.isWarmupPreloadClasses()));
+    config.setPrewarmConnections(getInt("prewarmConnections", config.getPrewarmConnections()));
+    config.setSpeechPageSize(getInt("speechPageSize", config.getSpeechPageSize()));
+    config.setTraversalMaxDepth(getInt("traversalMaxDepth", config.getTraversalMaxDepth()));
+    config.setTraversalMaxNodes(getInt("traversalMaxNodes", config.getTraversalMaxNodes()));
+    config.setTraversalParallelism(
+        getInt("traversalParallelism", config.getTraversalParallelism()));
+    config.setTraversalThreads(getInt("traversalThreads", config.getTraversalThreads()));
+    config.setLabelInternerMaxSize(
+        getInt("labelInternerMaxSize", config.getLabelInternerMaxSize()));
+    config.setGzipEnabled(getBoolean("gzipEnabled", config.isGzipEnabled()));
+    config.setRevalidationEnabled(
+        getBoolean("revalidationEnabled", config.isRevalidationEnabled()));
+    config.setRecordingPath(getSetting("recordingPath", config.getRecordingPath()));
+    config.setRecordingQueueSize(getInt("recordingQueueSize", config.getRecordingQueueSize()));
+    config.setRecordingFlushMillis(
+        getLong("recordingFlushMillis", config.getRecordingFlushMillis()));
+    config.setHedgingEnabled(getBoolean("hedgingEnabled", config.isHedgingEnabled()));
+    config.setHedgePercentile(getDouble("hedgePercentile", config.getHedgePercentile()));
+    config.setHedgeMinDelayMillis(getInt("hedgeMinDelayMillis", config.getHedgeMinDelayMillis()));
+    config.setHedgeBudgetPercent(getDouble("hedgeBudgetPercent", config.getHedgeBudgetPercent()));
+    config.setHedgeWindowSize(getInt("hedgeWindowSize", config.getHedgeWindowSize()));
+    config.setHedgeThreads(getInt("hedgeThreads", config.getHedgeThreads()));
+    config.setAnswerSnapshotPath(getSetting("answerSnapshotPath", config.getAnswerSnapshotPath()));
+    config.setAnswerSnapshotMaxAgeMillis(
+        getLong("answerSnapshotMaxAgeMillis", config.getAnswerSnapshotMaxAgeMillis()));
+    return config;
+  }
+
+  /**
+   * Look up a setting as a system property, falling back to the equivalent environment variable
+   */
+  static String getSetting(String name, String defaultValue) {
+    String value = System.getProperty(PROPERTY_PREFIX + name);
+    if (value == null) {
+      value = System.getenv(toEnvironmentName(name));
+    }
+    return value != null && value.trim().length() > 0 ? value.trim() : defaultValue;
+  }
+
+  static int getInt(String name, int defaultValue) {
+    return (int) getLong(name, defaultValue);
+  }
+
+  static long getLong(String name, long defaultValue) {
+    String value = getSetting(name, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  static double getDouble(String name, double defaultValue) {
+    String value = getSetting(name, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  static boolean getBoolean(String name, boolean defaultValue) {
+    String value = getSetting(name, null);
+    return value == null ? defaultValue : Boolean.parseBoolean(value);
+  }
+
+  private static String toEnvironmentName(String name) {
+    StringBuilder envName = new StringBuilder("CONCEPTMAP_");
+    for (char c : name.toCharArray()) {
+      if (Character.isUpperCase(c)) {
+        envName.append('_');
+      }
+      envName.append(c == '.' ? '_' : Character.toUpperCase(c));
+    }
+    return envName.toString();
+  }
+
+  /**
+   * @return the URL of the traversal endpoint, which may point at a stand-in for load testing
+   */
+  public String getTraversalEndpoint() {
+    return traversalEndpoint;
+  }
+
+  public void setTraversalEndpoint(String traversalEndpoint) {
+    this.traversalEndpoint = traversalEndpoint;
+  }
+
+  /**
+   * @return the URL of the idlocator endpoint, which may point at a stand-in for load testing
+   */
+  public String getIdLocatorEndpoint() {
+    return idLocatorEndpoint;
+  }
+
+  public void setIdLocatorEndpoint(String idLocatorEndpoint) {
+    this.idLocatorEndpoint = idLocatorEndpoint;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  public int getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  public int getPoolTimeoutMillis() {
+    return poolTimeoutMillis;
+  }
+
+  public void setPoolTimeoutMillis(int poolTimeoutMillis) {
+    this.poolTimeoutMillis = poolTimeoutMillis;
+  }
+
+  public long getKeepAliveMillis() {
+    return keepAliveMillis;
+  }
+
+  public void setKeepAliveMillis(long keepAliveMillis) {
+    this.keepAliveMillis = keepAliveMillis;
+  }
+
+  /**
+   * @return the most unread bytes of a response body that are read off a connection when it's
+   *     closed, so it can be reused; with more left, the connection is closed instead
+   */
+  public long getMaxDrainBytes() {
+    return maxDrainBytes;
+  }
+
+  public void setMaxDrainBytes(long maxDrainBytes) {
+    this.maxDrainBytes = maxDrainBytes;
+  }
+
+  public int getItemIdCacheSize() {
+    return itemIdCacheSize;
+  }
+
+  public void setItemIdCacheSize(int itemIdCacheSize) {
+    this.itemIdCacheSize = itemIdCacheSize;
+  }
+
+  public long getItemIdTtlMillis() {
+    return itemIdTtlMillis;
+  }
+
+  public void setItemIdTtlMillis(long itemIdTtlMillis) {
+    this.itemIdTtlMillis = itemIdTtlMillis;
+  }
+
+  public long getItemIdNotFoundTtlMillis() {
+    return itemIdNotFoundTtlMillis;
+  }
+
+  public void setItemIdNotFoundTtlMillis(long itemIdNotFoundTtlMillis) {
+    this.itemIdNotFoundTtlMillis = itemIdNotFoundTtlMillis;
+  }
+
+  public long getClaimsFreshMillis() {
+    return claimsFreshMillis;
+  }
+
+  public void setClaimsFreshMillis(long claimsFreshMillis) {
+    this.claimsFreshMillis = claimsFreshMillis;
+  }
+
+  public long getClaimsMaxStaleMillis() {
+    return claimsMaxStaleMillis;
+  }
+
+  public void setClaimsMaxStaleMillis(long claimsMaxStaleMillis) {
+    this.claimsMaxStaleMillis = claimsMaxStaleMillis;
+  }
+
+  public long getClaimsCacheMaxBytes() {
+    return claimsCacheMaxBytes;
+  }
+
+  public void setClaimsCacheMaxBytes(long claimsCacheMaxBytes) {
+    this.claimsCacheMaxBytes = claimsCacheMaxBytes;
+  }
+
+  public int getRefreshThreads() {
+    return refreshThreads;
+  }
+
+  public void setRefreshThreads(int refreshThreads) {
+    this.refreshThreads = refreshThreads;
+  }
+
+  public int getMaxLabels() {
+    return maxLabels;
+  }
+
+  public void setMaxLabels(int maxLabels) {
+    this.maxLabels = maxLabels;
+  }
+
+  public long getRequestBudgetMillis() {
+    return requestBudgetMillis;
+  }
+
+  public void setRequestBudgetMillis(long requestBudgetMillis) {
+    this.requestBudgetMillis = requestBudgetMillis;
+  }
+
+  public long getPictureMinBudgetMillis() {
+    return pictureMinBudgetMillis;
+  }
+
+  public void setPictureMinBudgetMillis(long pictureMinBudgetMillis) {
+    this.pictureMinBudgetMillis = pictureMinBudgetMillis;
+  }
+
+  public long getPictureTimeSliceMillis() {
+    return pictureTimeSliceMillis;
+  }
+
+  public void setPictureTimeSliceMillis(long pictureTimeSliceMillis) {
+    this.pictureTimeSliceMillis = pictureTimeSliceMillis;
+  }
+
+  public long getPictureRedirectTtlMillis() {
+    return pictureRedirectTtlMillis;
+  }
+
+  public void setPictureRedirectTtlMillis(long pictureRedirectTtlMillis) {
+    this.pictureRedirectTtlMillis = pictureRedirectTtlMillis;
+  }
+
+  public int getPictureCacheSize() {
+    return pictureCacheSize;
+  }
+
+  public void setPictureCacheSize(int pictureCacheSize) {
+    this.pictureCacheSize = pictureCacheSize;
+  }
+
+  public int getPictureThreads() {
+    return pictureThreads;
+  }
+
+  public void setPictureThreads(int pictureThreads) {
+    this.pictureThreads = pictureThreads;
+  }
+
+  /**
+   * @return the path of a {@link LabelDictionary} file to answer item lookups from, or null
+   */
+  public String getLabelDictionaryPath() {
+    return labelDictionaryPath;
+  }
+
+  public void setLabelDictionaryPath(String labelDictionaryPath) {
+    this.labelDictionaryPath = labelDictionaryPath;
+  }
+
+  /**
+   * @return how often to log a summary of the metrics, or 0 to never log one
+   */
+  public long getMetricsSummaryMillis() {
+    return metricsSummaryMillis;
+  }
+
+  public void setMetricsSummaryMillis(long metricsSummaryMillis) {
+    this.metricsSummaryMillis = metricsSummaryMillis;
+  }
+
+  /**
+   * @return the fraction of requests whose verbose diagnostics are logged
+   */
+  public double getLogSampleRate() {
+    return logSampleRate;
+  }
+
+  public void setLogSampleRate(double logSampleRate) {
+    this.logSampleRate = logSampleRate;
+  }
+
+  /**
+   * @return how much of a response body a sampled request logs
+   */
+  public int getLogBodyMaxChars() {
+    return logBodyMaxChars;
+  }
+
+  public void setLogBodyMaxChars(int logBodyMaxChars) {
+    this.logBodyMaxChars = logBodyMaxChars;
+  }
+
+  /**
+   * @return the session whose requests are all logged with full response bodies, or null
+   */
+  public String getDebugSessionId() {
+    return debugSessionId;
+  }
+
+  public void setDebugSessionId(String debugSessionId) {
+    this.debugSessionId = debugSessionId;
+  }
+
+  /**
+   * @return how many of an endpoint's most recent calls its circuit breaker judges it by
+   */
+  public int getBreakerWindowSize() {
+    return breakerWindowSize;
+  }
+
+  public void setBreakerWindowSize(int breakerWindowSize) {
+    this.breakerWindowSize = breakerWindowSize;
+  }
+
+  /**
+   * @return how many calls an endpoint must have had before its circuit breaker can open
+   */
+  public int getBreakerMinimumCalls() {
+    return breakerMinimumCalls;
+  }
+
+  public void setBreakerMinimumCalls(int breakerMinimumCalls) {
+    this.breakerMinimumCalls = breakerMinimumCalls;
+  }
+
+  /**
+   * @return the fraction of recent calls that must fail for an endpoint's circuit to open
+   */
+  public double getBreakerFailureRateThreshold() {
+    return breakerFailureRateThreshold;
+  }
+
+  public void setBreakerFailureRateThreshold(double breakerFailureRateThreshold) {
+    this.breakerFailureRateThreshold = breakerFailureRateThreshold;
+  }
+
+  /**
+   * @return how long a call can take before the circuit breaker counts it as slow
+   */
+  public long getBreakerSlowCallMillis() {
+    return breakerSlowCallMillis;
+  }
+
+  public void setBreakerSlowCallMillis(long breakerSlowCallMillis) {
+    this.breakerSlowCallMillis = breakerSlowCallMillis;
+  }
+
+  /**
+   * @return the fraction of recent calls that must be slow for an endpoint's circuit to open
+   */
+  public double getBreakerSlowCallRateThreshold() {
+    return breakerSlowCallRateThreshold;
+  }
+
+  public void setBreakerSlowCallRateThreshold(double breakerSlowCallRateThreshold) {
+    this.breakerSlowCallRateThreshold = breakerSlowCallRateThreshold;
+  }
+
+  /**
+   * @return how long an open circuit refuses calls before letting trial calls through
+   */
+  public long getBreakerOpenMillis() {
+    return breakerOpenMillis;
+  }
+
+  public void setBreakerOpenMillis(long breakerOpenMillis) {
+    this.breakerOpenMillis = breakerOpenMillis;
+  }
+
+  /**
+   * @return how many trial calls must succeed to close a circuit again
+   */
+  public int getBreakerHalfOpenCalls() {
+    return breakerHalfOpenCalls;
+  }
+
+  public void setBreakerHalfOpenCalls(int breakerHalfOpenCalls) {
+    this.breakerHalfOpenCalls = breakerHalfOpenCalls;
+  }
+
+  /**
+   * @return how many calls to each endpoint can be in flight at once, or 0 for as many as
+   *     maxConnections, which also caps a larger value
+   */
+  public int getBulkheadMaxConcurrentCalls() {
+    return bulkheadMaxConcurrentCalls;
+  }
+
+  public void setBulkheadMaxConcurrentCalls(int bulkheadMaxConcurrentCalls) {
+    this.bulkheadMaxConcurrentCalls = bulkheadMaxConcurrentCalls;
+  }
+
+  /**
+   * @return the DynamoDB table shared by all containers as a second level cache, or null for none
+   */
+  public String getDynamoTableName() {
+    return dynamoTableName;
+  }
+
+  public void setDynamoTableName(String dynamoTableName) {
+    this.dynamoTableName = dynamoTableName;
+  }
+
+  /**
+   * @return the DynamoDB endpoint, such as {@code http://localhost:8000} for DynamoDB Local, or
+   *     null for the one in {@link #getDynamoRegion()}
+   */
+  public String getDynamoEndpoint() {
+    return dynamoEndpoint;
+  }
+
+  public void setDynamoEndpoint(String dynamoEndpoint) {
+    this.dynamoEndpoint = dynamoEndpoint;
+  }
+
+  public String getDynamoRegion() {
+    return dynamoRegion;
+  }
+
+  public void setDynamoRegion(String dynamoRegion) {
+    this.dynamoRegion = dynamoRegion;
+  }
+
+  /**
+   * @return how long a second level cache lookup may take before it's treated as a miss
+   */
+  public int getDynamoTimeoutMillis() {
+    return dynamoTimeoutMillis;
+  }
+
+  public void setDynamoTimeoutMillis(int dynamoTimeoutMillis) {
+    this.dynamoTimeoutMillis = dynamoTimeoutMillis;
+  }
+
+  /**
+   * @return how many second level cache writes can wait to be sent before more are dropped
+   */
+  public int getDynamoWriteQueueSize() {
+    return dynamoWriteQueueSize;
+  }
+
+  public void setDynamoWriteQueueSize(int dynamoWriteQueueSize) {
+    this.dynamoWriteQueueSize = dynamoWriteQueueSize;
+  }
+
+  /**
+   * @return how long a Lambda invocation waits for its second level cache writes to be sent
+   *     before returning, as the container may be frozen or reclaimed once it has
+   */
+  public long getDynamoFlushMillis() {
+    return dynamoFlushMillis;
+  }
+
+  public void setDynamoFlushMillis(long dynamoFlushMillis) {
+    this.dynamoFlushMillis = dynamoFlushMillis;
+  }
+
+  /**
+   * @return whether to warm up during Lambda's init phase, so the first request doesn't pay for it
+   */
+  public boolean isWarmupEnabled() {
+    return warmupEnabled;
+  }
+
+  public void setWarmupEnabled(boolean warmupEnabled) {
+    this.warmupEnabled = warmupEnabled;
+  }
+
+  /**
+   * @return whether warm-up loads the classes in the bundled preload list
+   */
+  public boolean isWarmupPreloadClasses() {
+    return warmupPreloadClasses;
+  }
+
+  public void setWarmupPreloadClasses(boolean warmupPreloadClasses) {
+    this.warmupPreloadClasses = warmupPreloadClasses;
+  }
+
+  /**
+   * @return how many idle connections to each ConceptMap host a prewarm leaves in the pool
+   */
+  public int getPrewarmConnections() {
+    return prewarmConnections;
+  }
+
+  public void setPrewarmConnections(int prewarmConnections) {
+    this.prewarmConnections = prewarmConnections;
+  }
+
+  /**
+   * @return the number of labels spoken at a time, the rest being read out when the user asks for more
+   */
+  public int getSpeechPageSize() {
+    return speechPageSize;
+  }
+
+  public void setSpeechPageSize(int speechPageSize) {
+    this.speechPageSize = speechPageSize;
+  }
+
+  /**
+   * @return the most hops a multi-hop relationship may take
+   */
+  public int getTraversalMaxDepth() {
+    return traversalMaxDepth;
+  }
+
+  public void setTraversalMaxDepth(int traversalMaxDepth) {
+    this.traversalMaxDepth = traversalMaxDepth;
+  }
+
+  /**
+   * @return the most items a multi-hop traversal fetches, across all its hops
+   */
+  public int getTraversalMaxNodes() {
+    return traversalMaxNodes;
+  }
+
+  public void setTraversalMaxNodes(int traversalMaxNodes) {
+    this.traversalMaxNodes = traversalMaxNodes;
+  }
+
+  /**
+   * @return the most traversal calls one multi-hop request has in flight at once
+   */
+  public int getTraversalParallelism() {
+    return traversalParallelism;
+  }
+
+  public void setTraversalParallelism(int traversalParallelism) {
+    this.traversalParallelism = traversalParallelism;
+  }
+
+  /**
+   * @return the threads shared by multi-hop traversals for their calls
+   */
+  public int getTraversalThreads() {
+    return traversalThreads;
+  }
+
+  public void setTraversalThreads(int traversalThreads) {
+    this.traversalThreads = traversalThreads;
+  }
+
+  /**
+   * @return the most distinct labels shared between cached claims, beyond which labels aren't shared
+   */
+  public int getLabelInternerMaxSize() {
+    return labelInternerMaxSize;
+  }
+
+  public void setLabelInternerMaxSize(int labelInternerMaxSize) {
+    this.labelInternerMaxSize = labelInternerMaxSize;
+  }
+
+  /**
+   * @return whether ConceptMap is asked for gzip compressed responses
+   */
+  public boolean isGzipEnabled() {
+    return gzipEnabled;
+  }
+
+  public void setGzipEnabled(boolean gzipEnabled) {
+    this.gzipEnabled = gzipEnabled;
+  }
+
+  /**
+   * @return whether expired claims are revalidated with their ETag or Last-Modified date rather than fetched again
+   */
+  public boolean isRevalidationEnabled() {
+    return revalidationEnabled;
+  }
+
+  public void setRevalidationEnabled(boolean revalidationEnabled) {
+    this.revalidationEnabled = revalidationEnabled;
+  }
+
+  /**
+   * @return the file the Lambda handler appends the envelopes it's sent and the upstream
+   *     responses they trigger to, or null not to record them; see {@link TrafficRecorder}
+   */
+  public String getRecordingPath() {
+    return recordingPath;
+  }
+
+  public void setRecordingPath(String recordingPath) {
+    this.recordingPath = recordingPath;
+  }
+
+  /**
+   * @return the most records waiting to be written before new ones are dropped
+   */
+  public int getRecordingQueueSize() {
+    return recordingQueueSize;
+  }
+
+  public void setRecordingQueueSize(int recordingQueueSize) {
+    this.recordingQueueSize = recordingQueueSize;
+  }
+
+  /**
+   * @return how long a Lambda invocation waits for its recorded traffic to be written before
+   *     returning, as the container may be frozen or reclaimed once it has
+   */
+  public long getRecordingFlushMillis() {
+    return recordingFlushMillis;
+  }
+
+  public void setRecordingFlushMillis(long recordingFlushMillis) {
+    this.recordingFlushMillis = recordingFlushMillis;
+  }
+
+  /**
+   * @return whether a call to the idlocator or traversal endpoint that is slower than usual
+   *     gets a backup request, the first answer winning; see {@link Hedger}
+   */
+  public boolean isHedgingEnabled() {
+    return hedgingEnabled;
+  }
+
+  public void setHedgingEnabled(boolean hedgingEnabled) {
+    this.hedgingEnabled = hedgingEnabled;
+  }
+
+  /**
+   * @return the percentile of an endpoint's recent latencies a call must exceed before it's hedged
+   */
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public void setHedgePercentile(double hedgePercentile) {
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  /**
+   * @return the least time a call is given before it's hedged
+   */
+  public int getHedgeMinDelayMillis() {
+    return hedgeMinDelayMillis;
+  }
+
+  public void setHedgeMinDelayMillis(int hedgeMinDelayMillis) {
+    this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+  }
+
+  /**
+   * @return the most backup requests to send, as a percentage of calls
+   */
+  public double getHedgeBudgetPercent() {
+    return hedgeBudgetPercent;
+  }
+
+  public void setHedgeBudgetPercent(double hedgeBudgetPercent) {
+    this.hedgeBudgetPercent = hedgeBudgetPercent;
+  }
+
+  /**
+   * @return how many of an endpoint's most recent latencies the hedging percentile is taken over
+   */
+  public int getHedgeWindowSize() {
+    return hedgeWindowSize;
+  }
+
+  public void setHedgeWindowSize(int hedgeWindowSize) {
+    this.hedgeWindowSize = hedgeWindowSize;
+  }
+
+  /**
+   * @return the threads that send backup requests
+   */
+  public int getHedgeThreads() {
+    return hedgeThreads;
+  }
+
+  public void setHedgeThreads(int hedgeThreads) {
+    this.hedgeThreads = hedgeThreads;
+  }
+
+  /**
+   * @return the path of an {@link AnswerSnapshot} file to answer the most asked questions from,
+   *     or null for the answers.snapshot bundled with the skill, if there is one
+   */
+  public String getAnswerSnapshotPath() {
+    return answerSnapshotPath;
+  }
+
+  public void setAnswerSnapshotPath(String answerSnapshotPath) {
+    this.answerSnapshotPath = answerSnapshotPath;
+  }
+
+  /**
+   * @return how old a snapshot answer can be before it's fetched live instead
+   */
+  public long getAnswerSnapshotMaxAgeMillis() {
+    return answerSnapshotMaxAgeMillis;
+  }
+
+  public void setAnswerSnapshotMaxAgeMillis(long answerSnapshotMaxAgeMillis) {
+    this.answerSnapshotMaxAgeMillis = answerSnapshotMaxAgeMillis;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "ConceptMapClientConfig{" +
+        "traversalEndpoint='" + traversalEndpoint + '\'' +
+        ", idLocatorEndpoint='" + idLocatorEndpoint + '\'' +
+        ", maxConnections=" + maxConnections +
+        ", connectTimeoutMillis=" + connectTimeoutMillis +
+        ", readTimeoutMillis=" + readTimeoutMillis +
+        ", poolTimeoutMillis=" + poolTimeoutMillis +
+        ", keepAliveMillis=" + keepAliveMillis +
+        ", maxDrainBytes=" + maxDrainBytes +
+        ", itemIdCacheSize=" + itemIdCacheSize +
+        ", itemIdTtlMillis=" + itemIdTtlMillis +
+        ", itemIdNotFoundTtlMillis=" + itemIdNotFoundTtlMillis +
+        ", claimsFreshMillis=" + claimsFreshMillis +
+        ", claimsMaxStaleMillis=" + claimsMaxStaleMillis +
+        ", claimsCacheMaxBytes=" + claimsCacheMaxBytes +
+        ", refreshThreads=" + refreshThreads +
+        ", maxLabels=" + maxLabels +
+        ", requestBudgetMillis=" + requestBudgetMillis +
+        ", pictureMinBudgetMillis=" + pictureMinBudgetMillis +
+        ", pictureTimeSliceMillis=" + pictureTimeSliceMillis +
+        ", pictureRedirectTtlMillis=" + pictureRedirectTtlMillis +
+        ", pictureCacheSize=" + pictureCacheSize +
+        ", pictureThreads=" + pictureThreads +
+        ", labelDictionaryPath='" + labelDictionaryPath + '\'' +
+        ", metricsSummaryMillis=" + metricsSummaryMillis +
+        ", logSampleRate=" + logSampleRate +
+        ", logBodyMaxChars=" + logBodyMaxChars +
+        ", debugSessionId='" + debugSessionId + '\'' +
+        ", breakerWindowSize=" + breakerWindowSize +
+        ", breakerMinimumCalls=" + breakerMinimumCalls +
+        ", breakerFailureRateThreshold=" + breakerFailureRateThreshold +
+        ", breakerSlowCallMillis=" + breakerSlowCallMillis +
+        ", breakerSlowCallRateThreshold=" + breakerSlowCallRateThreshold +
+        ", breakerOpenMillis=" + breakerOpenMillis +
+        ", breakerHalfOpenCalls=" + breakerHalfOpenCalls +
+        ", bulkheadMaxConcurrentCalls=" + bulkheadMaxConcurrentCalls +
+        ", dynamoTableName='" + dynamoTableName + '\'' +
+        ", dynamoEndpoint='" + dynamoEndpoint + '\'' +
+        ", dynamoRegion='" + dynamoRegion + '\'' +
+        ", dynamoTimeoutMillis=" + dynamoTimeoutMillis +
+        ", dynamoWriteQueueSize=" + dynamoWriteQueueSize +
+        ", dynamoFlushMillis=" + dynamoFlushMillis +
+        ", warmupEnabled=" + warmupEnabled +
+        ", warmupPreloadClasses=" + warmupPreloadClasses +
+        ", prewarmConnections=" + prewarmConnections +
+        ", speechPageSize=" + speechPageSize +
+        ", traversalMaxDepth=" + traversalMaxDepth +
+        ", traversalMaxNodes=" + traversalMaxNodes +
+        ", traversalParallelism=" + traversalParallelism +
+        ", traversalThreads=" + traversalThreads +
+        ", labelInternerMaxSize=" + labelInternerMaxSize +
+        ", gzipEnabled=" + gzipEnabled +
+        ", revalidationEnabled=" + revalidationEnabled +
+        ", recordingPath='" + recordingPath + '\'' +
+        ", recordingQueueSize=" + recordingQueueSize +
+        ", recordingFlushMillis=" + recordingFlushMillis +
+        ", hedgingEnabled=" + hedgingEnabled +
+        ", hedgePercentile=" + hedgePercentile +
+        ", hedgeMinDelayMillis=" + hedgeMinDelayMillis +
+        ", hedgeBudgetPercent=" + hedgeBudgetPercent +
+        ", hedgeWindowSize=" + hedgeWindowSize +
+        ", hedgeThreads=" + hedgeThreads +
+        ", answerSnapshotPath='" + answerSnapshotPath + '\'' +
+        ", answerSnapshotMaxAgeMillis=" + answerSnapshotMaxAgeMillis +
+        '}';
+  }
+}
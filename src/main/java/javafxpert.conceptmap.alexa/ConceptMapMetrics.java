@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms for each stage of a request, and counters for what happened. Recording is
+ * lock-free and allocation-free once a stage or counter has been seen, so it's cheap enough for
+ * every request.
+ * <p>
+ * The default instance is published over JMX as {@value #OBJECT_NAME}, as text by the
+ * {@link MetricsServlet} in server mode, and as a periodic summary log line, which is all there
+ * is on Lambda.
+ */
+public class ConceptMapMetrics implements ConceptMapMetricsMXBean {
+  private static final Logger log = LoggerFactory.getLogger(ConceptMapMetrics.class);
+
+  public static final String OBJECT_NAME = "javafxpert.conceptmap:type=Metrics";
+
+  private static final double[] PERCENTILES = {50, 90, 99};
+
+  /**
+   * A value that is read when the metrics are published, such as a cache's own hit count
+   */
+  public interface Gauge {
+    long getValue();
+  }
+
+  private static class DefaultHolder {
+    private static final ConceptMapMetrics DEFAULT = createDefault();
+  }
+
+  private final ConcurrentMap<String, LatencyHistogram> stages = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+  private final AtomicLong lastSummaryMillis = new AtomicLong(System.currentTimeMillis());
+
+  /**
+   * @return the metrics shared by everything in this JVM, registered with the platform MBean
+   *     server
+   */
+  public static ConceptMapMetrics getDefault() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  private static ConceptMapMetrics createDefault() {
+    ConceptMapMetrics metrics = new ConceptMapMetrics();
+    try {
+      ManagementFactory.getPlatformMBeanServer()
+          .registerMBean(metrics, new ObjectName(OBJECT_NAME));
+    } catch (Exception e) {
+      log.warn("Couldn't register " + OBJECT_NAME + " with JMX: " + e);
+    }
+    return metrics;
+  }
+
+  public void recordStage(String stage, long nanos) {
+    LatencyHistogram histogram = stages.get(stage);
+    if (histogram == null) {
+      stages.putIfAbsent(stage, new LatencyHistogram());
+      histogram = stages.get(stage);
+    }
+    histogram.recordNanos(nanos);
+  }
+
+  /**
+   * Record every stage timed against a request's deadline
+   */
+  public void recordStages(Deadline deadline) {
+    for (Map.Entry<String, Long> stage : deadline.getStageNanos().entrySet()) {
+      recordStage(stage.getKey(), stage.getValue());
+    }
+  }
+
+  public void increment(String counter) {
+    AtomicLong count = counters.get(counter);
+    if (count == null) {
+      counters.putIfAbsent(counter, new AtomicLong());
+      count = counters.get(counter);
+    }
+    count.incrementAndGet();
+  }
+
+  public void registerGauge(String name, Gauge gauge) {
+    gauges.put(name, gauge);
+  }
+
+  /**
+   * @return the histogram for a stage, or null if it hasn't been recorded
+   */
+  public LatencyHistogram getStage(String stage) {
+    return stages.get(stage);
+  }
+
+  public long getCount(String counter) {
+    AtomicLong count = counters.get(counter);
+    return count != null ? count.get() : 0;
+  }
+
+  @Override
+  public Map<String, Long> getCounters() {
+    Map<String, Long> values = new TreeMap<>();
+    for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+      values.put(counter.getKey(), counter.getValue().get());
+    }
+    for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+      values.put(gauge.getKey(), gauge.getValue().getValue());
+    }
+    return values;
+  }
+
+  @Override
+  public Map<String, Double> getStagePercentilesMillis() {
+    Map<String, Double> values = new TreeMap<>();
+    for (Map.Entry<String, LatencyHistogram> stage : stages.entrySet()) {
+      for (double percentile : PERCENTILES) {
+        values.put(stage.getKey() + ".p" + (int) percentile,
+            stage.getValue().getValueAtPercentile(percentile) / 1000.0);
+      }
+      values.put(stage.getKey() + ".max", stage.getValue().getMaxMicros() / 1000.0);
+    }
+    return values;
+  }
+
+  @Override
+  public Map<String, String> getStageSummaries() {
+    Map<String, String> values = new TreeMap<>();
+    for (Map.Entry<String, LatencyHistogram> stage : stages.entrySet()) {
+      values.put(stage.getKey(), stage.getValue().toString());
+    }
+    return values;
+  }
+
+  @Override
+  public void reset() {
+    for (LatencyHistogram histogram : stages.values()) {
+      histogram.reset();
+    }
+    for (AtomicLong count : counters.values()) {
+      count.set(0);
+    }
+  }
+
+  /**
+   * Write the metrics in the Prometheus text format, for scraping
+   */
+  public String toText() {
+    StringBuilder text = new StringBuilder();
+    text.append("# TYPE conceptmap_stage_seconds summary\n");
+    for (Map.Entry<String, LatencyHistogram> stage : stages.entrySet()) {
+      LatencyHistogram histogram = stage.getValue();
+      String label = "stage=\"" + stage.getKey() + "\"";
+      for (double percentile : PERCENTILES) {
+        text.append("conceptmap_stage_seconds{").append(label)
+            .append(",quantile=\"").append(percentile / 100).append("\"} ")
+            .append(histogram.getValueAtPercentile(percentile) / 1e6).append('\n');
+      }
+      text.append("conceptmap_stage_seconds_count{").append(label).append("} ")
+          .append(histogram.getCount()).append('\n');
+      text.append("conceptmap_stage_seconds_sum{").append(label).append("} ")
+          .append(histogram.getMeanMicros() * histogram.getCount() / 1e6).append('\n');
+    }
+    text.append("# TYPE conceptmap_count untyped\n");
+    for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+      text.append("conceptmap_count{name=\"").append(counter.getKey()).append("\"} ")
+          .append(counter.getValue()).append('\n');
+    }
+    return text.toString();
+  }
+
+  /**
+   * Log a summary of the metrics if none has been logged for the given interval. This is called
+   * as requests finish rather than from a timer, as a Lambda container is frozen between them.
+   */
+  public void logSummaryIfDue(long intervalMillis) {
+    long now = System.currentTimeMillis();
+    long last = lastSummaryMillis.get();
+    if (intervalMillis > 0 && now - last >= intervalMillis
+        && lastSummaryMillis.compareAndSet(last, now)) {
+      log.info("metrics stages={}, counters={}", getStageSummaries(), getCounters());
+    }
+  }
+}
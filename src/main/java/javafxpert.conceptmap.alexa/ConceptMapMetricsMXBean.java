@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ConceptMapMetrics}, registered as
+ * {@value ConceptMapMetrics#OBJECT_NAME}
+ */
+public interface ConceptMapMetricsMXBean {
+
+  /**
+   * @return every counter and gauge by name
+   */
+  Map<String, Long> getCounters();
+
+  /**
+   * @return the p50, p90, p99 and max latency of each stage in milliseconds, keyed like
+   *     {@code locateItemId.p99}
+   */
+  Map<String, Double> getStagePercentilesMillis();
+
+  /**
+   * @return a one line summary of each stage's latency, by stage
+   */
+  Map<String, String> getStageSummaries();
+
+  /**
+   * Clear the counters and histograms, to start measuring afresh
+   */
+  void reset();
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents a single GET issued through a {@link ConceptMapTransport}. A request can be
+ * aborted from another thread while it's in flight, if the transport registers how.
+ */
+public class ConceptMapRequest {
+  private String url;
+  private Map<String, String> headers = new LinkedHashMap<>();
+  private int connectTimeoutMillis;
+  private int readTimeoutMillis;
+  private boolean followRedirects = true;
+  private volatile boolean aborted;
+  private volatile Closeable abortHandler;
+
+  public ConceptMapRequest() {
+  }
+
+  public ConceptMapRequest(String url, int connectTimeoutMillis, int readTimeoutMillis) {
+    this.url = url;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  public void setHeaders(Map<String, String> headers) {
+    this.headers = headers;
+  }
+
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  public int getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  public boolean isFollowRedirects() {
+    return followRedirects;
+  }
+
+  public void setFollowRedirects(boolean followRedirects) {
+    this.followRedirects = followRedirects;
+  }
+
+  /**
+   * @return a request for the same URL with the same headers and options, which isn't aborted
+   */
+  public ConceptMapRequest copy() {
+    ConceptMapRequest copy = new ConceptMapRequest(url, connectTimeoutMillis, readTimeoutMillis);
+    copy.setHeaders(new LinkedHashMap<>(headers));
+    copy.setFollowRedirects(followRedirects);
+    return copy;
+  }
+
+  /**
+   * Give up on the request, closing its connection if it's in flight. The transport's call fails
+   * if it hasn't returned yet, and reading the body fails if it has.
+   */
+  public void abort() {
+    aborted = true;
+    Closeable handler = abortHandler;
+    if (handler != null) {
+      IOUtils.closeQuietly(handler);
+    }
+  }
+
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * Called by a transport as it sends the request, with what to close to abort it
+   */
+  public void setAbortHandler(Closeable abortHandler) {
+    this.abortHandler = abortHandler;
+    if (aborted) {
+      IOUtils.closeQuietly(abortHandler);
+    }
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "ConceptMapRequest{" +
+        "url='" + url + '\'' +
+        ", headers=" + headers +
+        ", connectTimeoutMillis=" + connectTimeoutMillis +
+        ", readTimeoutMillis=" + readTimeoutMillis +
+        ", followRedirects=" + followRedirects +
+        ", aborted=" + aborted +
+        '}';
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Represents the status, headers and body returned by a {@link ConceptMapTransport}.
+ * The body must be closed so the underlying connection can go back to the pool.
+ */
+public class ConceptMapResponse implements Closeable {
+  private final int statusCode;
+  private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+  private final InputStream body;
+  private final Closeable connection;
+
+  public ConceptMapResponse(int statusCode, Map<String, String> headers, InputStream body,
+                            Closeable connection) {
+    this.statusCode = statusCode;
+    if (headers != null) {
+      this.headers.putAll(headers);
+    }
+    this.body = body != null ? body : new ByteArrayInputStream(new byte[0]);
+    this.connection = connection;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  public InputStream getBody() {
+    return body;
+  }
+
+  public boolean isSuccessful() {
+    return statusCode >= 200 && statusCode < 300;
+  }
+
+  /**
+   * @return whether a conditional request found the cached copy still current
+   */
+  public boolean isNotModified() {
+    return statusCode == 304;
+  }
+
+  @Override
+  public void close() {
+    IOUtils.closeQuietly(body);
+    IOUtils.closeQuietly(connection);
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "ConceptMapResponse{" +
+        "statusCode=" + statusCode +
+        ", headers=" + headers +
+        '}';
+  }
+}
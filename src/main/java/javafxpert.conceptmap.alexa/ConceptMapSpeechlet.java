@@ -19,23 +19,14 @@ import com.amazon.speech.slu.Intent;
 import com.amazon.speech.slu.Slot;
 import com.amazon.speech.speechlet.*;
 import com.amazon.speech.ui.*;
-import com.amazonaws.util.json.JSONArray;
-import com.amazonaws.util.json.JSONException;
-import com.amazonaws.util.json.JSONObject;
-import com.amazonaws.util.json.JSONTokener;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.text.WordUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 //import java.net.URLEncoder;
-import java.nio.charset.Charset;
 import java.text.ParseException;
 
 //import javafxpert.conceptmap.alexa.ClaimsInfo;
@@ -87,51 +78,401 @@ public class ConceptMapSpeechlet implements Speechlet {
 
   private static final String SLOT_RELATIONSHIP = "Relationship";
   private static final String SLOT_ITEM = "Item";
-  private static final String TRAVERSAL_ENDPOINT = "https://conceptmap.cfapps.io/traversal";
-  private static final String ID_LOCATOR_ENDPOINT = "https://conceptmap.cfapps.io/idlocator";
+
+  private static final String MORE_PROMPT = "Say more to hear the rest.";
+  private static final String WHICH_ITEM_REL_PROMPT =
+      "Which item and relationship would you like claims for?";
+
+  // Time kept back from the deadline for building and returning the response
+  private static final long RESPONSE_RESERVE_MILLIS = 100;
+
+  private final ConceptMapClient conceptMapClient;
+  private final PictureResolver pictureResolver;
+  private final TraversalEngine traversalEngine;
+  private final RelationshipIndex relationshipIndex;
+  private final ConceptMapMetrics metrics;
+
+  public ConceptMapSpeechlet() {
+    this(new ConceptMapClient(ConceptMapClientConfig.fromSystemProperties()));
+  }
+
+  public ConceptMapSpeechlet(ConceptMapClient conceptMapClient) {
+    this(conceptMapClient, RelationshipIndex.getDefault());
+  }
+
+  public ConceptMapSpeechlet(ConceptMapClient conceptMapClient,
+                             RelationshipIndex relationshipIndex) {
+    this(conceptMapClient, relationshipIndex, ConceptMapMetrics.getDefault());
+  }
+
+  public ConceptMapSpeechlet(ConceptMapClient conceptMapClient,
+                             RelationshipIndex relationshipIndex, ConceptMapMetrics metrics) {
+    this.conceptMapClient = conceptMapClient;
+    this.pictureResolver = new PictureResolver(conceptMapClient, metrics);
+    this.traversalEngine = new TraversalEngine(conceptMapClient, metrics);
+    this.relationshipIndex = relationshipIndex;
+    this.metrics = metrics;
+    registerCacheGauges();
+    registerEndpointGauges();
+    if (conceptMapClient.getHedger() != null) {
+      registerHedgeGauges(conceptMapClient.getHedger());
+    }
+    if (conceptMapClient.getAnswerSnapshot() != null) {
+      registerSnapshotGauges(conceptMapClient.getAnswerSnapshot());
+    }
+  }
+
+  /**
+   * Publish the hit counts the caches already keep, and how many lookups were coalesced
+   */
+  private void registerCacheGauges() {
+    final ExpiringLruCache<String, String> itemIdCache = conceptMapClient.getItemIdCache();
+    metrics.registerGauge("cache.itemId.hits", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return itemIdCache.getHits();
+      }
+    });
+    metrics.registerGauge("cache.itemId.misses", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return itemIdCache.getMisses();
+      }
+    });
+    final StaleWhileRevalidateCache<TraversalKey, ClaimsInfo> claimsCache =
+        conceptMapClient.getClaimsCache();
+    metrics.registerGauge("cache.claims.hits", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return claimsCache.getHits();
+      }
+    });
+    metrics.registerGauge("cache.claims.staleHits", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return claimsCache.getStaleHits();
+      }
+    });
+    metrics.registerGauge("cache.claims.misses", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return claimsCache.getMisses();
+      }
+    });
+    final SingleFlight<String, String> itemIdFlights = conceptMapClient.getItemIdFlights();
+    metrics.registerGauge("coalesced.itemId", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return itemIdFlights.getCoalesced();
+      }
+    });
+    final SingleFlight<TraversalKey, ClaimsInfo> claimsFlights =
+        conceptMapClient.getClaimsFlights();
+    metrics.registerGauge("coalesced.claims", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return claimsFlights.getCoalesced();
+      }
+    });
+    final DynamoDbCache dynamoDbCache = conceptMapClient.getDynamoDbCache();
+    if (dynamoDbCache != null) {
+      metrics.registerGauge("cache.dynamo.hits", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getHits();
+        }
+      });
+      metrics.registerGauge("cache.dynamo.misses", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getMisses();
+        }
+      });
+      metrics.registerGauge("cache.dynamo.errors", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getErrors();
+        }
+      });
+      metrics.registerGauge("cache.dynamo.writes", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getWrites();
+        }
+      });
+      metrics.registerGauge("cache.dynamo.writesDropped", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getWritesDropped();
+        }
+      });
+      metrics.registerGauge("cache.dynamo.writeQueue", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getWriteQueueSize();
+        }
+      });
+      metrics.registerGauge("cache.dynamo.flushTimeouts", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getFlushTimeouts();
+        }
+      });
+      metrics.registerGauge("breaker.dynamodb.opened", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return dynamoDbCache.getCircuitBreaker().getOpened();
+        }
+      });
+    }
+    metrics.registerGauge("prewarm.runs", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return conceptMapClient.getPrewarms();
+      }
+    });
+    metrics.registerGauge("prewarm.connections", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return conceptMapClient.getPrewarmedConnections();
+      }
+    });
+    final ExpiringLruCache<String, String> pictureCache = pictureResolver.getRedirectCache();
+    metrics.registerGauge("cache.picture.hits", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return pictureCache.getHits();
+      }
+    });
+    metrics.registerGauge("cache.picture.misses", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return pictureCache.getMisses();
+      }
+    });
+    metrics.registerGauge("revalidated.claims", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return conceptMapClient.getNotModified();
+      }
+    });
+    metrics.registerGauge("bytes.received", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return conceptMapClient.getBytesReceived();
+      }
+    });
+    metrics.registerGauge("bytes.decoded", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return conceptMapClient.getBytesDecoded();
+      }
+    });
+    final LabelInterner labelInterner = LabelInterner.getDefault();
+    metrics.registerGauge("labels.interned", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return labelInterner.getSize();
+      }
+    });
+    metrics.registerGauge("labels.shared", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return labelInterner.getHits();
+      }
+    });
+    metrics.registerGauge("labels.rejected", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return labelInterner.getRejected();
+      }
+    });
+  }
+
+  /**
+   * Publish each endpoint's circuit breaker state and transitions, and its bulkhead occupancy
+   */
+  private void registerEndpointGauges() {
+    for (String endpoint : ConceptMapClient.ENDPOINTS) {
+      final CircuitBreaker circuitBreaker = conceptMapClient.getCircuitBreaker(endpoint);
+      final Bulkhead bulkhead = conceptMapClient.getBulkhead(endpoint);
+      String prefix = "breaker." + endpoint;
+      metrics.registerGauge(prefix + ".state", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return circuitBreaker.getState().ordinal();
+        }
+      });
+      metrics.registerGauge(prefix + ".opened", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return circuitBreaker.getOpened();
+        }
+      });
+      metrics.registerGauge(prefix + ".halfOpened", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return circuitBreaker.getHalfOpened();
+        }
+      });
+      metrics.registerGauge(prefix + ".closed", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return circuitBreaker.getClosed();
+        }
+      });
+      metrics.registerGauge(prefix + ".rejected", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return circuitBreaker.getRejected();
+        }
+      });
+      metrics.registerGauge("bulkhead." + endpoint + ".inFlight", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return bulkhead.getInFlight();
+        }
+      });
+      metrics.registerGauge("bulkhead." + endpoint + ".rejected", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return bulkhead.getRejected();
+        }
+      });
+    }
+  }
+
+  /**
+   * Publish how often each endpoint's calls are hedged, and how often the backup wins, from which
+   * the hedge rate and win rate follow
+   */
+  private void registerHedgeGauges(final Hedger hedger) {
+    for (final String endpoint : ConceptMapClient.ENDPOINTS) {
+      String prefix = "hedge." + endpoint;
+      metrics.registerGauge(prefix + ".calls", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return hedger.getCalls(endpoint);
+        }
+      });
+      metrics.registerGauge(prefix + ".hedged", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return hedger.getHedged(endpoint);
+        }
+      });
+      metrics.registerGauge(prefix + ".won", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return hedger.getWon(endpoint);
+        }
+      });
+      metrics.registerGauge(prefix + ".budgetExhausted", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return hedger.getBudgetExhausted(endpoint);
+        }
+      });
+      metrics.registerGauge(prefix + ".delayMillis", new ConceptMapMetrics.Gauge() {
+        @Override
+        public long getValue() {
+          return hedger.getDelayMillis(endpoint);
+        }
+      });
+    }
+  }
+
+  /**
+   * Publish the size of the answer snapshot, and the percentage of questions answered from it
+   */
+  private void registerSnapshotGauges(final AnswerSnapshot answerSnapshot) {
+    metrics.registerGauge("snapshot.entries", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        return answerSnapshot.size();
+      }
+    });
+    metrics.registerGauge("snapshot.servedPercent", new ConceptMapMetrics.Gauge() {
+      @Override
+      public long getValue() {
+        long served = metrics.getCount("snapshot.served");
+        long questions =
+            served + metrics.getCount("snapshot.stale") + metrics.getCount("snapshot.missed");
+        return questions > 0 ? served * 100 / questions : 0;
+      }
+    });
+  }
 
   @Override
   public void onSessionStarted(final SessionStartedRequest request, final Session session)
           throws SpeechletException {
-      log.info("onSessionStarted requestId={}, sessionId={}", request.getRequestId(),
+      RequestLog.begin(conceptMapClient.getConfig(), request.getRequestId(),
               session.getSessionId());
+      try {
+          log.info("onSessionStarted");
 
-      // any initialization logic goes here
+          // A new session is usually followed by a question, so get the connections ready
+          conceptMapClient.prewarmAsync();
+      } finally {
+          RequestLog.end();
+      }
   }
 
   @Override
   public SpeechletResponse onLaunch(final LaunchRequest request, final Session session)
           throws SpeechletException {
-      log.info("onLaunch requestId={}, sessionId={}", request.getRequestId(),
+      RequestLog.begin(conceptMapClient.getConfig(), request.getRequestId(),
               session.getSessionId());
+      try {
+          log.info("onLaunch");
 
-      return getWelcomeResponse();
+          // The question comes seconds after the welcome, which mustn't wait for this
+          conceptMapClient.prewarmAsync();
+          return getWelcomeResponse();
+      } finally {
+          RequestLog.end();
+      }
   }
 
   @Override
   public SpeechletResponse onIntent(final IntentRequest request, final Session session)
           throws SpeechletException {
-      log.info("onIntent requestId={}, sessionId={}", request.getRequestId(),
+      RequestLog.begin(conceptMapClient.getConfig(), request.getRequestId(),
               session.getSessionId());
+      try {
+          return handleIntent(request, session);
+      } finally {
+          RequestLog.end();
+      }
+  }
 
+  private SpeechletResponse handleIntent(final IntentRequest request, final Session session)
+          throws SpeechletException {
       Intent intent = request.getIntent();
       String intentName = intent.getName();
-
-      Slot itemSlot = intent.getSlot(SLOT_ITEM);
-      Slot relSlot = intent.getSlot(SLOT_RELATIONSHIP);
-      if (itemSlot != null && itemSlot.getValue() != null) {
-          log.info("I received an Item request: " + itemSlot.getValue());
-      }
-      else if (relSlot != null && relSlot.getValue() != null) {
-          log.info("I received a Relationship request: " + relSlot.getValue());
-      }
-      else {
-          log.info("I'm not sure if I received a request");
+      metrics.increment("intent." + intentName);
+      log.info("onIntent intent={}", intentName);
+
+      if (RequestLog.isVerbose()) {
+          Slot itemSlot = intent.getSlot(SLOT_ITEM);
+          Slot relSlot = intent.getSlot(SLOT_RELATIONSHIP);
+          log.info("slots item={}, relationship={}",
+                  itemSlot != null ? itemSlot.getValue() : null,
+                  relSlot != null ? relSlot.getValue() : null);
       }
 
-
       if ("OneshotClaimsIntent".equals(intentName)) {
-          return handleOneshotTideRequest(intent, session);
+          Deadline deadline = new Deadline(conceptMapClient.getConfig().getRequestBudgetMillis());
+          SpeechletResponse response = handleOneshotTideRequest(intent, session, deadline);
+          log.info("onIntent deadline={}", deadline);
+          metrics.recordStages(deadline);
+          metrics.recordStage("onIntent", deadline.elapsedNanos());
+          metrics.logSummaryIfDue(conceptMapClient.getConfig().getMetricsSummaryMillis());
+          return response;
+      }
+
+      else if ("MoreIntent".equals(intentName)) {
+          return handleMoreRequest(session);
       }
 
       /*
@@ -158,16 +499,20 @@ public class ConceptMapSpeechlet implements Speechlet {
   @Override
   public void onSessionEnded(final SessionEndedRequest request, final Session session)
           throws SpeechletException {
-      log.info("onSessionEnded requestId={}, sessionId={}", request.getRequestId(),
+      RequestLog.begin(conceptMapClient.getConfig(), request.getRequestId(),
               session.getSessionId());
+      try {
+          log.info("onSessionEnded");
+      } finally {
+          RequestLog.end();
+      }
   }
 
 
   private SpeechletResponse getWelcomeResponse() {
-      String whichItemRelPrompt = "Which item and relationship would you like claims for?";
       String speechOutput = "<speak>"
           + "Welcome to Concept Map. "
-          + whichItemRelPrompt
+          + WHICH_ITEM_REL_PROMPT
           + "</speak>";
       String repromptText =
           "I can lead you through providing an item and "
@@ -183,11 +528,13 @@ public class ConceptMapSpeechlet implements Speechlet {
    * Pooler and get tide information for Seattle on Saturday'. If there is an error in a slot,
    * this will guide the user to the dialog approach.
    */
-  private SpeechletResponse handleOneshotTideRequest(final Intent intent, final Session session) {
+  private SpeechletResponse handleOneshotTideRequest(final Intent intent, final Session session,
+                                                     final Deadline deadline) {
       Slot itemSlot;
       Slot relSlot;
       String speechOutput;
 
+      long stageStart = deadline.elapsedNanos();
       try {
           itemSlot = intent.getSlot(SLOT_ITEM);
           relSlot = intent.getSlot(SLOT_RELATIONSHIP);
@@ -201,192 +548,289 @@ public class ConceptMapSpeechlet implements Speechlet {
       }
 
 
+      String itemValue = itemSlot != null ? itemSlot.getValue() : null;
+      if (itemValue == null || itemValue.trim().length() == 0) {
+          metrics.increment("outcome.itemMissing");
+          return newAskResponse("Sorry, I didn't catch the item.",
+                  "Which item would you like claims for?");
+      }
+
       // all slots filled, either from the user or by default values. Move to final request
       speechOutput =
-          "Item is " + itemSlot.getValue() + "and relationship is " + relSlot.getValue();
+          "Item is " + itemValue + "and relationship is "
+              + (relSlot != null ? relSlot.getValue() : null);
+
+    Relationship relationship = relationshipIndex.getDefaultRelationship();
+    if (relSlot != null && relSlot.getValue() != null) {
+      relationship = relationshipIndex.resolve(relSlot.getValue());
+      if (relationship == null) {
+        metrics.increment("outcome.relationshipUnknown");
+        speechOutput = "Sorry, I don't know the relationship " + relSlot.getValue();
+        return newAskResponse(speechOutput, "Which relationship would you like claims for?");
+      }
+    }
+    if (RequestLog.isVerbose()) {
+      log.info("relationship={}", relationship);
+    }
+    deadline.recordStage("slotExtraction", stageStart);
 
     //return makeClaimsRequest("Q615", "P54");
-    return makeClaimsRequest(itemSlot.getValue(), relSlot.getValue());
+    return makeClaimsRequest(itemValue, relationship, session, deadline);
   }
 
   /**
-   * Call a ConceptMap endpoint to retrieve related claims
-   *
-   * @throws IOException
+   * Call a ConceptMap endpoint to retrieve related claims. Each upstream stage is given only the
+   * time left before the deadline, and the card image is dropped when it can't be resolved in
+   * time. The most asked questions are answered from the answer snapshot instead, while its
+   * answers are fresh enough, without calling ConceptMap at all. Only the first page of a long
+   * answer is spoken, and the rest is kept in the session for a follow-up "more".
    */
   //private SpeechletResponse makeClaimsRequest(String itemId, String propId) {
-  private SpeechletResponse makeClaimsRequest(String itemValue, String relationshipValue) {
+  private SpeechletResponse makeClaimsRequest(String itemValue, Relationship relationship,
+                                              Session session, Deadline deadline) {
     String properCasedItemValue = WordUtils.capitalize(itemValue);
     String speechOutput = "";
+    String cardText = null;
+    int remaining = 0;
     Image image = new Image();
 
-    // Translate requested item and relationship to Q and P numbers
+    // Translate requested item to a Q number, the relationship already gives the P number,
+    // unless this session has already asked about the item
     //String itemId = "Q887401";
-    String propId = "P54";
-    String itemId = locateItemId(properCasedItemValue);
+    AnswerSnapshot.Answer answer = lookupAnswer(properCasedItemValue, relationship, deadline);
+    long stageStart = deadline.elapsedNanos();
+    SessionClaims previous = SessionClaims.fromSession(session);
+    if (previous != null && !previous.isFor(properCasedItemValue)) {
+      SessionClaims.clear(session);
+    }
+    String itemId;
+    if (answer != null) {
+      itemId = answer.getItemId();
+    }
+    else if (previous != null && previous.isFor(properCasedItemValue)) {
+      metrics.increment("outcome.sessionItemId");
+      itemId = previous.getItemId();
+      deadline.recordStage("locateItemId", stageStart);
+    }
+    else {
+      itemId = locateItemId(properCasedItemValue, deadline);
+      deadline.recordStage("locateItemId", stageStart);
+    }
     if (itemId != null && itemId.length() > 0) {
-
-      String queryString =
-          String.format("?id=%s&direction=f&prop=%s&depth=1", itemId, propId);
-
-
-      InputStreamReader inputStream = null;
-      BufferedReader bufferedReader = null;
-      StringBuilder builder = new StringBuilder();
-      try {
-        String line;
-        URL url = new URL(TRAVERSAL_ENDPOINT + queryString);
-        inputStream = new InputStreamReader(url.openStream(), Charset.forName("US-ASCII"));
-        bufferedReader = new BufferedReader(inputStream);
-        while ((line = bufferedReader.readLine()) != null) {
-          builder.append(line);
+      ClaimsInfo claimsInfo = null;
+      TraversalKey traversalKey = new TraversalKey(itemId, relationship);
+      boolean lastKnownGood = false;
+      if (answer != null) {
+        claimsInfo = answer.getClaimsInfo();
+      }
+      else {
+        stageStart = deadline.elapsedNanos();
+        try {
+          claimsInfo = traversalEngine.traverse(itemId, relationship, deadline,
+              RESPONSE_RESERVE_MILLIS);
+        } catch (CallNotPermittedException e) {
+          metrics.increment("upstreamRejected.traversal");
+          log.info("fetchClaims refused: {}", e.getMessage());
+        } catch (IOException e) {
+          metrics.increment("upstreamErrors.traversal");
+          log.error("Exception occoured while retrieving service response.", e);
         }
-      } catch (IOException e) {
-        // reset builder to a blank string
-        builder.setLength(0);
-      } finally {
-        IOUtils.closeQuietly(inputStream);
-        IOUtils.closeQuietly(bufferedReader);
-
-        log.info("builder: " + builder);
+        if (claimsInfo == null) {
+          // Claims rarely change, so an old answer beats none while the service is down
+          claimsInfo = conceptMapClient.getClaimsCache().getIfPresent(traversalKey);
+          lastKnownGood = claimsInfo != null;
+          if (lastKnownGood) {
+            metrics.increment("outcome.lastKnownGood");
+          }
+        }
+        deadline.recordStage("traversal", stageStart);
       }
 
-      if (builder.length() == 0) {
+      if (claimsInfo == null) {
         speechOutput =
             "Sorry, the Concept Map claims service is experiencing a problem. "
                 + "Please try again later.";
       } else {
-        try {
-          JSONObject claimsResponseObject = new JSONObject(new JSONTokener(builder.toString()));
-
-          if (claimsResponseObject != null) {
-            ClaimsInfo claimsInfo = createClaimsInfo(claimsResponseObject, itemId);
-
-            log.info("claimsInfo: " + claimsInfo);
-
-            speechOutput = "Item " + properCasedItemValue + " not found";
-
-            if (claimsInfo.getItemLabels().size() > 0) {
-              speechOutput = new StringBuilder()
-                  .append(properCasedItemValue)
-                  //.append(claimsInfo.getItemLabels().get(0))
-                  .append(" has been a member of ")
-                  .append(relationshipValue)
-                  .append(" \n")
-                  .append(claimsInfo.toItemLabelsSpeech())
-                  .toString();
-            }
-
-            // Get the picture redirect
-            URL url = new URL(claimsInfo.getPictureUrl());
-            HttpURLConnection.setFollowRedirects(false);
-            final HttpURLConnection con = (HttpURLConnection) url.openConnection();
-            //con.setInstanceFollowRedirects(false);
-            final int responseCode = con.getResponseCode();
-            final String redirectLocation = con.getHeaderField("Location");
-            image.setSmallImageUrl(redirectLocation);
-          }
-          //} catch (JSONException | ParseException e) {
-        } catch (JSONException | IOException e) {
-          log.error("Exception occoured while parsing service response.", e);
+        if (RequestLog.isVerbose()) {
+          log.info("claimsInfo={}", RequestLog.truncate(claimsInfo.toString()));
+        }
+
+        // Look up the card image while the speech is assembled, unless there's no time for it
+        // or the snapshot already has it
+        long pictureMinBudget = conceptMapClient.getConfig().getPictureMinBudgetMillis();
+        long pictureStart = deadline.elapsedNanos();
+        Future<String> pendingPicture = answer == null && deadline.hasRemaining(pictureMinBudget)
+            ? pictureResolver.resolveAsync(claimsInfo.getPictureUrl(), deadline) : null;
+        if (answer != null) {
+          image.setSmallImageUrl(answer.getPictureUrl());
+        }
+
+        stageStart = deadline.elapsedNanos();
+        speechOutput = "Item " + properCasedItemValue + " not found";
+
+        if (claimsInfo.getItemCount() > 0) {
+          String intro = new StringBuilder()
+              .append(answer != null ? "" : describeFreshness(traversalKey, lastKnownGood))
+              .append(properCasedItemValue)
+              //.append(claimsInfo.getItemLabels().get(0))
+              .append(" ")
+              .append(relationship.getPhrasing())
+              .append(" \n")
+              .toString();
+          SessionClaims sessionClaims = new SessionClaims(properCasedItemValue, itemId,
+              relationship, claimsInfo.getItemLabels());
+          speechOutput = intro
+              + sessionClaims.nextPage(conceptMapClient.getConfig().getSpeechPageSize());
+          remaining = sessionClaims.getRemaining();
+          sessionClaims.saveTo(session);
+          // The card has room for the whole answer
+          cardText = intro + claimsInfo.toItemLabelsSpeech();
+        }
+        else {
+          metrics.increment("outcome.itemNotFound");
+          SessionClaims.clear(session);
+        }
+        deadline.recordStage("responseBuild", stageStart);
+
+        if (pendingPicture != null) {
+          image.setSmallImageUrl(
+              pictureResolver.await(pendingPicture, deadline, RESPONSE_RESERVE_MILLIS));
+          deadline.recordStage("pictureRedirect", pictureStart);
         }
       }
     }
     else {
+      metrics.increment("outcome.itemNotLocated");
       speechOutput = "Couldn't locate an Item ID for item " + properCasedItemValue;
     }
 
     // Create the Simple card content.
     StandardCard card = new StandardCard();
     card.setTitle(properCasedItemValue);
-    card.setText(speechOutput);
-    card.setImage(image);
-    // Create the plain text output
-    PlainTextOutputSpeech outputSpeech = new PlainTextOutputSpeech();
-    outputSpeech.setText(speechOutput);
-
-    return SpeechletResponse.newTellResponse(outputSpeech, card);
+    card.setText(cardText != null ? cardText : speechOutput);
+    if (image.getSmallImageUrl() != null) {
+      card.setImage(image);
+    }
+    return newClaimsResponse(speechOutput, remaining, card);
   }
 
   /**
-   * Create an object that contains claims info
+   * Speak the next page of the answer kept in the session, without calling ConceptMap
    */
-  private ClaimsInfo createClaimsInfo(JSONObject responseObject, String itemId) throws JSONException { //, ParseException {
-    ClaimsInfo claimsInfo = new ClaimsInfo();
-    JSONArray items = (JSONArray) responseObject.get("item");
-
-    for (int i = 0; i < items.length(); i++) {
-      JSONObject itemInfoJson = (JSONObject) items.get(i);
-      ItemInfo itemInfo = new ItemInfo((String)itemInfoJson.get("id"),
-          (String)itemInfoJson.get("label"),
-          (String)itemInfoJson.get("picture"));
-      if (itemInfo.getId().equals(itemId)) {
-        claimsInfo.setPictureUrl(itemInfo.getPicture());
+  private SpeechletResponse handleMoreRequest(final Session session) {
+      SessionClaims sessionClaims = SessionClaims.fromSession(session);
+      if (sessionClaims == null || sessionClaims.getRemaining() == 0) {
+          metrics.increment("outcome.nothingMore");
+          return newAskResponse("There's nothing more to tell. " + WHICH_ITEM_REL_PROMPT,
+                  WHICH_ITEM_REL_PROMPT);
       }
-      else {
-        claimsInfo.getItemLabels().add(itemInfo.getLabel());
+
+      metrics.increment("outcome.sessionPage");
+      String speechOutput =
+              sessionClaims.nextPage(conceptMapClient.getConfig().getSpeechPageSize());
+      sessionClaims.saveTo(session);
+      if (RequestLog.isVerbose()) {
+          log.info("sessionClaims={}", sessionClaims);
       }
-    }
-    return claimsInfo;
+      return newClaimsResponse(speechOutput, sessionClaims.getRemaining(), null);
   }
 
   /**
-   * Call a ConceptMap endpoint to get the Item ID for a given article name
+   * Tell the user the claims, or ask if they'd like more when labels are left to be spoken
    *
-   * @throws IOException
+   * @param card the card to show, or null for none
    */
-  private String locateItemId(String itemValue) {
-    String itemId = "";
-
-    String queryString =
-        String.format("?name=%s&lang=en", itemValue);
-    queryString = queryString.replaceAll(" ", "%20");
-    log.info("queryString: " + queryString);
-
-    InputStreamReader inputStream = null;
-    BufferedReader bufferedReader = null;
-    StringBuilder builder = new StringBuilder();
-    try {
-      String line;
-      URL url = new URL(ID_LOCATOR_ENDPOINT + queryString);
-
-      log.info("locateItemId url: " + url);
-
-      inputStream = new InputStreamReader(url.openStream(), Charset.forName("US-ASCII"));
-      bufferedReader = new BufferedReader(inputStream);
-      while ((line = bufferedReader.readLine()) != null) {
-        builder.append(line);
+  private SpeechletResponse newClaimsResponse(String speechOutput, int remaining,
+                                              Card card) {
+      PlainTextOutputSpeech outputSpeech = new PlainTextOutputSpeech();
+      if (remaining == 0) {
+          outputSpeech.setText(speechOutput);
+          return card != null ? SpeechletResponse.newTellResponse(outputSpeech, card)
+                  : SpeechletResponse.newTellResponse(outputSpeech);
       }
-    } catch (IOException e) {
-      log.info("IOException e: " + e);
-      // reset builder to a blank string
-      builder.setLength(0);
-    } finally {
-      IOUtils.closeQuietly(inputStream);
-      IOUtils.closeQuietly(bufferedReader);
-
-      log.info("locateItemId builder: " + builder);
-    }
 
-    if (builder.length() > 0) {
-      try {
-        JSONObject idResponseObject = new JSONObject(new JSONTokener(builder.toString()));
+      outputSpeech.setText(speechOutput + " and " + remaining + " more. " + MORE_PROMPT);
+      PlainTextOutputSpeech repromptOutputSpeech = new PlainTextOutputSpeech();
+      repromptOutputSpeech.setText(MORE_PROMPT);
+      Reprompt reprompt = new Reprompt();
+      reprompt.setOutputSpeech(repromptOutputSpeech);
+      return card != null ? SpeechletResponse.newAskResponse(outputSpeech, reprompt, card)
+              : SpeechletResponse.newAskResponse(outputSpeech, reprompt);
+  }
 
-        if (idResponseObject != null) {
-          itemId = (String) idResponseObject.get("itemId");
+  /**
+   * Tell the user how old the claims are when they come from the cache because the service is
+   * down, either as a fallback or while the traversal circuit is open
+   *
+   * @return the hint to speak ahead of the claims, or an empty string if they're current
+   */
+  private String describeFreshness(TraversalKey traversalKey, boolean lastKnownGood) {
+    CircuitBreaker circuitBreaker =
+        conceptMapClient.getCircuitBreaker(ConceptMapClient.ENDPOINT_TRAVERSAL);
+    if (!lastKnownGood && circuitBreaker.getState() == CircuitBreaker.State.CLOSED) {
+      return "";
+    }
+    long ageMillis = conceptMapClient.getClaimsCache().getAgeMillis(traversalKey);
+    if (ageMillis < conceptMapClient.getConfig().getClaimsFreshMillis()) {
+      return "";
+    }
 
-          log.info("locateItemId itemId: " + itemId);
+    long ageMinutes = TimeUnit.MILLISECONDS.toMinutes(ageMillis);
+    String age;
+    if (ageMinutes < 120) {
+      age = ageMinutes + " minutes";
+    }
+    else if (ageMinutes < 48 * 60) {
+      age = TimeUnit.MINUTES.toHours(ageMinutes) + " hours";
+    }
+    else {
+      age = TimeUnit.MINUTES.toDays(ageMinutes) + " days";
+    }
+    return "Concept Map can't be reached right now, so this is from " + age + " ago. ";
+  }
 
-          if (itemId == null) {
-            itemId = "";
-          }
-        }
-      } catch (JSONException e) {
-        log.error("Exception occoured while parsing service response.", e);
-      }
+  /**
+   * Look the question up in the answer snapshot, if there is one, counting whether it was answered
+   * from there
+   *
+   * @return the snapshot's answer, or null if it doesn't have one that's fresh enough
+   */
+  private AnswerSnapshot.Answer lookupAnswer(String itemValue, Relationship relationship,
+                                             Deadline deadline) {
+    AnswerSnapshot answerSnapshot = conceptMapClient.getAnswerSnapshot();
+    if (answerSnapshot == null) {
+      return null;
+    }
+    long stageStart = deadline.elapsedNanos();
+    AnswerSnapshot.Answer answer = answerSnapshot.lookup(itemValue, relationship);
+    deadline.recordStage("answerSnapshot", stageStart);
+    if (answer == null) {
+      metrics.increment("snapshot.missed");
+      return null;
+    }
+    if (answer.isStale(conceptMapClient.getConfig().getAnswerSnapshotMaxAgeMillis())) {
+      metrics.increment("snapshot.stale");
+      return null;
     }
+    metrics.increment("snapshot.served");
+    return answer;
+  }
 
-    return itemId;
+  /**
+   * Call a ConceptMap endpoint to get the Item ID for a given article name
+   */
+  private String locateItemId(String itemValue, Deadline deadline) {
+    try {
+      return conceptMapClient.locateItemId(itemValue, deadline);
+    } catch (CallNotPermittedException e) {
+      metrics.increment("upstreamRejected.idlocator");
+      log.info("locateItemId refused: {}", e.getMessage());
+      return "";
+    } catch (IOException e) {
+      metrics.increment("upstreamErrors.idlocator");
+      log.info("locateItemId failed: {}", e.toString());
+      return "";
+    }
   }
 
 
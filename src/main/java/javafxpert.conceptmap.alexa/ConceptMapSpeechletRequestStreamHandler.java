@@ -15,11 +15,22 @@
  */
 package javafxpert.conceptmap.alexa;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Set;
 
 import com.amazon.speech.speechlet.Speechlet;
 import com.amazon.speech.speechlet.lambda.SpeechletRequestStreamHandler;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.commons.io.IOUtils;
 
 /**
  * This class could be the handler for an AWS Lambda function powering an Alexa Skills Kit
@@ -27,11 +38,28 @@ import com.amazon.speech.speechlet.lambda.SpeechletRequestStreamHandler;
  * "tidepooler.TidePoolerSpeechletRequestStreamHandler" For this to work, you'll also need to build
  * this project using the {@code lambda-compile} Ant task and upload the resulting zip file to power
  * your function.
+ * <p>
+ * The speechlet is created and warmed up by the constructor, which Lambda runs in its init
+ * phase, so the first request doesn't pay for it; see {@link Warmup}. An invocation whose payload
+ * is {@code {"keepWarm": true}}, or a CloudWatch scheduled event, is answered straight away
+ * without any application ID check or upstream work, to keep containers from being reclaimed.
+ * <p>
+ * Second level cache writes queued by a request are sent before it returns, waiting no longer
+ * than the {@code dynamoFlushMillis} setting, rather than left to a thread that is frozen until
+ * the next request, if there is one.
+ * <p>
+ * With the {@code recordingPath} setting, the other envelopes and the upstream responses they
+ * trigger are appended to a recording for replaying; see {@link TrafficRecorder}. They too are
+ * given up to the {@code recordingFlushMillis} setting to be written before a request returns.
  */
-public class ConceptMapSpeechletRequestStreamHandler extends SpeechletRequestStreamHandler {
+public class ConceptMapSpeechletRequestStreamHandler implements RequestStreamHandler {
 
     private static final Set<String> supportedApplicationIds;
 
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final byte[] KEEP_WARM_RESPONSE =
+            "{\"keepWarm\":true}".getBytes(StandardCharsets.UTF_8);
+
     static {
         /*
          * This Id can be found on https://developer.amazon.com/edw/home.html#/ "Edit" the relevant
@@ -41,13 +69,150 @@ public class ConceptMapSpeechletRequestStreamHandler extends SpeechletRequestStr
         supportedApplicationIds.add("amzn1.echo-sdk-ams.app.24713bc9-5eab-4604-bb8a-5f182f70ddb0");
     }
 
+    private final SpeechletRequestStreamHandler speechletHandler;
+    private final ConceptMapClient conceptMapClient;
+    private final ConceptMapMetrics metrics = ConceptMapMetrics.getDefault();
+    private final TrafficRecorder recorder = TrafficRecorder.getDefault();
+
     public ConceptMapSpeechletRequestStreamHandler() {
-        super(new ConceptMapSpeechlet(), supportedApplicationIds);
+        this(createConceptMapClient(), supportedApplicationIds);
     }
 
     public ConceptMapSpeechletRequestStreamHandler(Speechlet speechlet,
             Set<String> supportedApplicationIds) {
-        super(speechlet, supportedApplicationIds);
+        this(speechlet, null, supportedApplicationIds);
+    }
+
+    private ConceptMapSpeechletRequestStreamHandler(ConceptMapClient conceptMapClient,
+            Set<String> supportedApplicationIds) {
+        this(createSpeechlet(conceptMapClient), conceptMapClient, supportedApplicationIds);
+    }
+
+    /**
+     * @param conceptMapClient the client used by the speechlet, whose queued writes are flushed
+     *     before each request returns, or null for none
+     */
+    private ConceptMapSpeechletRequestStreamHandler(Speechlet speechlet,
+            ConceptMapClient conceptMapClient, Set<String> supportedApplicationIds) {
+        this.speechletHandler = new SpeechletRequestStreamHandler(speechlet,
+                supportedApplicationIds) {
+        };
+        this.conceptMapClient = conceptMapClient;
+    }
+
+    private static ConceptMapClient createConceptMapClient() {
+        ConceptMapClientConfig config = ConceptMapClientConfig.fromSystemProperties();
+        ConceptMapTransport transport = new HttpClientTransport(config);
+        TrafficRecorder recorder = TrafficRecorder.getDefault();
+        if (recorder != null) {
+            transport = recorder.wrap(transport);
+            registerRecorderGauges(recorder, ConceptMapMetrics.getDefault());
+        }
+        return new ConceptMapClient(config, transport);
+    }
+
+    private static Speechlet createSpeechlet(ConceptMapClient conceptMapClient) {
+        ConceptMapSpeechlet speechlet = new ConceptMapSpeechlet(conceptMapClient);
+        if (conceptMapClient.getConfig().isWarmupEnabled()) {
+            Warmup.run(conceptMapClient, RelationshipIndex.getDefault(),
+                    ConceptMapMetrics.getDefault());
+        }
+        return speechlet;
+    }
+
+    private static void registerRecorderGauges(final TrafficRecorder recorder,
+            ConceptMapMetrics metrics) {
+        metrics.registerGauge("recording.records", new ConceptMapMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return recorder.getRecords();
+            }
+        });
+        metrics.registerGauge("recording.dropped", new ConceptMapMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return recorder.getDropped();
+            }
+        });
+        metrics.registerGauge("recording.bytes", new ConceptMapMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return recorder.getBytesWritten();
+            }
+        });
+        metrics.registerGauge("recording.flushTimeouts", new ConceptMapMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return recorder.getFlushTimeouts();
+            }
+        });
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context)
+            throws IOException {
+        byte[] payload = IOUtils.toByteArray(input);
+        if (isKeepWarm(payload)) {
+            metrics.increment("keepWarm");
+            output.write(KEEP_WARM_RESPONSE);
+            return;
+        }
+        if (recorder != null) {
+            recorder.recordEnvelope(payload);
+        }
+        try {
+            speechletHandler.handleRequest(new ByteArrayInputStream(payload), output, context);
+        } finally {
+            flush();
+        }
+    }
+
+    /**
+     * Lambda freezes the container as soon as this request returns, and with it the background
+     * threads, so work they have queued is given a bounded wait to finish first
+     */
+    private void flush() {
+        if (conceptMapClient != null) {
+            conceptMapClient.flush();
+        }
+        if (recorder != null) {
+            recorder.flush();
+        }
+    }
+
+    /**
+     * Look through the payload's top level fields for a keep-warm flag or a scheduled event's
+     * source, stopping at the request of an Alexa envelope
+     */
+    static boolean isKeepWarm(byte[] payload) {
+        try {
+            JsonParser parser = jsonFactory.createParser(payload);
+            try {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return false;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken valueToken = parser.nextToken();
+                    if ("request".equals(fieldName)) {
+                        return false;
+                    }
+                    if ("keepWarm".equals(fieldName)) {
+                        return valueToken == JsonToken.VALUE_TRUE;
+                    }
+                    if ("source".equals(fieldName) && valueToken == JsonToken.VALUE_STRING) {
+                        return "aws.events".equals(parser.getText());
+                    }
+                    parser.skipChildren();
+                }
+                return false;
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            // Not JSON, so let the speechlet handler reject it
+            return false;
+        }
     }
 
 }
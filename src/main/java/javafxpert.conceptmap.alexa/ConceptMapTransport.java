@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The wire used by {@link ConceptMapClient}. The default is a pooled
+ * {@link HttpClientTransport}; a stub can be swapped in to run without the ConceptMap service.
+ */
+public interface ConceptMapTransport extends Closeable {
+
+  /**
+   * Issue the request and return the response with its body still open
+   *
+   * @throws IOException if the request could not be completed
+   */
+  ConceptMapResponse execute(ConceptMapRequest request) throws IOException;
+
+  /**
+   * Connect to the URL's host ahead of any request and park the connections for later requests
+   * to use, until that many are idle
+   *
+   * @return the number of connections opened
+   * @throws IOException if a connection couldn't be made
+   */
+  int prewarm(String url, int connections, int connectTimeoutMillis) throws IOException;
+}
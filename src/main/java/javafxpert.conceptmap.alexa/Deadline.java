@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time a single request has left to produce its response. It is handed to each upstream
+ * stage so their timeouts never exceed what remains, and records how much each stage used.
+ */
+public class Deadline {
+  private final long startNanos;
+  private final long budgetMillis;
+  private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+
+  public Deadline(long budgetMillis) {
+    this.startNanos = System.nanoTime();
+    this.budgetMillis = budgetMillis;
+  }
+
+  public long getBudgetMillis() {
+    return budgetMillis;
+  }
+
+  public long elapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(elapsedNanos());
+  }
+
+  public long elapsedNanos() {
+    return System.nanoTime() - startNanos;
+  }
+
+  public long remainingMillis() {
+    return budgetMillis - elapsedMillis();
+  }
+
+  public boolean isExpired() {
+    return remainingMillis() <= 0;
+  }
+
+  /**
+   * @return whether at least the given time remains
+   */
+  public boolean hasRemaining(long millis) {
+    return remainingMillis() >= millis;
+  }
+
+  /**
+   * Cap a configured timeout to the time that remains
+   *
+   * @throws DeadlineExceededException if no time remains
+   */
+  public int timeoutMillis(int configuredMillis) throws DeadlineExceededException {
+    long remaining = remainingMillis();
+    if (remaining <= 0) {
+      throw new DeadlineExceededException("Request budget of " + budgetMillis + "ms exhausted");
+    }
+    return (int) Math.min(configuredMillis, remaining);
+  }
+
+  /**
+   * Record how long a stage took
+   *
+   * @param stage the name of the stage
+   * @param startedAtNanos the {@link #elapsedNanos()} when the stage started
+   */
+  public void recordStage(String stage, long startedAtNanos) {
+    long used = elapsedNanos() - startedAtNanos;
+    synchronized (stageNanos) {
+      stageNanos.put(stage, used);
+    }
+  }
+
+  public Map<String, Long> getStageNanos() {
+    synchronized (stageNanos) {
+      return new LinkedHashMap<>(stageNanos);
+    }
+  }
+
+  public Map<String, Long> getStageMillis() {
+    Map<String, Long> stageMillis = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> stage : getStageNanos().entrySet()) {
+      stageMillis.put(stage.getKey(), TimeUnit.NANOSECONDS.toMillis(stage.getValue()));
+    }
+    return stageMillis;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "Deadline{" +
+        "budgetMillis=" + budgetMillis +
+        ", elapsedMillis=" + elapsedMillis() +
+        ", stageMillis=" + getStageMillis() +
+        '}';
+  }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A second level cache in a DynamoDB table shared by every container, so a cold container can
+ * answer from what the others already fetched instead of calling the ConceptMap service.
+ * <p>
+ * Each item is a string key, the value as compact bytes and an expiry time in epoch seconds.
+ * Name the expiry attribute {@value #EXPIRES_AT} when enabling TTL on the table so DynamoDB
+ * deletes expired items, which are ignored until then. Lookups time out quickly, being treated as
+ * misses when anything goes wrong. Writes are queued and sent in batches by a background thread,
+ * so they don't hold up the work of a request. On Lambda, where that thread is frozen along with
+ * the container once a request returns, {@link #flush(long)} sends them before it does.
+ * <pre>
+ *   java -Djavafxpert.conceptmap.dynamoTableName=conceptmap-cache \
+ *       -Djavafxpert.conceptmap.dynamoEndpoint=http://localhost:8000 \
+ *       javafxpert.conceptmap.alexa.DynamoDbCache --create-table
+ * </pre>
+ */
+public class DynamoDbCache implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(DynamoDbCache.class);
+
+  static final String KEY = "k";
+  static final String VALUE = "v";
+  static final String EXPIRES_AT = "expiresAt";
+
+  // The most items DynamoDB accepts in one batch write
+  private static final int MAX_BATCH_WRITE = 25;
+  private static final int MAX_WRITE_ATTEMPTS = 3;
+
+  private final String tableName;
+  private final AmazonDynamoDB dynamoDb;
+  private final CircuitBreaker circuitBreaker;
+  private final BlockingQueue<Map<String, AttributeValue>> writeQueue;
+  private final Thread writer;
+  // Writes queued or being sent, guarded by itself
+  private final Object unwrittenLock = new Object();
+  private int unwritten;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicLong writesDropped = new AtomicLong();
+  private final AtomicLong flushTimeouts = new AtomicLong();
+
+  public DynamoDbCache(ConceptMapClientConfig config) {
+    this(config, createClient(config));
+  }
+
+  public DynamoDbCache(ConceptMapClientConfig config, AmazonDynamoDB dynamoDb) {
+    this.tableName = config.getDynamoTableName();
+    this.dynamoDb = dynamoDb;
+    this.circuitBreaker = new CircuitBreaker("dynamodb", config);
+    this.writeQueue = new LinkedBlockingQueue<>(config.getDynamoWriteQueueSize());
+    this.writer = new DaemonThreadFactory("conceptmap-dynamodb").newThread(new Runnable() {
+      @Override
+      public void run() {
+        writeBehind();
+      }
+    });
+    this.writer.start();
+  }
+
+  public static void main(String[] args) {
+    ConceptMapClientConfig config = ConceptMapClientConfig.fromSystemProperties();
+    if (args.length != 1 || !"--create-table".equals(args[0])
+        || config.getDynamoTableName() == null) {
+      System.err.println("Usage: DynamoDbCache --create-table, with the dynamoTableName setting"
+          + " and optionally dynamoEndpoint");
+      System.exit(1);
+    }
+    AmazonDynamoDB dynamoDb = createClient(config);
+    try {
+      createTable(dynamoDb, config.getDynamoTableName());
+      System.out.println("Created table " + config.getDynamoTableName());
+    } finally {
+      dynamoDb.shutdown();
+    }
+  }
+
+  /**
+   * Create a client whose calls time out before they can eat much of a request's budget
+   */
+  static AmazonDynamoDB createClient(ConceptMapClientConfig config) {
+    ClientConfiguration clientConfiguration = new ClientConfiguration()
+        .withConnectionTimeout(config.getDynamoTimeoutMillis())
+        .withSocketTimeout(config.getDynamoTimeoutMillis())
+        .withMaxErrorRetry(1);
+    AmazonDynamoDBClient client = new AmazonDynamoDBClient(clientConfiguration);
+    if (config.getDynamoEndpoint() != null) {
+      client.setEndpoint(config.getDynamoEndpoint());
+    }
+    else {
+      client.setRegion(Region.getRegion(Regions.fromName(config.getDynamoRegion())));
+    }
+    return client;
+  }
+
+  /**
+   * Create a table with the key schema this cache expects
+   */
+  public static void createTable(AmazonDynamoDB dynamoDb, String tableName) {
+    dynamoDb.createTable(new CreateTableRequest()
+        .withTableName(tableName)
+        .withAttributeDefinitions(new AttributeDefinition(KEY, ScalarAttributeType.S))
+        .withKeySchema(new KeySchemaElement(KEY, KeyType.HASH))
+        .withProvisionedThroughput(new ProvisionedThroughput(5L, 5L)));
+  }
+
+  /**
+   * @return the value for the key, or null if there's none, it expired or the lookup failed
+   */
+  public byte[] get(String key) {
+    try {
+      circuitBreaker.acquirePermission();
+    } catch (CallNotPermittedException e) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    long startNanos = System.nanoTime();
+    GetItemResult result;
+    try {
+      result = dynamoDb.getItem(new GetItemRequest().withTableName(tableName)
+          .withKey(Collections.singletonMap(KEY, new AttributeValue(key))));
+    } catch (AmazonClientException e) {
+      circuitBreaker.onFailure(System.nanoTime() - startNanos);
+      errors.incrementAndGet();
+      misses.incrementAndGet();
+      log.info("DynamoDB lookup failed: {}", e.toString());
+      return null;
+    }
+    circuitBreaker.onSuccess(System.nanoTime() - startNanos);
+
+    Map<String, AttributeValue> item = result.getItem();
+    AttributeValue value = item != null ? item.get(VALUE) : null;
+    AttributeValue expiresAt = item != null ? item.get(EXPIRES_AT) : null;
+    long nowSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    if (value == null || value.getB() == null
+        || (expiresAt != null && Long.parseLong(expiresAt.getN()) <= nowSeconds)) {
+      misses.incrementAndGet();
+      return null;
+    }
+    ByteBuffer buffer = value.getB();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    hits.incrementAndGet();
+    return bytes;
+  }
+
+  /**
+   * Queue the value to be written in the background. It is dropped if the queue is full, as the
+   * table is only a cache.
+   */
+  public void putAsync(String key, byte[] value, long ttlMillis) {
+    Map<String, AttributeValue> item = new HashMap<>(4);
+    item.put(KEY, new AttributeValue(key));
+    item.put(VALUE, new AttributeValue().withB(ByteBuffer.wrap(value)));
+    item.put(EXPIRES_AT, new AttributeValue().withN(Long.toString(
+        TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() + ttlMillis))));
+    synchronized (unwrittenLock) {
+      unwritten++;
+    }
+    if (!writeQueue.offer(item)) {
+      writesDropped.incrementAndGet();
+      onWritten(1);
+    }
+  }
+
+  /**
+   * Wait for the writes queued so far to be sent, or dropped after failing, but no longer than
+   * the timeout. Writes still queued after that are sent when the writer next gets to run.
+   *
+   * @return whether every queued write was sent or dropped in time
+   */
+  public boolean flush(long timeoutMillis) {
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    synchronized (unwrittenLock) {
+      try {
+        while (unwritten > 0) {
+          long remainingMillis =
+              TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+          if (remainingMillis <= 0) {
+            flushTimeouts.incrementAndGet();
+            return false;
+          }
+          unwrittenLock.wait(remainingMillis);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      return true;
+    }
+  }
+
+  private void onWritten(int count) {
+    synchronized (unwrittenLock) {
+      unwritten -= count;
+      unwrittenLock.notifyAll();
+    }
+  }
+
+  private void writeBehind() {
+    List<Map<String, AttributeValue>> drained = new ArrayList<>(MAX_BATCH_WRITE);
+    try {
+      while (true) {
+        drained.add(writeQueue.take());
+        writeQueue.drainTo(drained, MAX_BATCH_WRITE - 1);
+
+        // A batch can't hold the same key twice, so the latest value for a key wins
+        Map<String, WriteRequest> batch = new LinkedHashMap<>();
+        for (Map<String, AttributeValue> item : drained) {
+          batch.put(item.get(KEY).getS(), new WriteRequest(new PutRequest(item)));
+        }
+        int count = drained.size();
+        drained.clear();
+        try {
+          writeBatch(new ArrayList<>(batch.values()));
+        } finally {
+          onWritten(count);
+        }
+      }
+    } catch (InterruptedException e) {
+      // Closed
+    }
+  }
+
+  private void writeBatch(List<WriteRequest> batch) throws InterruptedException {
+    Map<String, List<WriteRequest>> requestItems = Collections.singletonMap(tableName, batch);
+    for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+      int size = requestItems.get(tableName).size();
+      try {
+        BatchWriteItemResult result = dynamoDb.batchWriteItem(
+            new BatchWriteItemRequest().withRequestItems(requestItems));
+        Map<String, List<WriteRequest>> unprocessed = result.getUnprocessedItems();
+        int remaining = unprocessed != null && unprocessed.containsKey(tableName)
+            ? unprocessed.get(tableName).size() : 0;
+        writes.addAndGet(size - remaining);
+        if (remaining == 0) {
+          return;
+        }
+        requestItems = unprocessed;
+      } catch (AmazonClientException e) {
+        errors.incrementAndGet();
+        log.info("DynamoDB write of {} items failed: {}", size, e.toString());
+      } catch (RuntimeException e) {
+        // Not a failure to reach DynamoDB, so trying again won't help, but the writer carries on
+        errors.incrementAndGet();
+        writesDropped.addAndGet(size);
+        log.warn("DynamoDB write of " + size + " items failed", e);
+        return;
+      }
+      if (attempt < MAX_WRITE_ATTEMPTS) {
+        // Back off, as unprocessed items usually mean the table's capacity is used up
+        Thread.sleep(50L << attempt);
+      }
+    }
+    writesDropped.addAndGet(requestItems.get(tableName).size());
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public int getWriteQueueSize() {
+    return writeQueue.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  public long getWrites() {
+    return writes.get();
+  }
+
+  public long getWritesDropped() {
+    return writesDropped.get();
+  }
+
+  /**
+   * @return how many flushes gave up waiting with writes still queued
+   */
+  public long getFlushTimeouts() {
+    return flushTimeouts.get();
+  }
+
+  @Override
+  public void close() {
+    writer.interrupt();
+    dynamoDb.shutdown();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "DynamoDbCache{" +
+        "tableName='" + tableName + '\'' +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        ", errors=" + errors +
+        ", writes=" + writes +
+        ", writesDropped=" + writesDropped +
+        ", flushTimeouts=" + flushTimeouts +
+        ", writeQueueSize=" + getWriteQueueSize() +
+        '}';
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache that evicts the least recently used entry when full and
+ * drops entries once their time-to-live has passed
+ */
+public class ExpiringLruCache<K, V> {
+  private final int maxEntries;
+  private final long defaultTtlMillis;
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+
+  public ExpiringLruCache(final int maxEntries, long defaultTtlMillis) {
+    this.maxEntries = maxEntries;
+    this.defaultTtlMillis = defaultTtlMillis;
+    this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        if (size() > ExpiringLruCache.this.maxEntries) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return the cached value, or null if it is absent or has expired
+   */
+  public V get(K key) {
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      Entry<V> entry = entries.get(key);
+      if (entry != null && entry.expiresAt <= now) {
+        entries.remove(key);
+        expirations.incrementAndGet();
+        entry = null;
+      }
+      if (entry == null) {
+        misses.incrementAndGet();
+        return null;
+      }
+      hits.incrementAndGet();
+      return entry.value;
+    }
+  }
+
+  public void put(K key, V value) {
+    put(key, value, defaultTtlMillis);
+  }
+
+  public void put(K key, V value, long ttlMillis) {
+    if (maxEntries <= 0 || ttlMillis <= 0) {
+      return;
+    }
+    Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + ttlMillis);
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+  }
+
+  public void remove(K key) {
+    synchronized (entries) {
+      entries.remove(key);
+    }
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getExpirations() {
+    return expirations.get();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "ExpiringLruCache{" +
+        "size=" + size() +
+        ", maxEntries=" + maxEntries +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        ", evictions=" + evictions +
+        ", expirations=" + expirations +
+        '}';
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long expiresAt;
+
+    private Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a backup request when a call is taking longer than most recent calls to its endpoint
+ * did, and takes whichever answer comes first, aborting the other request. A slow response from
+ * one server is usually down to that server or that connection, so the backup usually comes
+ * back quickly, which trims the tail of the latency distribution.
+ * <p>
+ * A call is hedged once it has taken longer than the {@code hedgePercentile} of the endpoint's
+ * last {@code hedgeWindowSize} latencies, or {@code hedgeMinDelayMillis} if that's longer, and
+ * not until the endpoint has had enough calls to tell. Backups are limited to
+ * {@code hedgeBudgetPercent} of calls, with a small allowance for bursts, so hedging never comes
+ * close to doubling the load on a struggling service. The call is made on the caller's thread,
+ * and backups on a small pool of {@code hedgeThreads}. When the backup wins, the call is aborted
+ * so the caller can take the backup's answer straight away, which relies on the transport
+ * registering how to abort a request, as {@link HttpClientTransport} does.
+ */
+public class Hedger implements Closeable {
+  private static final int MIN_SAMPLES = 20;
+  // Budget is kept in thousandths of a backup request, and up to this many can be saved up
+  private static final long BUDGET_PER_HEDGE = 1000;
+  private static final long MAX_BUDGET = 10 * BUDGET_PER_HEDGE;
+
+  /**
+   * Makes one attempt at a call
+   */
+  public interface Attempt {
+    ConceptMapResponse call(ConceptMapRequest request) throws IOException;
+  }
+
+  private final Map<String, EndpointLatencies> endpoints = new LinkedHashMap<>();
+  private final ScheduledThreadPoolExecutor scheduler;
+  private final double percentile;
+  private final long minDelayNanos;
+  private final long budgetPerCall;
+  private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+
+  public Hedger(ConceptMapClientConfig config) {
+    for (String endpoint : ConceptMapClient.ENDPOINTS) {
+      endpoints.put(endpoint, new EndpointLatencies(config.getHedgeWindowSize()));
+    }
+    this.scheduler = new ScheduledThreadPoolExecutor(config.getHedgeThreads(),
+        new DaemonThreadFactory("conceptmap-hedge"));
+    this.scheduler.setRemoveOnCancelPolicy(true);
+    this.percentile = config.getHedgePercentile();
+    this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getHedgeMinDelayMillis());
+    this.budgetPerCall = Math.round(config.getHedgeBudgetPercent() * BUDGET_PER_HEDGE / 100);
+  }
+
+  /**
+   * Make the call, and a backup call if it's slow and the budget allows
+   *
+   * @throws IOException if the call failed, and the backup if one was sent
+   */
+  public ConceptMapResponse execute(String endpoint, ConceptMapRequest request, Attempt attempt)
+      throws IOException {
+    EndpointLatencies latencies = endpoints.get(endpoint);
+    latencies.calls.incrementAndGet();
+    depositBudget();
+
+    long delayNanos = latencies.getDelayNanos();
+    long startNanos = System.nanoTime();
+    if (delayNanos < 0) {
+      ConceptMapResponse response = attempt.call(request);
+      latencies.record(System.nanoTime() - startNanos);
+      return response;
+    }
+
+    Race race = new Race(latencies, request, attempt, startNanos);
+    ScheduledFuture<?> timer = null;
+    try {
+      timer = scheduler.schedule(RequestLog.wrap(race), Math.max(delayNanos, minDelayNanos),
+          TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      // Closed, so no backup
+    }
+    try {
+      return race.runPrimary();
+    } finally {
+      if (timer != null) {
+        timer.cancel(false);
+      }
+    }
+  }
+
+  private void depositBudget() {
+    while (true) {
+      long current = budget.get();
+      if (current >= MAX_BUDGET
+          || budget.compareAndSet(current, Math.min(MAX_BUDGET, current + budgetPerCall))) {
+        return;
+      }
+    }
+  }
+
+  private boolean withdrawBudget() {
+    while (true) {
+      long current = budget.get();
+      if (current < BUDGET_PER_HEDGE) {
+        return false;
+      }
+      if (budget.compareAndSet(current, current - BUDGET_PER_HEDGE)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return the calls made to the endpoint
+   */
+  public long getCalls(String endpoint) {
+    return endpoints.get(endpoint).calls.get();
+  }
+
+  /**
+   * @return the backup requests sent to the endpoint
+   */
+  public long getHedged(String endpoint) {
+    return endpoints.get(endpoint).hedged.get();
+  }
+
+  /**
+   * @return the backup requests that answered before the calls they backed up
+   */
+  public long getWon(String endpoint) {
+    return endpoints.get(endpoint).won.get();
+  }
+
+  /**
+   * @return the slow calls that weren't hedged because the budget was used up
+   */
+  public long getBudgetExhausted(String endpoint) {
+    return endpoints.get(endpoint).budgetExhausted.get();
+  }
+
+  /**
+   * @return how long a call to the endpoint can take before it's hedged, or -1 if there aren't
+   *     enough recent calls to tell
+   */
+  public long getDelayMillis(String endpoint) {
+    long delayNanos = endpoints.get(endpoint).getDelayNanos();
+    return delayNanos < 0 ? -1
+        : TimeUnit.NANOSECONDS.toMillis(Math.max(delayNanos, minDelayNanos));
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    StringBuilder text = new StringBuilder("Hedger{");
+    for (Map.Entry<String, EndpointLatencies> endpoint : endpoints.entrySet()) {
+      EndpointLatencies latencies = endpoint.getValue();
+      if (text.length() > "Hedger{".length()) {
+        text.append(", ");
+      }
+      text.append(endpoint.getKey())
+          .append("={calls=").append(latencies.calls)
+          .append(", hedged=").append(latencies.hedged)
+          .append(", won=").append(latencies.won)
+          .append(", budgetExhausted=").append(latencies.budgetExhausted)
+          .append(", delayMillis=").append(getDelayMillis(endpoint.getKey()))
+          .append('}');
+    }
+    return text.append('}').toString();
+  }
+
+  /**
+   * A call and its backup, if it gets one. The first to answer is decided, and the other's
+   * request aborted, or its response closed if it answers anyway.
+   */
+  private class Race implements Runnable {
+    private final EndpointLatencies latencies;
+    private final ConceptMapRequest request;
+    private final Attempt attempt;
+    private final long startNanos;
+    private final AtomicBoolean decided = new AtomicBoolean();
+    private final CountDownLatch backupDone = new CountDownLatch(1);
+    private volatile boolean backupSent;
+    private volatile ConceptMapRequest backupRequest;
+    private volatile ConceptMapResponse backupResponse;
+
+    Race(EndpointLatencies latencies, ConceptMapRequest request, Attempt attempt,
+         long startNanos) {
+      this.latencies = latencies;
+      this.request = request;
+      this.attempt = attempt;
+      this.startNanos = startNanos;
+    }
+
+    ConceptMapResponse runPrimary() throws IOException {
+      ConceptMapResponse response;
+      try {
+        response = attempt.call(request);
+      } catch (IOException | RuntimeException e) {
+        // Aborted because the backup won, or failed, in which case the backup may yet answer
+        if (!backupSent && decided.compareAndSet(false, true)) {
+          throw e;
+        }
+        ConceptMapResponse backup = awaitBackup();
+        if (backup == null) {
+          throw e;
+        }
+        return backup;
+      }
+
+      if (decided.compareAndSet(false, true)) {
+        latencies.record(System.nanoTime() - startNanos);
+        ConceptMapRequest backup = backupRequest;
+        if (backup != null) {
+          backup.abort();
+        }
+        return response;
+      }
+      // The backup answered while this response was on its way
+      response.close();
+      return awaitBackup();
+    }
+
+    /**
+     * Send the backup request, if the call is still going, there's time left for it and the
+     * budget allows
+     */
+    @Override
+    public void run() {
+      if (decided.get()) {
+        return;
+      }
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      int readTimeoutMillis = (int) (request.getReadTimeoutMillis() - elapsedMillis);
+      if (readTimeoutMillis <= 0) {
+        return;
+      }
+      if (!withdrawBudget()) {
+        latencies.budgetExhausted.incrementAndGet();
+        return;
+      }
+
+      ConceptMapRequest backup = request.copy();
+      backup.setReadTimeoutMillis(readTimeoutMillis);
+      backup.setConnectTimeoutMillis(
+          Math.min(request.getConnectTimeoutMillis(), readTimeoutMillis));
+      backupRequest = backup;
+      backupSent = true;
+      latencies.hedged.incrementAndGet();
+      long backupStartNanos = System.nanoTime();
+      try {
+        ConceptMapResponse response = attempt.call(backup);
+        if (decided.compareAndSet(false, true)) {
+          long now = System.nanoTime();
+          latencies.won.incrementAndGet();
+          latencies.record(now - backupStartNanos);
+          // The call took at least this long, which keeps the percentile honest
+          latencies.record(now - startNanos);
+          backupResponse = response;
+          request.abort();
+        }
+        else {
+          response.close();
+        }
+      } catch (IOException | RuntimeException e) {
+        // The call may still answer
+      } finally {
+        backupDone.countDown();
+      }
+    }
+
+    /**
+     * @return the backup's response if it won, or null
+     */
+    private ConceptMapResponse awaitBackup() throws IOException {
+      try {
+        backupDone.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for a backup request");
+      }
+      return backupResponse;
+    }
+  }
+
+  /**
+   * An endpoint's recent latencies, and what hedging did for its calls
+   */
+  private class EndpointLatencies {
+    private final long[] window;
+    private final int recomputeEvery;
+    private int next;
+    private int recorded;
+    private int sinceComputed;
+    private volatile long delayNanos = -1;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    EndpointLatencies(int windowSize) {
+      this.window = new long[Math.max(MIN_SAMPLES, windowSize)];
+      this.recomputeEvery = Math.max(1, window.length / 10);
+    }
+
+    synchronized void record(long nanos) {
+      window[next] = nanos;
+      next = (next + 1) % window.length;
+      if (recorded < window.length) {
+        recorded++;
+      }
+      // Sorting the window on every call would cost more than the percentile drifts
+      if (recorded >= MIN_SAMPLES && (delayNanos < 0 || ++sinceComputed >= recomputeEvery)) {
+        sinceComputed = 0;
+        long[] sorted = Arrays.copyOf(window, recorded);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * recorded) - 1;
+        delayNanos = sorted[Math.max(0, Math.min(recorded - 1, index))];
+      }
+    }
+
+    /**
+     * @return the hedging percentile of the recent latencies, or -1 if there aren't enough
+     */
+    long getDelayNanos() {
+      return delayNanos;
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ConceptMapTransport} backed by a bounded pool of keep-alive connections, so a warm
+ * Lambda container or servlet pays the TLS handshake once rather than on every utterance.
+ * <p>
+ * A connection can only be reused once its response body has been read to the end, so closing a
+ * body reads whatever is left of it. When more than maxDrainBytes is left, as when the parser
+ * stopped early with all the labels it needs, the connection is closed instead, as downloading
+ * the rest would cost more than a new connection.
+ */
+public class HttpClientTransport implements ConceptMapTransport {
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  private final int poolTimeoutMillis;
+  private final long keepAliveMillis;
+  private final long maxDrainBytes;
+  private final AtomicLong abortedBodies = new AtomicLong();
+
+  public HttpClientTransport(ConceptMapClientConfig config) {
+    this.poolTimeoutMillis = config.getPoolTimeoutMillis();
+    this.keepAliveMillis = config.getKeepAliveMillis();
+    this.maxDrainBytes = config.getMaxDrainBytes();
+
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(config.getMaxConnections());
+    // Every call goes to the same host, so the whole pool is available to it
+    connectionManager.setDefaultMaxPerRoute(config.getMaxConnections());
+
+    ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long serverKeepAlive = super.getKeepAliveDuration(response, context);
+        return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+      }
+    };
+
+    httpClient = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setKeepAliveStrategy(keepAliveStrategy)
+        .disableContentCompression()
+        .disableCookieManagement()
+        .disableAuthCaching()
+        .build();
+  }
+
+  @Override
+  public ConceptMapResponse execute(ConceptMapRequest request) throws IOException {
+    final HttpGet get = new HttpGet(request.getUrl());
+    get.setConfig(RequestConfig.custom()
+        .setConnectionRequestTimeout(poolTimeoutMillis)
+        .setConnectTimeout(request.getConnectTimeoutMillis())
+        .setSocketTimeout(request.getReadTimeoutMillis())
+        .setRedirectsEnabled(request.isFollowRedirects())
+        .build());
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+      get.setHeader(header.getKey(), header.getValue());
+    }
+    request.setAbortHandler(new Closeable() {
+      @Override
+      public void close() {
+        get.abort();
+      }
+    });
+
+    CloseableHttpResponse response;
+    try {
+      response = httpClient.execute(get);
+    } catch (ConnectionPoolTimeoutException e) {
+      // Our own pool ran dry, which says nothing about the endpoint
+      throw new CallNotPermittedException("No pooled connection for " + request.getUrl()
+          + " within " + poolTimeoutMillis + "ms", e);
+    }
+    Map<String, String> headers = new LinkedHashMap<>();
+    for (Header header : response.getAllHeaders()) {
+      headers.put(header.getName(), header.getValue());
+    }
+    HttpEntity entity = response.getEntity();
+    InputStream body = entity != null
+        ? new ResponseBody(entity.getContent(), entity.getContentLength(), get) : null;
+
+    return new ConceptMapResponse(response.getStatusLine().getStatusCode(), headers, body, response);
+  }
+
+  /**
+   * Lease the connections from the pool, connect them, which for HTTPS includes the TLS
+   * handshake, and hand them back as reusable, without sending a request
+   */
+  @Override
+  public int prewarm(String url, int connections, int connectTimeoutMillis) throws IOException {
+    URI uri = URI.create(url);
+    boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+    int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+    // The same route the client plans for requests, so they find the connections
+    HttpRoute route = new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null,
+        secure);
+
+    int wanted = connections - connectionManager.getStats(route).getAvailable();
+    List<HttpClientConnection> leased = new ArrayList<>();
+    int opened = 0;
+    try {
+      for (int i = 0; i < wanted; i++) {
+        leased.add(connectionManager.requestConnection(route, null)
+            .get(poolTimeoutMillis, TimeUnit.MILLISECONDS));
+      }
+      for (HttpClientConnection connection : leased) {
+        if (!connection.isOpen()) {
+          HttpClientContext context = HttpClientContext.create();
+          connectionManager.connect(connection, route, connectTimeoutMillis, context);
+          connectionManager.routeComplete(connection, route, context);
+          // Binds the socket's streams, which the stale check on lease expects
+          connection.flush();
+          opened++;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted prewarming connections");
+    } catch (ExecutionException | ConnectionPoolTimeoutException e) {
+      throw new IOException("Couldn't lease a connection to prewarm", e);
+    } finally {
+      for (HttpClientConnection connection : leased) {
+        connectionManager.releaseConnection(connection, null,
+            connection.isOpen() ? keepAliveMillis : 0, TimeUnit.MILLISECONDS);
+      }
+    }
+    return opened;
+  }
+
+  /**
+   * @return how many response bodies were left unread by closing their connection
+   */
+  public long getAbortedBodies() {
+    return abortedBodies.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+    connectionManager.shutdown();
+  }
+
+  /**
+   * A response body that, when closed before it was read to the end, aborts the request rather
+   * than reading more than maxDrainBytes of what is left
+   */
+  private class ResponseBody extends CountingInputStream {
+    private final long contentLength;
+    private final HttpGet get;
+    private boolean ended;
+
+    ResponseBody(InputStream content, long contentLength, HttpGet get) {
+      super(content);
+      this.contentLength = contentLength;
+      this.get = get;
+    }
+
+    @Override
+    protected synchronized void afterRead(int n) {
+      super.afterRead(n);
+      if (n == -1) {
+        ended = true;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!ended && !isDrainable()) {
+        abortedBodies.incrementAndGet();
+        get.abort();
+      }
+      super.close();
+    }
+
+    /**
+     * @return whether no more than maxDrainBytes is left, reading up to that much to find out
+     *     when the length isn't known
+     */
+    private boolean isDrainable() {
+      if (contentLength >= 0) {
+        return contentLength - getByteCount() <= maxDrainBytes;
+      }
+      byte[] buffer = new byte[4096];
+      long left = maxDrainBytes;
+      try {
+        while (left > 0) {
+          int n = read(buffer, 0, (int) Math.min(buffer.length, left));
+          if (n == -1) {
+            return true;
+          }
+          left -= n;
+        }
+        return read() == -1;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+  }
+}
@@ -33,6 +33,31 @@ public class ItemInfo {
     this.picture = picture;
   }
 
+  /**
+   * @return the number in a Q-ID such as Q615, or 0 if the ID isn't a Q-ID
+   */
+  public static int toNumericId(String id) {
+    if (id == null || id.length() < 2 || id.length() > 11 || id.charAt(0) != 'Q') {
+      return 0;
+    }
+    long numericId = 0;
+    for (int i = 1; i < id.length(); i++) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return 0;
+      }
+      numericId = numericId * 10 + (c - '0');
+    }
+    return numericId <= Integer.MAX_VALUE ? (int) numericId : 0;
+  }
+
+  /**
+   * @return the Q-ID for a number from {@link #toNumericId(String)}, or null for 0
+   */
+  public static String toId(int numericId) {
+    return numericId > 0 ? "Q" + numericId : null;
+  }
+
   public String getId() {
     return id;
   }
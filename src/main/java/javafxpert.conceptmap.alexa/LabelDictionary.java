@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * A read-only, memory-mapped dictionary of normalized English labels and aliases to Q-IDs,
+ * written by {@link LabelDictionaryBuilder}. The file stays off-heap, so opening it costs the
+ * same however many labels it holds, and a lookup is a binary search over its sorted keys.
+ * <p>
+ * The file is laid out as:
+ * <pre>
+ *   int   magic "CMLD"
+ *   int   format version
+ *   int   entry count
+ *   int[] offset of each entry, in key order
+ *   entries of: unsigned short key length, UTF-8 key bytes, int numeric Q-ID
+ * </pre>
+ * Keys are sorted by their unsigned UTF-8 bytes.
+ */
+public class LabelDictionary {
+  static final int MAGIC = 0x434d4c44;
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 12;
+
+  private final File file;
+  private final MappedByteBuffer buffer;
+  private final int count;
+
+  private LabelDictionary(File file, MappedByteBuffer buffer) throws IOException {
+    this.file = file;
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+      throw new IOException(file + " is not a label dictionary");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException(file + " has unsupported version " + buffer.getInt(4));
+    }
+    this.count = buffer.getInt(8);
+  }
+
+  /**
+   * Map a dictionary file into memory
+   *
+   * @throws IOException if the file couldn't be mapped or isn't a label dictionary
+   */
+  public static LabelDictionary open(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      // The mapping outlives the channel, so the file can be closed straight away
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new LabelDictionary(file, buffer);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * @return the Q-ID for the label, or null if the dictionary doesn't hold it
+   */
+  public String lookup(String label) {
+    byte[] key = normalize(label).getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int entryOffset = buffer.getInt(HEADER_BYTES + mid * 4);
+      int comparison = compareKey(buffer, entryOffset, key);
+      if (comparison < 0) {
+        low = mid + 1;
+      }
+      else if (comparison > 0) {
+        high = mid - 1;
+      }
+      else {
+        int keyLength = buffer.getShort(entryOffset) & 0xffff;
+        return "Q" + buffer.getInt(entryOffset + 2 + keyLength);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read the whole file into memory now, so lookups don't wait for it to be paged in
+   */
+  public void preload() {
+    buffer.load();
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Normalize a label the same way for building and looking up the dictionary
+   *
+   * @throws IllegalArgumentException if the label is null
+   */
+  public static String normalize(String label) {
+    if (label == null) {
+      throw new IllegalArgumentException("A label to normalize is required");
+    }
+    return label.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Compare the key of the entry at the offset with the given key, byte by byte as unsigned values
+   */
+  static int compareKey(ByteBuffer buffer, int entryOffset, byte[] key) {
+    int keyLength = buffer.getShort(entryOffset) & 0xffff;
+    int length = Math.min(keyLength, key.length);
+    for (int i = 0; i < length; i++) {
+      int difference = (buffer.get(entryOffset + 2 + i) & 0xff) - (key[i] & 0xff);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return keyLength - key.length;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "LabelDictionary{" +
+        "file=" + file +
+        ", count=" + count +
+        '}';
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line tool that writes a {@link LabelDictionary} file from a label dump, and measures
+ * how quickly a dictionary file opens and answers lookups.
+ * <p>
+ * The dump has one tab separated label and Q-ID per line, such as {@code Lionel Messi\tQ615}.
+ * Aliases are simply more lines for the same Q-ID. When a label appears more than once, the
+ * first line wins, so a dump sorted by popularity keeps the most likely meaning.
+ * <pre>
+ *   java javafxpert.conceptmap.alexa.LabelDictionaryBuilder labels.tsv labels.dict
+ *   java javafxpert.conceptmap.alexa.LabelDictionaryBuilder --benchmark labels.dict "Lionel Messi"
+ * </pre>
+ */
+public class LabelDictionaryBuilder {
+  private static final int OPEN_ITERATIONS = 50;
+  private static final int LOOKUP_ITERATIONS = 1000000;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length >= 2 && "--benchmark".equals(args[0])) {
+      benchmark(new File(args[1]), Arrays.copyOfRange(args, 2, args.length));
+    }
+    else if (args.length == 2) {
+      int count = build(new File(args[0]), new File(args[1]));
+      System.out.println("Wrote " + count + " labels to " + args[1]);
+    }
+    else {
+      System.err.println("Usage: LabelDictionaryBuilder <label-dump.tsv> <output.dict>");
+      System.err.println("       LabelDictionaryBuilder --benchmark <dictionary.dict> [label ...]");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Write a dictionary file from a label dump
+   *
+   * @return the number of labels written
+   * @throws IOException if the dump couldn't be read or the dictionary couldn't be written
+   */
+  public static int build(File labelDump, File output) throws IOException {
+    Map<String, Integer> qidsByLabel = new LinkedHashMap<>();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(labelDump), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int tab = line.lastIndexOf('\t');
+        if (tab <= 0 || line.startsWith("#")) {
+          continue;
+        }
+        String label = LabelDictionary.normalize(line.substring(0, tab));
+        String qid = line.substring(tab + 1).trim();
+        if (label.length() == 0 || !qid.startsWith("Q") || qidsByLabel.containsKey(label)) {
+          continue;
+        }
+        try {
+          qidsByLabel.put(label, Integer.parseInt(qid.substring(1)));
+        } catch (NumberFormatException e) {
+          // Not a Q-ID, so not something the dictionary can hold
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    List<Entry> entries = new ArrayList<>();
+    for (Map.Entry<String, Integer> label : qidsByLabel.entrySet()) {
+      byte[] key = label.getKey().getBytes(StandardCharsets.UTF_8);
+      if (key.length <= 0xffff) {
+        entries.add(new Entry(key, label.getValue()));
+      }
+    }
+    Collections.sort(entries);
+
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+    try {
+      out.writeInt(LabelDictionary.MAGIC);
+      out.writeInt(LabelDictionary.VERSION);
+      out.writeInt(entries.size());
+      int offset = LabelDictionary.HEADER_BYTES + entries.size() * 4;
+      for (Entry entry : entries) {
+        out.writeInt(offset);
+        offset += 2 + entry.key.length + 4;
+      }
+      for (Entry entry : entries) {
+        out.writeShort(entry.key.length);
+        out.write(entry.key);
+        out.writeInt(entry.qid);
+      }
+    } finally {
+      out.close();
+    }
+    return entries.size();
+  }
+
+  /**
+   * Report how long the dictionary takes to open, how much heap it holds on to, and how fast it
+   * answers lookups for the given labels
+   */
+  public static void benchmark(File dictionaryFile, String[] labels) throws IOException {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    System.gc();
+    long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+    long[] openNanos = new long[OPEN_ITERATIONS];
+    long firstOpenNanos = 0;
+    LabelDictionary dictionary = null;
+    for (int i = 0; i < OPEN_ITERATIONS; i++) {
+      long start = System.nanoTime();
+      dictionary = LabelDictionary.open(dictionaryFile);
+      openNanos[i] = System.nanoTime() - start;
+      if (i == 0) {
+        firstOpenNanos = openNanos[0];
+      }
+    }
+    Arrays.sort(openNanos);
+
+    System.gc();
+    long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+    System.out.println("Dictionary:     " + dictionaryFile + " (" + dictionaryFile.length()
+        + " bytes, " + dictionary.size() + " labels)");
+    System.out.printf("Open time:      first %.3f ms, median %.3f ms%n",
+        firstOpenNanos / 1e6, openNanos[OPEN_ITERATIONS / 2] / 1e6);
+    System.out.println("Heap retained:  " + Math.max(0, heapAfter - heapBefore)
+        + " bytes across " + OPEN_ITERATIONS + " opens");
+
+    if (labels.length > 0) {
+      for (String label : labels) {
+        System.out.println("Lookup:         " + label + " -> " + dictionary.lookup(label));
+      }
+      long start = System.nanoTime();
+      int found = 0;
+      for (int i = 0; i < LOOKUP_ITERATIONS; i++) {
+        if (dictionary.lookup(labels[i % labels.length]) != null) {
+          found++;
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      System.out.printf("Lookup time:    %.0f ns per lookup (%d found)%n",
+          (double) elapsed / LOOKUP_ITERATIONS, found);
+      System.out.println("Lookups/second: "
+          + LOOKUP_ITERATIONS * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed));
+    }
+  }
+
+  /**
+   * A label's UTF-8 key and numeric Q-ID, ordered by the key's unsigned bytes
+   */
+  private static class Entry implements Comparable<Entry> {
+    private final byte[] key;
+    private final int qid;
+
+    private Entry(byte[] key, int qid) {
+      this.key = key;
+      this.qid = qid;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int length = Math.min(key.length, other.key.length);
+      for (int i = 0; i < length; i++) {
+        int difference = (key[i] & 0xff) - (other.key[i] & 0xff);
+        if (difference != 0) {
+          return difference;
+        }
+      }
+      return key.length - other.key.length;
+    }
+  }
+}
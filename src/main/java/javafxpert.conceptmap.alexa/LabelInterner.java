@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one copy of each label between all the cached claims, as the same club and country
+ * labels turn up in the claims of thousands of players. It holds no more than maxSize labels;
+ * once it's full, new labels are used as they are rather than evicting ones that may be shared
+ * widely.
+ */
+public class LabelInterner {
+  private static class DefaultHolder {
+    private static final LabelInterner DEFAULT = new LabelInterner(
+        ConceptMapClientConfig.fromSystemProperties().getLabelInternerMaxSize());
+  }
+
+  private final ConcurrentMap<String, String> labels = new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  public LabelInterner(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return the interner shared by everything in this JVM
+   */
+  public static LabelInterner getDefault() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  /**
+   * @return the shared copy of the label, or the label itself if it has none and the interner is
+   *     full
+   */
+  public String intern(String label) {
+    if (label == null) {
+      return null;
+    }
+    String shared = labels.get(label);
+    if (shared != null) {
+      hits.incrementAndGet();
+      return shared;
+    }
+    if (labels.size() >= maxSize) {
+      rejected.incrementAndGet();
+      return label;
+    }
+    misses.incrementAndGet();
+    shared = labels.putIfAbsent(label, label);
+    return shared != null ? shared : label;
+  }
+
+  public int getSize() {
+    return labels.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return how many labels weren't shared because the interner was full
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "LabelInterner{" +
+        "size=" + getSize() +
+        ", maxSize=" + maxSize +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        ", rejected=" + rejected +
+        '}';
+  }
+}
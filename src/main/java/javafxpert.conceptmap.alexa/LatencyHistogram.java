@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram. Values are recorded in
+ * microseconds into log-linear buckets: exact below 128, then 64 buckets per power of two, so any
+ * percentile is reported to within about 1.6% of the recorded value, in a fixed 16 KB however
+ * many values are recorded.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+  /** Values above about 19 hours are recorded as 19 hours */
+  private static final long MAX_TRACKABLE_MICROS = (1L << 36) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_TRACKABLE_MICROS) + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public void recordNanos(long nanos) {
+    recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  public void recordMillis(long millis) {
+    recordMicros(TimeUnit.MILLISECONDS.toMicros(millis));
+  }
+
+  public void recordMicros(long micros) {
+    long value = Math.min(Math.max(micros, 0), MAX_TRACKABLE_MICROS);
+    counts.incrementAndGet(indexOf(value));
+    count.incrementAndGet();
+    totalMicros.addAndGet(value);
+    long max;
+    while (value > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, value)) {
+      // another thread raised the max first, compare against the new one
+    }
+  }
+
+  /**
+   * Add every value recorded in another histogram to this one
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < counts.length(); i++) {
+      long bucketCount = other.counts.get(i);
+      if (bucketCount > 0) {
+        counts.addAndGet(i, bucketCount);
+      }
+    }
+    count.addAndGet(other.count.get());
+    totalMicros.addAndGet(other.totalMicros.get());
+    long max;
+    long otherMax = other.maxMicros.get();
+    while (otherMax > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, otherMax)) {
+      // another thread raised the max first, compare against the new one
+    }
+  }
+
+  /**
+   * @return the recorded value, in microseconds, at or below which the given percentage of values
+   *     fall, or 0 if nothing has been recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestEquivalentValue(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMaxMicros() {
+    return maxMicros.get();
+  }
+
+  public double getMeanMicros() {
+    long total = count.get();
+    return total == 0 ? 0 : (double) totalMicros.get() / total;
+  }
+
+  /**
+   * Count the values recorded between two bounds, for printing a distribution
+   *
+   * @return the number of values from lowMicros up to but excluding highMicros
+   */
+  public long getCountBetween(long lowMicros, long highMicros) {
+    long between = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      long bucketLow = lowestEquivalentValue(i);
+      if (bucketLow >= lowMicros && bucketLow < highMicros) {
+        between += counts.get(i);
+      }
+    }
+    return between;
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    totalMicros.set(0);
+    maxMicros.set(0);
+  }
+
+  private static int indexOf(long value) {
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    if (shift <= 0) {
+      return (int) value;
+    }
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF
+        + (int) ((value >>> shift) - SUB_BUCKET_HALF);
+  }
+
+  private static long lowestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+    long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return subBucket << shift;
+  }
+
+  private static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+    return lowestEquivalentValue(index) + (1L << shift) - 1;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return String.format("count=%d, mean=%.1fms, p50=%.1fms, p90=%.1fms, p99=%.1fms, "
+            + "p99.9=%.1fms, max=%.1fms", getCount(), getMeanMicros() / 1000.0,
+        getValueAtPercentile(50) / 1000.0, getValueAtPercentile(90) / 1000.0,
+        getValueAtPercentile(99) / 1000.0, getValueAtPercentile(99.9) / 1000.0,
+        getMaxMicros() / 1000.0);
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazon.speech.Sdk;
+import com.amazon.speech.speechlet.Speechlet;
+import com.amazon.speech.speechlet.servlet.SpeechletServlet;
+import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Enumeration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared launcher for running the skill as a long-lived HTTPS endpoint on embedded Jetty, as an
+ * alternative to AWS Lambda. The keystore is taken from the {@code javax.net.ssl.keyStore} and
+ * {@code javax.net.ssl.keyStorePassword} system properties configured for exec-maven-plugin;
+ * without a keystore it listens on plain HTTP, for use behind a TLS terminating proxy.
+ * <p>
+ * Requests are handled on the executor chosen by the {@code serverExecutor} setting:
+ * {@code virtual} for a virtual thread per request, {@code platform} for a bounded pool of
+ * {@code serverThreads} threads, or {@code auto} (the default) for virtual threads whenever the
+ * JDK has them. As every request blocks on the ConceptMap service, virtual threads let far more
+ * requests be in flight than a platform pool could.
+ * <p>
+ * The metrics are only served when the {@code metricsPort} setting is given, on their own plain
+ * HTTP connector bound to {@code metricsHost} (the loopback address by default), so they aren't
+ * exposed alongside the skill.
+ */
+public final class Launcher {
+  private static final Logger log = LoggerFactory.getLogger(Launcher.class);
+
+  private static final String HTTPS_SCHEME = "https";
+  static final String SPEECHLET_PATH = "/conceptmap";
+  static final String METRICS_PATH = "/metrics";
+  private static final String SKILL_CONNECTOR = "skill";
+  private static final String ADMIN_CONNECTOR = "admin";
+
+  private Launcher() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    logAsynchronously();
+    Server server = createServer(new ConceptMapSpeechlet());
+    server.start();
+    server.join();
+  }
+
+  /**
+   * Create a server hosting the speechlet, ready to be started
+   */
+  public static Server createServer(Speechlet speechlet) {
+    int port = ConceptMapClientConfig.getInt("serverPort", 8888);
+    Server server = new Server(new ExecutorThreadPool(createExecutor()));
+
+    HttpConfiguration httpConf = new HttpConfiguration();
+    ServerConnector serverConnector;
+    String keyStorePath = System.getProperty("javax.net.ssl.keyStore");
+    if (keyStorePath != null && keyStorePath.length() > 0) {
+      SslConnectionFactory sslConnectionFactory = new SslConnectionFactory();
+      SslContextFactory sslContextFactory = sslConnectionFactory.getSslContextFactory();
+      sslContextFactory.setKeyStorePath(keyStorePath);
+      sslContextFactory.setKeyStorePassword(System.getProperty("javax.net.ssl.keyStorePassword"));
+      sslContextFactory.setIncludeCipherSuites(Sdk.SUPPORTED_CIPHER_SUITES);
+
+      httpConf.setSecurePort(port);
+      httpConf.setSecureScheme(HTTPS_SCHEME);
+      httpConf.addCustomizer(new SecureRequestCustomizer());
+      serverConnector = new ServerConnector(server, sslConnectionFactory,
+          new HttpConnectionFactory(httpConf));
+    }
+    else {
+      log.warn("No javax.net.ssl.keyStore set, listening on plain HTTP");
+      serverConnector = new ServerConnector(server, new HttpConnectionFactory(httpConf));
+    }
+    serverConnector.setName(SKILL_CONNECTOR);
+    serverConnector.setPort(port);
+
+    ContextHandlerCollection contexts = new ContextHandlerCollection();
+    ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+    context.setContextPath("/");
+    context.setVirtualHosts(new String[] {"@" + SKILL_CONNECTOR});
+    context.addServlet(new ServletHolder(createServlet(speechlet)), SPEECHLET_PATH);
+    contexts.addHandler(context);
+
+    int metricsPort = ConceptMapClientConfig.getInt("metricsPort", 0);
+    if (metricsPort > 0) {
+      ServerConnector adminConnector = new ServerConnector(server);
+      adminConnector.setName(ADMIN_CONNECTOR);
+      adminConnector.setHost(ConceptMapClientConfig.getSetting("metricsHost", "127.0.0.1"));
+      adminConnector.setPort(metricsPort);
+      server.setConnectors(new Connector[] {serverConnector, adminConnector});
+
+      ServletContextHandler adminContext =
+          new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+      adminContext.setContextPath("/");
+      adminContext.setVirtualHosts(new String[] {"@" + ADMIN_CONNECTOR});
+      adminContext.addServlet(
+          new ServletHolder(new MetricsServlet(ConceptMapMetrics.getDefault())), METRICS_PATH);
+      contexts.addHandler(adminContext);
+    }
+    else {
+      server.setConnectors(new Connector[] {serverConnector});
+    }
+    server.setHandler(contexts);
+    return server;
+  }
+
+  /**
+   * Hand the root logger's lines to a background thread, dropping and counting them rather than
+   * blocking when it falls behind. This is only done for a long-lived server, as Lambda freezes
+   * the thread between requests.
+   */
+  static void logAsynchronously() {
+    org.apache.log4j.Logger root = org.apache.log4j.Logger.getRootLogger();
+    AsyncAppender async = new AsyncAppender();
+    async.setBufferSize(1024);
+    async.setBlocking(false);
+    async.setLocationInfo(false);
+    for (Enumeration<?> appenders = root.getAllAppenders(); appenders.hasMoreElements(); ) {
+      async.addAppender((Appender) appenders.nextElement());
+    }
+    root.removeAllAppenders();
+    root.addAppender(async);
+  }
+
+  private static SpeechletServlet createServlet(final Speechlet speechlet) {
+    SpeechletServlet servlet = new SpeechletServlet();
+    servlet.setSpeechlet(speechlet);
+    return servlet;
+  }
+
+  /**
+   * Create the executor requests are handled on, as chosen by the serverExecutor setting
+   */
+  static ExecutorService createExecutor() {
+    String executorType = ConceptMapClientConfig.getSetting("serverExecutor", "auto");
+    if (!"platform".equals(executorType)) {
+      ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+      if (virtualThreads != null) {
+        log.info("Handling requests on virtual threads");
+        return virtualThreads;
+      }
+      if ("virtual".equals(executorType)) {
+        log.warn("This JDK has no virtual threads, falling back to a platform thread pool");
+      }
+    }
+
+    int threads = ConceptMapClientConfig.getInt("serverThreads", 200);
+    int queueSize = ConceptMapClientConfig.getInt("serverQueueSize", 1000);
+    log.info("Handling requests on a pool of " + threads + " platform threads");
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), new DaemonThreadFactory("conceptmap-server"));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Look up Executors.newVirtualThreadPerTaskExecutor reflectively, as the project still
+   * compiles for JDKs that don't have it
+   *
+   * @return the executor, or null if this JDK has no virtual threads
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      return null;
+    }
+  }
+}
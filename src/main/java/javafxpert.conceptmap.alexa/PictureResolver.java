@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Resolves the redirect behind an item's picture URL on a background thread, so the card image
+ * is looked up while the speech is assembled. Resolved targets are cached, and a lookup that
+ * misses its time slice is dropped rather than delaying the answer. Dropping it aborts its
+ * request, as a blocking read doesn't notice an interrupt and would hold on to its connection
+ * and thread until its read timeout.
+ */
+public class PictureResolver {
+  private static final Logger log = LoggerFactory.getLogger(PictureResolver.class);
+
+  private final ConceptMapClient conceptMapClient;
+  private final ConceptMapMetrics metrics;
+  private final ExpiringLruCache<String, String> redirectCache;
+  private final ThreadPoolExecutor executor;
+  private final long timeSliceMillis;
+
+  public PictureResolver(ConceptMapClient conceptMapClient) {
+    this(conceptMapClient, ConceptMapMetrics.getDefault());
+  }
+
+  public PictureResolver(ConceptMapClient conceptMapClient, ConceptMapMetrics metrics) {
+    ConceptMapClientConfig config = conceptMapClient.getConfig();
+    this.conceptMapClient = conceptMapClient;
+    this.metrics = metrics;
+    this.redirectCache = new ExpiringLruCache<>(config.getPictureCacheSize(),
+        config.getPictureRedirectTtlMillis());
+    this.timeSliceMillis = config.getPictureTimeSliceMillis();
+    // A full queue means the upstream is slow, and a card without an image is better than waiting
+    this.executor = new ThreadPoolExecutor(config.getPictureThreads(), config.getPictureThreads(),
+        60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(config.getPictureThreads() * 4),
+        new DaemonThreadFactory("conceptmap-picture"), new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Start resolving the picture URL's redirect target
+   *
+   * @return the pending target, or null if there is nothing to resolve or no capacity to do it
+   */
+  public Future<String> resolveAsync(final String pictureUrl, final Deadline deadline) {
+    if (pictureUrl == null) {
+      return null;
+    }
+
+    String cachedTarget = redirectCache.get(pictureUrl);
+    if (cachedTarget != null) {
+      return new ResolvedTarget(cachedTarget);
+    }
+
+    final ConceptMapRequest request;
+    try {
+      request = conceptMapClient.newRedirectRequest(pictureUrl, deadline);
+    } catch (DeadlineExceededException e) {
+      return null;
+    }
+    try {
+      return new PendingTarget(executor.submit(RequestLog.wrap(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          String target = conceptMapClient.resolveRedirect(request);
+          if (target != null) {
+            redirectCache.put(pictureUrl, target);
+          }
+          return target;
+        }
+      })), request);
+    } catch (RejectedExecutionException e) {
+      metrics.increment("picture.saturated");
+      log.info("Skipping picture redirect for {}, resolver is saturated", pictureUrl);
+      return null;
+    }
+  }
+
+  /**
+   * Wait for a pending target for no longer than its time slice or the time left before the
+   * deadline, less the reserve kept back for building the response
+   *
+   * @return the target, or null if it failed or didn't arrive in time
+   */
+  public String await(Future<String> pendingTarget, Deadline deadline, long reserveMillis) {
+    if (pendingTarget == null) {
+      return null;
+    }
+    long waitMillis = Math.min(timeSliceMillis, deadline.remainingMillis() - reserveMillis);
+    try {
+      return pendingTarget.get(Math.max(0, waitMillis), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      pendingTarget.cancel(true);
+      metrics.increment("picture.timeouts");
+      log.info("Dropping picture redirect that missed its {}ms slice", waitMillis);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof CallNotPermittedException) {
+        metrics.increment("upstreamRejected.picture");
+        log.info("Skipping picture redirect: {}", e.getCause().getMessage());
+        return null;
+      }
+      metrics.increment("upstreamErrors.picture");
+      log.error("Exception occoured while resolving picture redirect.", e.getCause());
+    } catch (InterruptedException e) {
+      pendingTarget.cancel(true);
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  public ExpiringLruCache<String, String> getRedirectCache() {
+    return redirectCache;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * A target being resolved, whose request is aborted when it's cancelled
+   */
+  private static class PendingTarget implements Future<String> {
+    private final Future<String> future;
+    private final ConceptMapRequest request;
+
+    private PendingTarget(Future<String> future, ConceptMapRequest request) {
+      this.future = future;
+      this.request = request;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      request.abort();
+      return future.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return future.isDone();
+    }
+
+    @Override
+    public String get() throws InterruptedException, ExecutionException {
+      return future.get();
+    }
+
+    @Override
+    public String get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      return future.get(timeout, unit);
+    }
+  }
+
+  /**
+   * A target that was already in the cache
+   */
+  private static class ResolvedTarget implements Future<String> {
+    private final String target;
+
+    private ResolvedTarget(String target) {
+      this.target = target;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public boolean isDone() {
+      return true;
+    }
+
+    @Override
+    public String get() {
+      return target;
+    }
+
+    @Override
+    public String get(long timeout, TimeUnit unit) {
+      return target;
+    }
+  }
+}
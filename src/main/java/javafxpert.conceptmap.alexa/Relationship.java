@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+
+/**
+ * Represents a spoken relationship and the Wikidata property traversal that answers it. A
+ * relationship such as teammates takes more than one hop, written as a path of properties and
+ * directions separated by {@value #HOP_SEPARATOR}, e.g. P54/P54 and f/r.
+ */
+public class Relationship {
+  static final String HOP_SEPARATOR = "/";
+
+  private final String name;
+  private final String propId;
+  private final String direction;
+  private final String phrasing;
+  private final String[] hopPropIds;
+  private final String[] hopDirections;
+
+  public Relationship(String name, String propId, String direction, String phrasing) {
+    this.name = name;
+    this.propId = propId;
+    this.direction = direction;
+    this.phrasing = phrasing;
+    this.hopPropIds = propId.split(HOP_SEPARATOR);
+    this.hopDirections = direction.split(HOP_SEPARATOR);
+    if (hopPropIds.length != hopDirections.length) {
+      throw new IllegalArgumentException("Relationship " + name + " has " + hopPropIds.length
+          + " properties but " + hopDirections.length + " directions");
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the property to traverse, or the path of them for a relationship of several hops
+   */
+  public String getPropId() {
+    return propId;
+  }
+
+  /**
+   * @return the direction to traverse, or the path of them for a relationship of several hops
+   */
+  public String getDirection() {
+    return direction;
+  }
+
+  /**
+   * @return the number of hops from the item to the related items, 1 for a single property
+   */
+  public int getHops() {
+    return hopPropIds.length;
+  }
+
+  public String getHopPropId(int hop) {
+    return hopPropIds[hop];
+  }
+
+  public String getHopDirection(int hop) {
+    return hopDirections[hop];
+  }
+
+  /**
+   * @return what is spoken between the item name and the related labels, such as
+   *     "has been a member of"
+   */
+  public String getPhrasing() {
+    return phrasing;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "Relationship{" +
+        "name='" + name + '\'' +
+        ", propId='" + propId + '\'' +
+        ", direction='" + direction + '\'' +
+        ", phrasing='" + phrasing + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps spoken relationship phrases and their synonyms to the {@link Relationship} that answers
+ * them. The default index is loaded once per JVM from the bundled {@code relationships.tsv}.
+ * Exact matches on the normalized phrase are a single hash lookup; anything else falls back to
+ * singular forms, a known phrase inside the spoken one, and finally the closest spelling.
+ */
+public class RelationshipIndex {
+  private static final Logger log = LoggerFactory.getLogger(RelationshipIndex.class);
+
+  static final String DEFAULT_RESOURCE = "/relationships.tsv";
+
+  private final Map<String, Relationship> relationshipsByPhrase = new HashMap<>();
+  private final List<Relationship> relationships = new ArrayList<>();
+
+  /**
+   * Holds the default index, so it's only loaded the first time it's asked for
+   */
+  private static class DefaultHolder {
+    private static final RelationshipIndex INSTANCE = loadDefault();
+  }
+
+  public static RelationshipIndex getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  private static RelationshipIndex loadDefault() {
+    InputStream inputStream = RelationshipIndex.class.getResourceAsStream(DEFAULT_RESOURCE);
+    if (inputStream == null) {
+      throw new IllegalStateException("Missing resource " + DEFAULT_RESOURCE);
+    }
+    try {
+      RelationshipIndex index = load(inputStream);
+      log.info("Loaded " + index.getRelationships().size() + " relationships");
+      return index;
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't load " + DEFAULT_RESOURCE, e);
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+    }
+  }
+
+  /**
+   * Load an index from tab separated lines of phrases, property, direction and phrasing
+   *
+   * @throws IOException if the lines couldn't be read or aren't in that format
+   */
+  public static RelationshipIndex load(InputStream inputStream) throws IOException {
+    RelationshipIndex index = new RelationshipIndex();
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      String[] columns = line.split("\t");
+      if (columns.length != 4) {
+        throw new IOException("Expected 4 tab separated columns on line " + lineNumber);
+      }
+      String[] phrases = columns[0].split(",");
+      Relationship relationship;
+      try {
+        relationship = new Relationship(phrases[0].trim(), columns[1].trim(), columns[2].trim(),
+            columns[3].trim());
+      } catch (IllegalArgumentException e) {
+        throw new IOException(e.getMessage() + " on line " + lineNumber);
+      }
+      index.add(relationship, phrases);
+    }
+    return index;
+  }
+
+  public void add(Relationship relationship, String... phrases) {
+    relationships.add(relationship);
+    for (String phrase : phrases) {
+      String key = normalize(phrase);
+      if (key.length() > 0 && !relationshipsByPhrase.containsKey(key)) {
+        relationshipsByPhrase.put(key, relationship);
+      }
+    }
+  }
+
+  /**
+   * @return the relationship for the spoken phrase, or null if nothing is close enough
+   */
+  public Relationship resolve(String spokenPhrase) {
+    if (spokenPhrase == null) {
+      return null;
+    }
+    String phrase = normalize(spokenPhrase);
+    Relationship relationship = relationshipsByPhrase.get(phrase);
+    if (relationship != null) {
+      return relationship;
+    }
+
+    relationship = relationshipsByPhrase.get(singular(phrase));
+    if (relationship != null) {
+      return relationship;
+    }
+
+    relationship = findLongestContainedPhrase(phrase);
+    if (relationship != null) {
+      return relationship;
+    }
+
+    return findClosestSpelling(phrase);
+  }
+
+  /**
+   * @return the first relationship loaded, used when no relationship was spoken
+   */
+  public Relationship getDefaultRelationship() {
+    return relationships.isEmpty() ? null : relationships.get(0);
+  }
+
+  public List<Relationship> getRelationships() {
+    return Collections.unmodifiableList(relationships);
+  }
+
+  static String normalize(String phrase) {
+    String normalized = phrase.toLowerCase(Locale.ENGLISH)
+        .replaceAll("[^a-z0-9 ]", " ")
+        .replaceAll("\\s+", " ")
+        .trim();
+    if (normalized.startsWith("the ")) {
+      normalized = normalized.substring(4);
+    }
+    return normalized;
+  }
+
+  private static String singular(String phrase) {
+    if (phrase.endsWith("ies")) {
+      return phrase.substring(0, phrase.length() - 3) + "y";
+    }
+    if (phrase.endsWith("s")) {
+      return phrase.substring(0, phrase.length() - 1);
+    }
+    return phrase;
+  }
+
+  private Relationship findLongestContainedPhrase(String phrase) {
+    String padded = " " + phrase + " ";
+    String bestKey = null;
+    for (String key : relationshipsByPhrase.keySet()) {
+      if (padded.contains(" " + key + " ") && (bestKey == null || key.length() > bestKey.length())) {
+        bestKey = key;
+      }
+    }
+    return bestKey != null ? relationshipsByPhrase.get(bestKey) : null;
+  }
+
+  private Relationship findClosestSpelling(String phrase) {
+    // Allow roughly one mistake for every four letters
+    int bestDistance = Math.max(1, phrase.length() / 4) + 1;
+    Relationship best = null;
+    for (Map.Entry<String, Relationship> entry : relationshipsByPhrase.entrySet()) {
+      String key = entry.getKey();
+      if (Math.abs(key.length() - phrase.length()) >= bestDistance) {
+        continue;
+      }
+      int distance = editDistance(phrase, key);
+      if (distance < bestDistance) {
+        bestDistance = distance;
+        best = entry.getValue();
+      }
+    }
+    return best;
+  }
+
+  private static int editDistance(String a, String b) {
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+        current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[b.length()];
+  }
+}
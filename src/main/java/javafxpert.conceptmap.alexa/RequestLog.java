@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.slf4j.MDC;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-request logging state. The request and session IDs are put in the MDC so every line
+ * logged while handling a request carries them, and whether the request's verbose diagnostics
+ * are logged is decided once, up front:
+ * <ul>
+ *   <li>for the session named by the {@code debugSessionId} setting, they are logged in full,
+ *   response bodies and all</li>
+ *   <li>otherwise for a {@code logSampleRate} fraction of requests, with bodies truncated to
+ *   {@code logBodyMaxChars}</li>
+ * </ul>
+ * Verbose lines are guarded with {@link #isVerbose()}, so unsampled requests don't pay for
+ * formatting them. Work a request hands to another thread is wrapped with {@link #wrap(Callable)}
+ * or {@link #wrap(Runnable)}, so it logs as part of the request.
+ */
+public final class RequestLog {
+  static final String REQUEST_ID = "requestId";
+  static final String SESSION_ID = "sessionId";
+
+  private static final ThreadLocal<State> STATE = new ThreadLocal<>();
+
+  private enum Mode {
+    QUIET, SAMPLED, FULL
+  }
+
+  private static final class State {
+    private final Mode mode;
+    private final int bodyMaxChars;
+
+    State(Mode mode, int bodyMaxChars) {
+      this.mode = mode;
+      this.bodyMaxChars = bodyMaxChars;
+    }
+  }
+
+  /**
+   * The logging state of a request on a thread, for carrying it over to another
+   */
+  private static final class Context {
+    private final State state;
+    private final String requestId;
+    private final String sessionId;
+
+    private Context(State state, String requestId, String sessionId) {
+      this.state = state;
+      this.requestId = requestId;
+      this.sessionId = sessionId;
+    }
+
+    static Context capture() {
+      return new Context(STATE.get(), MDC.get(REQUEST_ID), MDC.get(SESSION_ID));
+    }
+
+    /**
+     * Make this the state of the current thread
+     *
+     * @return the state it had, for restoring afterwards
+     */
+    Context attach() {
+      Context previous = capture();
+      restore();
+      return previous;
+    }
+
+    /**
+     * Make this the state of the current thread again
+     */
+    void restore() {
+      if (state != null) {
+        STATE.set(state);
+      }
+      else {
+        STATE.remove();
+      }
+      put(REQUEST_ID, requestId);
+      put(SESSION_ID, sessionId);
+    }
+
+    private static void put(String key, String value) {
+      if (value != null) {
+        MDC.put(key, value);
+      }
+      else {
+        MDC.remove(key);
+      }
+    }
+  }
+
+  private RequestLog() {
+  }
+
+  /**
+   * Start logging for a request on this thread
+   */
+  public static void begin(ConceptMapClientConfig config, String requestId, String sessionId) {
+    MDC.put(REQUEST_ID, String.valueOf(requestId));
+    MDC.put(SESSION_ID, String.valueOf(sessionId));
+
+    Mode mode = Mode.QUIET;
+    if (sessionId != null && sessionId.equals(config.getDebugSessionId())) {
+      mode = Mode.FULL;
+    }
+    else if (ThreadLocalRandom.current().nextDouble() < config.getLogSampleRate()) {
+      mode = Mode.SAMPLED;
+    }
+    STATE.set(new State(mode, config.getLogBodyMaxChars()));
+  }
+
+  /**
+   * Finish logging for the request on this thread
+   */
+  public static void end() {
+    STATE.remove();
+    MDC.remove(REQUEST_ID);
+    MDC.remove(SESSION_ID);
+  }
+
+  /**
+   * Wrap a task so it runs with the logging state of the request submitting it
+   */
+  public static <V> Callable<V> wrap(final Callable<V> task) {
+    final Context context = Context.capture();
+    return new Callable<V>() {
+      @Override
+      public V call() throws Exception {
+        Context previous = context.attach();
+        try {
+          return task.call();
+        } finally {
+          previous.restore();
+        }
+      }
+    };
+  }
+
+  /**
+   * Wrap a task so it runs with the logging state of the request submitting it
+   */
+  public static Runnable wrap(final Runnable task) {
+    final Context context = Context.capture();
+    return new Runnable() {
+      @Override
+      public void run() {
+        Context previous = context.attach();
+        try {
+          task.run();
+        } finally {
+          previous.restore();
+        }
+      }
+    };
+  }
+
+  /**
+   * @return whether verbose diagnostics should be logged for the current request
+   */
+  public static boolean isVerbose() {
+    State state = STATE.get();
+    return state != null && state.mode != Mode.QUIET;
+  }
+
+  /**
+   * @return the body in full for a session being debugged, otherwise no more than the first
+   *     logBodyMaxChars characters of it
+   */
+  public static String truncate(String body) {
+    State state = STATE.get();
+    int maxChars = state != null ? state.bodyMaxChars : 0;
+    if (body == null || (state != null && state.mode == Mode.FULL) || body.length() <= maxChars) {
+      return body;
+    }
+    return body.substring(0, maxChars) + "...(" + body.length() + " chars)";
+  }
+}
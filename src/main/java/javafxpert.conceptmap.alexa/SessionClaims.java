@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazon.speech.speechlet.Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The last answer given in a session, kept in the session's attributes so a follow-up can be
+ * answered without calling ConceptMap. The resolved item ID saves a lookup when the same item is
+ * asked about again, and the labels let "more" read out the next page of a long answer.
+ * <p>
+ * Alexa sends the attributes back with every request, so the labels are kept as one newline
+ * separated string rather than a list.
+ */
+public class SessionClaims {
+  static final String ITEM_NAME = "itemName";
+  static final String ITEM_ID = "itemId";
+  static final String PROP_ID = "propId";
+  static final String DIRECTION = "direction";
+  static final String LABELS = "labels";
+  static final String NEXT_LABEL = "nextLabel";
+
+  private static final char LABEL_SEPARATOR = '\n';
+
+  private final String itemName;
+  private final String itemId;
+  private final String propId;
+  private final String direction;
+  private final List<String> itemLabels;
+  private int nextLabel;
+
+  public SessionClaims(String itemName, String itemId, Relationship relationship,
+                       List<String> itemLabels) {
+    this(itemName, itemId, relationship.getPropId(), relationship.getDirection(), itemLabels, 0);
+  }
+
+  private SessionClaims(String itemName, String itemId, String propId, String direction,
+                        List<String> itemLabels, int nextLabel) {
+    this.itemName = itemName;
+    this.itemId = itemId;
+    this.propId = propId;
+    this.direction = direction;
+    this.itemLabels = itemLabels;
+    this.nextLabel = nextLabel;
+  }
+
+  /**
+   * @return the answer kept in the session, or null if there isn't one
+   */
+  public static SessionClaims fromSession(Session session) {
+    Object itemId = session.getAttribute(ITEM_ID);
+    if (!(itemId instanceof String)) {
+      return null;
+    }
+    Object nextLabel = session.getAttribute(NEXT_LABEL);
+    return new SessionClaims((String) session.getAttribute(ITEM_NAME), (String) itemId,
+        (String) session.getAttribute(PROP_ID), (String) session.getAttribute(DIRECTION),
+        decodeLabels((String) session.getAttribute(LABELS)),
+        nextLabel instanceof Number ? ((Number) nextLabel).intValue() : 0);
+  }
+
+  public void saveTo(Session session) {
+    session.setAttribute(ITEM_NAME, itemName);
+    session.setAttribute(ITEM_ID, itemId);
+    session.setAttribute(PROP_ID, propId);
+    session.setAttribute(DIRECTION, direction);
+    session.setAttribute(LABELS, encodeLabels(itemLabels));
+    session.setAttribute(NEXT_LABEL, nextLabel);
+  }
+
+  /**
+   * Forget the answer kept in the session, so a "more" can't read out an answer to an earlier
+   * question
+   */
+  public static void clear(Session session) {
+    session.removeAttribute(ITEM_NAME);
+    session.removeAttribute(ITEM_ID);
+    session.removeAttribute(PROP_ID);
+    session.removeAttribute(DIRECTION);
+    session.removeAttribute(LABELS);
+    session.removeAttribute(NEXT_LABEL);
+  }
+
+  private static String encodeLabels(List<String> itemLabels) {
+    StringBuilder encoded = new StringBuilder();
+    for (String itemLabel : itemLabels) {
+      if (encoded.length() > 0) {
+        encoded.append(LABEL_SEPARATOR);
+      }
+      encoded.append(itemLabel.replace(LABEL_SEPARATOR, ' '));
+    }
+    return encoded.toString();
+  }
+
+  private static List<String> decodeLabels(String encoded) {
+    if (encoded == null || encoded.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<String> itemLabels = new ArrayList<>();
+    int start = 0;
+    int end;
+    while ((end = encoded.indexOf(LABEL_SEPARATOR, start)) >= 0) {
+      itemLabels.add(encoded.substring(start, end));
+      start = end + 1;
+    }
+    itemLabels.add(encoded.substring(start));
+    return itemLabels;
+  }
+
+  /**
+   * @return whether this is the answer about the named item, so its ID can be reused
+   */
+  public boolean isFor(String itemName) {
+    return itemName != null && itemName.equalsIgnoreCase(this.itemName);
+  }
+
+  /**
+   * Speak the next page of labels and move past it
+   *
+   * @param pageSize the number of labels to speak, or 0 for all that are left
+   */
+  public String nextPage(int pageSize) {
+    int toIndex = pageSize > 0 ? Math.min(nextLabel + pageSize, itemLabels.size())
+        : itemLabels.size();
+    String speech = ClaimsInfo.toItemLabelsSpeech(itemLabels, nextLabel, toIndex);
+    nextLabel = toIndex;
+    return speech;
+  }
+
+  /**
+   * @return the number of labels not yet spoken
+   */
+  public int getRemaining() {
+    return itemLabels.size() - nextLabel;
+  }
+
+  public String getItemName() {
+    return itemName;
+  }
+
+  public String getItemId() {
+    return itemId;
+  }
+
+  public String getPropId() {
+    return propId;
+  }
+
+  public String getDirection() {
+    return direction;
+  }
+
+  public List<String> getItemLabels() {
+    return itemLabels;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "SessionClaims{" +
+        "itemName='" + itemName + '\'' +
+        ", itemId='" + itemId + '\'' +
+        ", propId='" + propId + '\'' +
+        ", direction='" + direction + '\'' +
+        ", itemLabels=" + itemLabels.size() +
+        ", nextLabel=" + nextLabel +
+        '}';
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent loads of the same key into one upstream call. The first caller for a key
+ * loads it, and callers arriving while that load is in flight wait for its result instead of
+ * making their own call, so a burst of requests for a trending item costs one upstream call.
+ * <p>
+ * A waiter gives up when its own deadline expires, leaving nothing behind, and the load carries
+ * on for the others. A failed load fails every waiter, except that a waiter with time to spare
+ * takes over when the load only failed because its caller's deadline ran out. A load that failed
+ * with a runtime exception, such as a parser tripping over an odd response, fails the caller and
+ * the waiters with an {@link IOException}, so they handle it like any other upstream failure.
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentMap<K, Call<V>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong loads = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * Load the value for the key, or wait for a load of it that is already in flight
+   *
+   * @throws IOException if the load failed, however it failed, or the deadline expired while
+   *     waiting for it
+   */
+  public V load(K key, StaleWhileRevalidateCache.Loader<K, V> loader, Deadline deadline)
+      throws IOException {
+    while (true) {
+      Call<V> call = new Call<>();
+      Call<V> existing = inFlight.putIfAbsent(key, call);
+      if (existing == null) {
+        loads.incrementAndGet();
+        return lead(key, call, loader);
+      }
+
+      coalesced.incrementAndGet();
+      try {
+        return existing.await(deadline);
+      } catch (DeadlineExceededException e) {
+        if (!existing.failedOnDeadline || deadline.isExpired()) {
+          throw e;
+        }
+        // The load ran out of its caller's time, not ours, so try again
+      }
+    }
+  }
+
+  private V lead(K key, Call<V> call, StaleWhileRevalidateCache.Loader<K, V> loader)
+      throws IOException {
+    try {
+      V value = loader.load(key);
+      call.complete(value, null);
+      return value;
+    } catch (IOException e) {
+      call.complete(null, e);
+      throw e;
+    } catch (RuntimeException e) {
+      call.complete(null, e);
+      throw new IOException("Load of " + key + " failed", e);
+    } finally {
+      inFlight.remove(key, call);
+    }
+  }
+
+  /**
+   * @return the number of keys currently being loaded
+   */
+  public int getInFlight() {
+    return inFlight.size();
+  }
+
+  public long getLoads() {
+    return loads.get();
+  }
+
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "SingleFlight{" +
+        "inFlight=" + getInFlight() +
+        ", loads=" + loads +
+        ", coalesced=" + coalesced +
+        '}';
+  }
+
+  /**
+   * A load in flight, and its outcome once it lands
+   */
+  private static class Call<V> {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile V value;
+    private volatile Exception failure;
+    private volatile boolean failedOnDeadline;
+
+    void complete(V value, Exception failure) {
+      this.value = value;
+      this.failure = failure;
+      this.failedOnDeadline = failure instanceof DeadlineExceededException;
+      done.countDown();
+    }
+
+    V await(Deadline deadline) throws IOException {
+      try {
+        long waitMillis = deadline.remainingMillis();
+        if (waitMillis <= 0 || !done.await(waitMillis, TimeUnit.MILLISECONDS)) {
+          throw new DeadlineExceededException("Request budget of " + deadline.getBudgetMillis()
+              + "ms exhausted waiting for a coalesced load");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for a coalesced load");
+      }
+
+      if (failure instanceof DeadlineExceededException) {
+        throw new DeadlineExceededException(failure.getMessage());
+      }
+      if (failure instanceof CallNotPermittedException) {
+        throw new CallNotPermittedException(failure.getMessage());
+      }
+      if (failure != null) {
+        throw new IOException(failure.getMessage(), failure);
+      }
+      return value;
+    }
+  }
+}
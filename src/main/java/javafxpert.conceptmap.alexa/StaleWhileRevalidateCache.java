@@ -0,0 +1,243 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache that answers from an entry past its freshness window while reloading it in the
+ * background, and only makes the caller wait when the entry is missing or too stale to serve.
+ * Entries are evicted least recently used first once their combined weight exceeds the cap.
+ */
+public class StaleWhileRevalidateCache<K, V> {
+  private static final Logger log = LoggerFactory.getLogger(StaleWhileRevalidateCache.class);
+
+  /**
+   * Loads the value for a key from its source
+   */
+  public interface Loader<K, V> {
+    V load(K key) throws IOException;
+  }
+
+  /**
+   * Estimates how much memory a cached value holds on to
+   */
+  public interface Weigher<V> {
+    long weigh(V value);
+  }
+
+  private final long freshMillis;
+  private final long maxStaleMillis;
+  private final long maxWeight;
+  private final Weigher<V> weigher;
+  private final Loader<K, V> refreshLoader;
+  private final Executor refreshExecutor;
+
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<K> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+  private long totalWeight;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong refreshFailures = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public StaleWhileRevalidateCache(long freshMillis, long maxStaleMillis, long maxWeight,
+                                   Weigher<V> weigher, Loader<K, V> refreshLoader,
+                                   Executor refreshExecutor) {
+    this.freshMillis = freshMillis;
+    this.maxStaleMillis = maxStaleMillis;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    this.refreshLoader = refreshLoader;
+    this.refreshExecutor = refreshExecutor;
+  }
+
+  /**
+   * Return the cached value for the key, loading it with the loader if there is no entry that is
+   * still servable. A stale entry is returned immediately and refreshed in the background with
+   * the refresh loader, as the caller's loader may be bound to the caller's deadline.
+   *
+   * @throws IOException if the value had to be loaded and the loader failed
+   */
+  public V get(final K key, final Loader<K, V> loader) throws IOException {
+    long now = System.currentTimeMillis();
+    Entry<V> entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+    }
+
+    if (entry != null) {
+      long age = now - entry.loadedAt;
+      if (age < freshMillis) {
+        hits.incrementAndGet();
+        return entry.value;
+      }
+      if (age < freshMillis + maxStaleMillis) {
+        staleHits.incrementAndGet();
+        refreshAsync(key);
+        return entry.value;
+      }
+    }
+
+    misses.incrementAndGet();
+    V value = loader.load(key);
+    put(key, value);
+    return value;
+  }
+
+  /**
+   * @return the cached value however stale it is, or null if there is none
+   */
+  public V getIfPresent(K key) {
+    synchronized (entries) {
+      Entry<V> entry = entries.get(key);
+      return entry != null ? entry.value : null;
+    }
+  }
+
+  /**
+   * @return how long ago the cached value was loaded, or -1 if there is none
+   */
+  public long getAgeMillis(K key) {
+    synchronized (entries) {
+      Entry<V> entry = entries.get(key);
+      return entry != null ? System.currentTimeMillis() - entry.loadedAt : -1;
+    }
+  }
+
+  public void put(K key, V value) {
+    Entry<V> entry = new Entry<>(value, System.currentTimeMillis(), weigher.weigh(value));
+    if (entry.weight > maxWeight) {
+      return;
+    }
+    synchronized (entries) {
+      Entry<V> previous = entries.put(key, entry);
+      if (previous != null) {
+        totalWeight -= previous.weight;
+      }
+      totalWeight += entry.weight;
+
+      Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+      while (totalWeight > maxWeight && eldest.hasNext()) {
+        totalWeight -= eldest.next().getValue().weight;
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private void refreshAsync(final K key) {
+    // Only one refresh per key at a time, however many requests see it stale
+    if (!refreshing.add(key)) {
+      return;
+    }
+    try {
+      refreshExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            put(key, refreshLoader.load(key));
+            refreshes.incrementAndGet();
+          } catch (IOException | RuntimeException e) {
+            refreshFailures.incrementAndGet();
+            log.info("Background refresh failed for {}: {}", key, e.toString());
+          } finally {
+            refreshing.remove(key);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(key);
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getWeight() {
+    synchronized (entries) {
+      return totalWeight;
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getStaleHits() {
+    return staleHits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getRefreshes() {
+    return refreshes.get();
+  }
+
+  public long getRefreshFailures() {
+    return refreshFailures.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "StaleWhileRevalidateCache{" +
+        "size=" + size() +
+        ", weight=" + getWeight() +
+        ", hits=" + hits +
+        ", staleHits=" + staleHits +
+        ", misses=" + misses +
+        ", refreshes=" + refreshes +
+        ", refreshFailures=" + refreshFailures +
+        ", evictions=" + evictions +
+        '}';
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final long loadedAt;
+    private final long weight;
+
+    private Entry(V value, long loadedAt, long weight) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+      this.weight = weight;
+    }
+  }
+}
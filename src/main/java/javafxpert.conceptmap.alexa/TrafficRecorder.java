@@ -0,0 +1,545 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Appends the envelopes the Lambda handler is sent, and the upstream responses they trigger, to
+ * a recording file for replaying against another build. Recording is off unless the
+ * {@code recordingPath} setting is given. Records are queued and written by a background thread,
+ * and are dropped rather than holding up a request when the queue is full. Lambda freezes that
+ * thread along with the container once a request returns, so the handler calls {@link #flush()}
+ * first, waiting no longer than the {@code recordingFlushMillis} setting. Records still queued
+ * when it gives up are written during a later request, or lost if the container is reclaimed
+ * before then, so a recording is a sample of the traffic rather than all of it.
+ * <p>
+ * The file starts with {@value #MAGIC} and a version, followed by blocks of records, each block
+ * deflated on its own and prefixed with its lengths. A block cut short at the end of the file,
+ * as when a container is killed mid-write, is ignored when reading, and later runs append to it.
+ * Upstream responses are recorded with their status, their body as it came over the wire, and
+ * the few headers the client reads.
+ */
+public class TrafficRecorder implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(TrafficRecorder.class);
+
+  static final String MAGIC = "CMRC";
+  static final int VERSION = 1;
+
+  static final byte ENVELOPE = 'E';
+  static final byte UPSTREAM = 'U';
+
+  private static final int MAX_BATCH = 256;
+  private static final long CLOSE_FLUSH_MILLIS = 5000;
+  private static final List<String> RECORDED_HEADERS = Collections.unmodifiableList(
+      Arrays.asList("Content-Type", "Content-Encoding", "Location", "ETag", "Last-Modified"));
+
+  private static class DefaultHolder {
+    private static final TrafficRecorder DEFAULT =
+        open(ConceptMapClientConfig.fromSystemProperties());
+  }
+
+  private final File file;
+  private final BlockingQueue<Record> queue;
+  private final Thread writer;
+  private final long flushMillis;
+  private volatile boolean failed;
+  // Records queued or being written, guarded by itself
+  private final Object unwrittenLock = new Object();
+  private int unwritten;
+
+  private final AtomicLong records = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong flushTimeouts = new AtomicLong();
+
+  /**
+   * @param flushMillis how long {@link #flush()} waits for the queued records to be written
+   */
+  public TrafficRecorder(File file, int queueSize, long flushMillis) {
+    this.file = file;
+    this.flushMillis = flushMillis;
+    this.queue = new LinkedBlockingQueue<>(queueSize);
+    this.writer = new DaemonThreadFactory("conceptmap-recorder").newThread(new Runnable() {
+      @Override
+      public void run() {
+        writeBehind();
+      }
+    });
+    this.writer.start();
+  }
+
+  /**
+   * @return the recorder shared by everything in this JVM, or null if the recordingPath setting
+   *     isn't given
+   */
+  public static TrafficRecorder getDefault() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  static TrafficRecorder open(ConceptMapClientConfig config) {
+    if (config.getRecordingPath() == null) {
+      return null;
+    }
+    log.info("Recording traffic to {}", config.getRecordingPath());
+    return new TrafficRecorder(new File(config.getRecordingPath()),
+        config.getRecordingQueueSize(), config.getRecordingFlushMillis());
+  }
+
+  /**
+   * Queue an envelope to be recorded. The payload must not be changed afterwards.
+   */
+  public void recordEnvelope(byte[] payload) {
+    enqueue(new Record(ENVELOPE, System.currentTimeMillis(), null, 0, null, 0, payload));
+  }
+
+  /**
+   * Queue an upstream response, or with a status code of 0 a failed call whose body is the
+   * error message, to be recorded
+   */
+  public void recordUpstream(String url, int statusCode, Map<String, String> headers,
+                             long elapsedMicros, byte[] body) {
+    Map<String, String> recordedHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    if (headers != null) {
+      for (String name : RECORDED_HEADERS) {
+        String value = headers.get(name);
+        if (value != null) {
+          recordedHeaders.put(name, value);
+        }
+      }
+    }
+    enqueue(new Record(UPSTREAM, System.currentTimeMillis(), url, statusCode, recordedHeaders,
+        elapsedMicros, body));
+  }
+
+  private void enqueue(Record record) {
+    // Checked under the lock the writer fails under, so nothing is queued after its last drain
+    synchronized (unwrittenLock) {
+      if (failed || !queue.offer(record)) {
+        dropped.incrementAndGet();
+        return;
+      }
+      unwritten++;
+    }
+  }
+
+  private void onWritten(int count) {
+    synchronized (unwrittenLock) {
+      unwritten -= count;
+      unwrittenLock.notifyAll();
+    }
+  }
+
+  /**
+   * Wait for the records queued so far to be written, but no longer than the recordingFlushMillis
+   * setting
+   *
+   * @return whether every queued record was written in time
+   */
+  public boolean flush() {
+    if (!awaitWritten(flushMillis)) {
+      flushTimeouts.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  private boolean awaitWritten(long timeoutMillis) {
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    synchronized (unwrittenLock) {
+      try {
+        // Once writing has failed, nothing left in the queue will be written
+        while (unwritten > 0 && !failed) {
+          long remainingMillis =
+              TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+          if (remainingMillis <= 0) {
+            return false;
+          }
+          unwrittenLock.wait(remainingMillis);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      return !failed;
+    }
+  }
+
+  /**
+   * @return a transport that records the responses of the given one
+   */
+  public ConceptMapTransport wrap(final ConceptMapTransport transport) {
+    return new ConceptMapTransport() {
+      @Override
+      public ConceptMapResponse execute(ConceptMapRequest request) throws IOException {
+        long startNanos = System.nanoTime();
+        ConceptMapResponse response;
+        byte[] body;
+        try {
+          response = transport.execute(request);
+          try {
+            body = IOUtils.toByteArray(response.getBody());
+          } finally {
+            response.close();
+          }
+        } catch (IOException e) {
+          recordUpstream(request.getUrl(), 0, null, elapsedMicros(startNanos),
+              String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+          throw e;
+        }
+        recordUpstream(request.getUrl(), response.getStatusCode(), response.getHeaders(),
+            elapsedMicros(startNanos), body);
+        return new ConceptMapResponse(response.getStatusCode(), response.getHeaders(),
+            new ByteArrayInputStream(body), null);
+      }
+
+      @Override
+      public int prewarm(String url, int connections, int connectTimeoutMillis)
+          throws IOException {
+        return transport.prewarm(url, connections, connectTimeoutMillis);
+      }
+
+      @Override
+      public void close() throws IOException {
+        transport.close();
+      }
+    };
+  }
+
+  private static long elapsedMicros(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+  }
+
+  private void writeBehind() {
+    List<Record> batch = new ArrayList<>(MAX_BATCH);
+    Deflater deflater = new Deflater();
+    OutputStream out = null;
+    try {
+      out = openForAppend();
+      while (true) {
+        batch.add(queue.take());
+        queue.drainTo(batch, MAX_BATCH - 1);
+        writeBlock(out, batch, deflater);
+        out.flush();
+        records.addAndGet(batch.size());
+        onWritten(batch.size());
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // Closed
+    } catch (IOException e) {
+      synchronized (unwrittenLock) {
+        failed = true;
+        queue.drainTo(batch);
+        dropped.addAndGet(batch.size());
+        onWritten(batch.size());
+      }
+      log.warn("Stopped recording to {}: {}", file, e.toString());
+    } finally {
+      IOUtils.closeQuietly(out);
+      deflater.end();
+    }
+  }
+
+  private OutputStream openForAppend() throws IOException {
+    boolean empty = file.length() == 0;
+    OutputStream out = new FileOutputStream(file, true);
+    if (empty) {
+      DataOutputStream header = new DataOutputStream(out);
+      header.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+      header.writeByte(VERSION);
+      header.flush();
+      bytesWritten.addAndGet(MAGIC.length() + 1);
+    }
+    return out;
+  }
+
+  /**
+   * Write the records as one block: the raw and deflated lengths, then the deflated records
+   */
+  private void writeBlock(OutputStream out, List<Record> batch, Deflater deflater)
+      throws IOException {
+    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(raw);
+    long baseMillis = batch.get(0).timeMillis;
+    data.writeLong(baseMillis);
+    ClaimsCodec.writeVarInt(data, batch.size());
+    for (Record record : batch) {
+      record.writeTo(data, baseMillis);
+    }
+    data.flush();
+    byte[] rawBytes = raw.toByteArray();
+
+    deflater.reset();
+    deflater.setInput(rawBytes);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(rawBytes.length / 4 + 64);
+    byte[] buffer = new byte[8192];
+    while (!deflater.finished()) {
+      compressed.write(buffer, 0, deflater.deflate(buffer));
+    }
+
+    ByteArrayOutputStream block = new ByteArrayOutputStream(compressed.size() + 10);
+    DataOutputStream blockHeader = new DataOutputStream(block);
+    ClaimsCodec.writeVarInt(blockHeader, rawBytes.length);
+    ClaimsCodec.writeVarInt(blockHeader, compressed.size());
+    compressed.writeTo(blockHeader);
+    blockHeader.flush();
+    block.writeTo(out);
+    bytesWritten.addAndGet(block.size());
+  }
+
+  /**
+   * Read every record in a recording, in the order they were written. A block cut short at the
+   * end of the file is ignored.
+   *
+   * @throws IOException if the file isn't a recording, or can't be read
+   */
+  public static List<Record> read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    byte[] magic = new byte[MAGIC.length()];
+    data.readFully(magic);
+    if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+      throw new IOException("Not a ConceptMap traffic recording");
+    }
+    int version = data.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported recording version " + version);
+    }
+
+    List<Record> records = new ArrayList<>();
+    Inflater inflater = new Inflater();
+    try {
+      while (true) {
+        byte[] rawBytes;
+        try {
+          rawBytes = new byte[ClaimsCodec.readVarInt(data)];
+          byte[] compressed = new byte[ClaimsCodec.readVarInt(data)];
+          data.readFully(compressed);
+          inflater.reset();
+          inflater.setInput(compressed);
+          if (inflater.inflate(rawBytes) != rawBytes.length) {
+            throw new IOException("Recording block is shorter than its header says");
+          }
+        } catch (EOFException e) {
+          return records;
+        } catch (DataFormatException e) {
+          throw new IOException("Corrupt recording block", e);
+        }
+
+        DataInputStream block = new DataInputStream(new ByteArrayInputStream(rawBytes));
+        long baseMillis = block.readLong();
+        int count = ClaimsCodec.readVarInt(block);
+        for (int i = 0; i < count; i++) {
+          records.add(Record.readFrom(block, baseMillis));
+        }
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Stop recording, writing whatever is queued first
+   */
+  @Override
+  public void close() {
+    awaitWritten(CLOSE_FLUSH_MILLIS);
+    writer.interrupt();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  public long getRecords() {
+    return records.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * @return how many flushes gave up waiting with records still queued
+   */
+  public long getFlushTimeouts() {
+    return flushTimeouts.get();
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "TrafficRecorder{" +
+        "file=" + file +
+        ", queueSize=" + getQueueSize() +
+        ", records=" + records +
+        ", dropped=" + dropped +
+        ", bytesWritten=" + bytesWritten +
+        ", flushTimeouts=" + flushTimeouts +
+        '}';
+  }
+
+  /**
+   * An envelope, or an upstream response, as recorded
+   */
+  public static class Record {
+    private final byte type;
+    private final long timeMillis;
+    private final String url;
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final long elapsedMicros;
+    private final byte[] body;
+
+    Record(byte type, long timeMillis, String url, int statusCode, Map<String, String> headers,
+           long elapsedMicros, byte[] body) {
+      this.type = type;
+      this.timeMillis = timeMillis;
+      this.url = url;
+      this.statusCode = statusCode;
+      this.headers = headers;
+      this.elapsedMicros = elapsedMicros;
+      this.body = body;
+    }
+
+    void writeTo(DataOutputStream out, long baseMillis) throws IOException {
+      out.writeByte(type);
+      ClaimsCodec.writeVarInt(out, (int) Math.max(0, timeMillis - baseMillis));
+      if (type == UPSTREAM) {
+        out.writeUTF(url);
+        ClaimsCodec.writeVarInt(out, statusCode);
+        ClaimsCodec.writeVarInt(out, (int) Math.min(Integer.MAX_VALUE, elapsedMicros));
+        ClaimsCodec.writeVarInt(out, headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+          out.writeUTF(header.getKey());
+          out.writeUTF(header.getValue());
+        }
+      }
+      ClaimsCodec.writeVarInt(out, body.length);
+      out.write(body);
+    }
+
+    static Record readFrom(DataInputStream in, long baseMillis) throws IOException {
+      byte type = in.readByte();
+      long timeMillis = baseMillis + ClaimsCodec.readVarInt(in);
+      String url = null;
+      int statusCode = 0;
+      Map<String, String> headers = null;
+      long elapsedMicros = 0;
+      if (type == UPSTREAM) {
+        url = in.readUTF();
+        statusCode = ClaimsCodec.readVarInt(in);
+        elapsedMicros = ClaimsCodec.readVarInt(in);
+        int headerCount = ClaimsCodec.readVarInt(in);
+        headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < headerCount; i++) {
+          headers.put(in.readUTF(), in.readUTF());
+        }
+      }
+      else if (type != ENVELOPE) {
+        throw new IOException("Unknown record type " + type);
+      }
+      byte[] body = new byte[ClaimsCodec.readVarInt(in)];
+      in.readFully(body);
+      return new Record(type, timeMillis, url, statusCode, headers, elapsedMicros, body);
+    }
+
+    public boolean isEnvelope() {
+      return type == ENVELOPE;
+    }
+
+    public long getTimeMillis() {
+      return timeMillis;
+    }
+
+    /**
+     * @return the upstream request's URL, or null for an envelope
+     */
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     * @return the upstream response's status, or 0 if the call failed
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public long getElapsedMicros() {
+      return elapsedMicros;
+    }
+
+    /**
+     * @return the envelope, the upstream response's body, or a failed call's error message
+     */
+    public byte[] getBody() {
+      return body;
+    }
+
+    @java.lang.Override
+    public java.lang.String toString() {
+      return "Record{" +
+          "type=" + (char) type +
+          ", timeMillis=" + timeMillis +
+          ", url='" + url + '\'' +
+          ", statusCode=" + statusCode +
+          ", elapsedMicros=" + elapsedMicros +
+          ", bodyLength=" + body.length +
+          '}';
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers relationships that take more than one hop, such as teammates: the teams an item has
+ * been a member of, then the members of those teams. Each hop fetches the claims of every item
+ * the previous hop found, through the client so they're cached and coalesced like any other
+ * traversal, with no more than traversalParallelism of them in flight at once.
+ * <p>
+ * Items are visited once however many paths lead to them, and a traversal fetches no more than
+ * traversalMaxNodes items. It stops as soon as the last hop has found enough labels to speak,
+ * and when the deadline comes it answers with what it has found so far. A complete answer is
+ * kept in the client's claims cache under the whole path, so a repeat question within the
+ * freshness window doesn't fan out again and the answer is there as a last known good one when
+ * the service is down. A relationship of a single hop goes straight to the client.
+ */
+public class TraversalEngine {
+  private static final Logger log = LoggerFactory.getLogger(TraversalEngine.class);
+
+  private final ConceptMapClient conceptMapClient;
+  private final ConceptMapMetrics metrics;
+  private final ThreadPoolExecutor executor;
+  private final int maxDepth;
+  private final int maxNodes;
+  private final int maxLabels;
+  private final int parallelism;
+  private final long freshMillis;
+
+  public TraversalEngine(ConceptMapClient conceptMapClient) {
+    this(conceptMapClient, ConceptMapMetrics.getDefault());
+  }
+
+  public TraversalEngine(ConceptMapClient conceptMapClient, ConceptMapMetrics metrics) {
+    ConceptMapClientConfig config = conceptMapClient.getConfig();
+    this.conceptMapClient = conceptMapClient;
+    this.metrics = metrics;
+    this.maxDepth = config.getTraversalMaxDepth();
+    this.maxNodes = config.getTraversalMaxNodes();
+    this.maxLabels = config.getMaxLabels();
+    this.parallelism = Math.max(1, config.getTraversalParallelism());
+    this.freshMillis = config.getClaimsFreshMillis();
+    this.executor = new ThreadPoolExecutor(config.getTraversalThreads(),
+        config.getTraversalThreads(), 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(config.getTraversalThreads() * 4),
+        new DaemonThreadFactory("conceptmap-traversal"), new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Find the items related to an item, leaving the reserve before the deadline for building the
+   * response
+   *
+   * @return the related items, the picture being the item's own
+   * @throws IOException if a hop couldn't fetch any of its items, or the deadline came before
+   *     any related items were found
+   */
+  public ClaimsInfo traverse(String itemId, Relationship relationship, Deadline deadline,
+                             long reserveMillis) throws IOException {
+    if (relationship.getHops() == 1) {
+      return conceptMapClient.fetchClaims(itemId, relationship.getDirection(),
+          relationship.getPropId(), 1, deadline);
+    }
+    if (relationship.getHops() > maxDepth) {
+      throw new IOException("Relationship " + relationship.getName() + " takes "
+          + relationship.getHops() + " hops, more than traversalMaxDepth " + maxDepth);
+    }
+
+    TraversalKey key = new TraversalKey(itemId, relationship);
+    StaleWhileRevalidateCache<TraversalKey, ClaimsInfo> claimsCache =
+        conceptMapClient.getClaimsCache();
+    ClaimsInfo cached = claimsCache.getIfPresent(key);
+    if (cached != null && claimsCache.getAgeMillis(key) < freshMillis) {
+      metrics.increment("traversal.cached");
+      return cached;
+    }
+
+    metrics.increment("traversal.multiHop");
+    Set<Integer> visited = new HashSet<>();
+    visited.add(ItemInfo.toNumericId(itemId));
+    List<String> frontier = Collections.singletonList(itemId);
+    int hops = relationship.getHops();
+    int fetched = 0;
+    Expansion expansion = null;
+    String pictureUrl = null;
+    for (int hop = 0; hop < hops && !frontier.isEmpty(); hop++) {
+      if (frontier.size() > maxNodes - fetched) {
+        metrics.increment("traversal.nodeCapped");
+        frontier = frontier.subList(0, maxNodes - fetched);
+      }
+      boolean lastHop = hop == hops - 1;
+      // Earlier hops only need as many items as the later ones may fetch
+      expansion = new Expansion(visited, lastHop ? maxLabels : maxNodes - fetched - frontier.size());
+
+      long stageStart = deadline.elapsedNanos();
+      fetched += expand(frontier, relationship.getHopPropId(hop),
+          relationship.getHopDirection(hop), expansion, deadline, reserveMillis);
+      deadline.recordStage("traversal.hop" + (hop + 1), stageStart);
+      if (hop == 0) {
+        pictureUrl = expansion.pictureUrl;
+      }
+      if (RequestLog.isVerbose()) {
+        log.info("traverse hop={}, frontier={}, found={}", hop + 1, frontier.size(),
+            expansion.found.getItemCount());
+      }
+      // Out of time on the last hop, the labels found so far are still an answer
+      if (expansion.outOfTime && (!lastHop || expansion.found.getItemCount() == 0)) {
+        throw new DeadlineExceededException("Request budget of " + deadline.getBudgetMillis()
+            + "ms exhausted on hop " + (hop + 1) + " of " + relationship.getName());
+      }
+      frontier = expansion.found.getItemIds();
+    }
+
+    ClaimsInfo claimsInfo = expansion.found;
+    claimsInfo.setPictureUrl(pictureUrl);
+    // An answer cut short by the deadline isn't kept, so a repeat question gets the whole one
+    if (!expansion.outOfTime) {
+      claimsCache.put(key, claimsInfo);
+    }
+    return claimsInfo;
+  }
+
+  /**
+   * Fetch the claims of each item in the frontier, keeping a window of them in flight, until
+   * they're all fetched or the expansion has found enough
+   *
+   * @return the number of items fetched
+   */
+  private int expand(List<String> frontier, final String propId, final String direction,
+                     Expansion expansion, final Deadline deadline, long reserveMillis)
+      throws IOException {
+    CompletionService<ClaimsInfo> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<ClaimsInfo>> submitted = new ArrayList<>();
+    int next = 0;
+    int inFlight = 0;
+    int succeeded = 0;
+    IOException failure = null;
+    try {
+      while (!expansion.isDone()) {
+        while (inFlight < parallelism && next < frontier.size()) {
+          final String itemId = frontier.get(next);
+          try {
+            submitted.add(completionService.submit(RequestLog.wrap(new Callable<ClaimsInfo>() {
+              @Override
+              public ClaimsInfo call() throws Exception {
+                return conceptMapClient.fetchClaims(itemId, direction, propId, 1, deadline);
+              }
+            })));
+          } catch (RejectedExecutionException e) {
+            // Every traversal thread is busy, so wait for one of ours rather than queue more
+            if (inFlight > 0) {
+              break;
+            }
+            metrics.increment("traversal.saturated");
+            throw new IOException("No capacity to traverse from " + itemId, e);
+          }
+          next++;
+          inFlight++;
+        }
+        if (inFlight == 0) {
+          break;
+        }
+
+        long waitMillis = deadline.remainingMillis() - reserveMillis;
+        Future<ClaimsInfo> done = waitMillis > 0
+            ? completionService.poll(waitMillis, TimeUnit.MILLISECONDS) : null;
+        if (done == null) {
+          metrics.increment("traversal.outOfTime");
+          expansion.outOfTime = true;
+          break;
+        }
+        inFlight--;
+        try {
+          expansion.add(frontier.size() == 1 ? frontier.get(0) : null, done.get());
+          succeeded++;
+        } catch (ExecutionException e) {
+          failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+              : new IOException(e.getCause());
+          log.info("Traversal from an item failed: {}", e.getCause().toString());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted traversing");
+    } finally {
+      // Calls already under way finish and are cached, ones not yet started are dropped
+      for (Future<ClaimsInfo> future : submitted) {
+        future.cancel(false);
+      }
+    }
+
+    if (expansion.isDone() && next < frontier.size()) {
+      metrics.increment("traversal.earlyStop");
+    }
+    if (succeeded == 0 && failure != null) {
+      throw failure;
+    }
+    return next;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * What one hop has found: each item it reached that no earlier hop had
+   */
+  private static class Expansion {
+    private final Set<Integer> visited;
+    private final int wanted;
+    private final ClaimsInfo found = new ClaimsInfo();
+    private String pictureUrl;
+    private boolean outOfTime;
+
+    Expansion(Set<Integer> visited, int wanted) {
+      this.visited = visited;
+      this.wanted = wanted;
+    }
+
+    /**
+     * @param itemId the item the claims are for, if they're the only ones in the hop
+     */
+    void add(String itemId, ClaimsInfo claimsInfo) {
+      if (itemId != null) {
+        pictureUrl = claimsInfo.getPictureUrl();
+      }
+      for (int i = 0; i < claimsInfo.getItemCount() && !isDone(); i++) {
+        int relatedId = claimsInfo.getNumericItemId(i);
+        if (relatedId > 0 && visited.add(relatedId)) {
+          found.addItem(relatedId, claimsInfo.getItemLabel(i));
+        }
+      }
+    }
+
+    boolean isDone() {
+      return found.getItemCount() >= wanted;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+
+/**
+ * Identifies a call to the ConceptMap traversal endpoint
+ */
+public final class TraversalKey {
+  private final String itemId;
+  private final String direction;
+  private final String propId;
+  private final int depth;
+
+  public TraversalKey(String itemId, String direction, String propId, int depth) {
+    this.itemId = itemId;
+    this.direction = direction;
+    this.propId = propId;
+    this.depth = depth;
+  }
+
+  /**
+   * Identify the traversal that answers the relationship, which for a relationship of several
+   * hops is the whole path rather than a single call
+   */
+  public TraversalKey(String itemId, Relationship relationship) {
+    this(itemId, relationship.getDirection(), relationship.getPropId(), relationship.getHops());
+  }
+
+  public String getItemId() {
+    return itemId;
+  }
+
+  public String getDirection() {
+    return direction;
+  }
+
+  public String getPropId() {
+    return propId;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * @return the query string for the traversal endpoint
+   */
+  public String toQueryString() {
+    return String.format("?id=%s&direction=%s&prop=%s&depth=%d", itemId, direction, propId, depth);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TraversalKey)) {
+      return false;
+    }
+    TraversalKey that = (TraversalKey) o;
+    return depth == that.depth
+        && itemId.equals(that.itemId)
+        && direction.equals(that.direction)
+        && propId.equals(that.propId);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = itemId.hashCode();
+    result = 31 * result + direction.hashCode();
+    result = 31 * result + propId.hashCode();
+    result = 31 * result + depth;
+    return result;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return "TraversalKey{" +
+        "itemId='" + itemId + '\'' +
+        ", direction='" + direction + '\'' +
+        ", propId='" + propId + '\'' +
+        ", depth=" + depth +
+        '}';
+  }
+}
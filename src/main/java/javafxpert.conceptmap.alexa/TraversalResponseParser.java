@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a traversal response straight from the response stream into a {@link ClaimsInfo},
+ * keeping only the id, label and picture of each element of the {@code item} array rather than
+ * building the whole JSON tree. The encoding is detected from the bytes, so UTF-8 labels such as
+ * accented club names come through intact.
+ */
+public class TraversalResponseParser {
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private final int maxLabels;
+
+  public TraversalResponseParser(int maxLabels) {
+    this.maxLabels = maxLabels;
+  }
+
+  /**
+   * Parse a traversal response for the given item. Once maxLabels labels have been collected and
+   * the item's own picture has been seen, the rest of the response is not read.
+   *
+   * @throws IOException if the stream couldn't be read or isn't a traversal response
+   */
+  public ClaimsInfo parse(InputStream inputStream, String itemId) throws IOException {
+    ClaimsInfo claimsInfo = new ClaimsInfo();
+    JsonParser parser = jsonFactory.createParser(inputStream);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new JsonParseException("Expected a traversal response object",
+            parser.getCurrentLocation());
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        JsonToken valueToken = parser.nextToken();
+        if ("item".equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+          parseItems(parser, claimsInfo, itemId);
+          claimsInfo.trimToSize();
+          return claimsInfo;
+        }
+        parser.skipChildren();
+      }
+      throw new JsonParseException("Traversal response has no item array",
+          parser.getCurrentLocation());
+    } finally {
+      parser.close();
+    }
+  }
+
+  private void parseItems(JsonParser parser, ClaimsInfo claimsInfo, String itemId)
+      throws IOException {
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      ItemInfo itemInfo = parseItem(parser);
+      if (itemId.equals(itemInfo.getId())) {
+        claimsInfo.setPictureUrl(itemInfo.getPicture());
+      }
+      else if (itemInfo.getLabel() != null && claimsInfo.getItemCount() < maxLabels) {
+        claimsInfo.addItem(itemInfo.getId(), itemInfo.getLabel());
+      }
+
+      if (claimsInfo.getItemCount() >= maxLabels && claimsInfo.getPictureUrl() != null) {
+        return;
+      }
+    }
+  }
+
+  private ItemInfo parseItem(JsonParser parser) throws IOException {
+    ItemInfo itemInfo = new ItemInfo();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      JsonToken valueToken = parser.nextToken();
+      if (valueToken == JsonToken.VALUE_STRING) {
+        if ("id".equals(fieldName)) {
+          itemInfo.setId(parser.getText());
+        }
+        else if ("label".equals(fieldName)) {
+          itemInfo.setLabel(parser.getText());
+        }
+        else if ("picture".equals(fieldName)) {
+          itemInfo.setPicture(parser.getText());
+        }
+      }
+      else {
+        parser.skipChildren();
+      }
+    }
+    return itemInfo;
+  }
+}
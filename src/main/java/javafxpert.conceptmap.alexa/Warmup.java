@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazon.speech.json.SpeechletRequestEnvelope;
+import com.amazon.speech.json.SpeechletResponseEnvelope;
+import com.amazon.speech.slu.Intent;
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.SpeechletResponse;
+import com.amazon.speech.ui.Image;
+import com.amazon.speech.ui.PlainTextOutputSpeech;
+import com.amazon.speech.ui.StandardCard;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.text.WordUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Does the one-off work a container's first request would otherwise pay for, during Lambda's
+ * init phase instead. That's loading and initializing the classes a request touches, resolving
+ * the ConceptMap hosts, initializing TLS, and running bundled sample payloads through the
+ * request parsing, traversal parsing and response building code. Nothing here calls the
+ * ConceptMap service.
+ * <p>
+ * Each step is best effort: a failure is logged and the container starts anyway.
+ */
+public final class Warmup {
+  private static final Logger log = LoggerFactory.getLogger(Warmup.class);
+
+  static final String PRELOAD_CLASSES_RESOURCE = "/warmup/preload-classes.txt";
+  static final String SAMPLE_REQUEST_RESOURCE = "/warmup/intent-request.json";
+  static final String SAMPLE_TRAVERSAL_RESOURCE = "/warmup/traversal.json";
+
+  private Warmup() {
+  }
+
+  /**
+   * Run every warm-up step, recording how long each took as a {@code warmup.*} stage
+   *
+   * @return how long each step took in milliseconds
+   */
+  public static Map<String, Long> run(ConceptMapClient conceptMapClient,
+                                      RelationshipIndex relationshipIndex,
+                                      ConceptMapMetrics metrics) {
+    Map<String, Long> stepMillis = new LinkedHashMap<>();
+    long start = System.nanoTime();
+
+    long stepStart = System.nanoTime();
+    int preloaded = conceptMapClient.getConfig().isWarmupPreloadClasses() ? preloadClasses() : 0;
+    stepMillis.put("preloadClasses", record(metrics, "warmup.preloadClasses", stepStart));
+
+    stepStart = System.nanoTime();
+    resolveHosts(conceptMapClient.getConfig());
+    stepMillis.put("resolveHosts", record(metrics, "warmup.resolveHosts", stepStart));
+
+    stepStart = System.nanoTime();
+    initTls();
+    stepMillis.put("initTls", record(metrics, "warmup.initTls", stepStart));
+
+    stepStart = System.nanoTime();
+    parseSamples(conceptMapClient.getConfig(), relationshipIndex);
+    stepMillis.put("parseSamples", record(metrics, "warmup.parseSamples", stepStart));
+
+    long totalMillis = record(metrics, "warmup", start);
+    log.info("Warm-up took {}ms, preloaded {} classes: {}", totalMillis, preloaded, stepMillis);
+    return stepMillis;
+  }
+
+  private static long record(ConceptMapMetrics metrics, String stage, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    metrics.recordStage(stage, nanos);
+    return nanos / 1000000;
+  }
+
+  /**
+   * Load and initialize the classes listed in the bundled preload list, which are those a
+   * request touches that the sample payloads don't reach, such as the HTTP client's
+   *
+   * @return the number of classes loaded
+   */
+  static int preloadClasses() {
+    InputStream inputStream = Warmup.class.getResourceAsStream(PRELOAD_CLASSES_RESOURCE);
+    if (inputStream == null) {
+      return 0;
+    }
+    int loaded = 0;
+    ClassLoader classLoader = Warmup.class.getClassLoader();
+    try {
+      BufferedReader reader =
+          new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        try {
+          Class.forName(line, true, classLoader);
+          loaded++;
+        } catch (ClassNotFoundException | LinkageError e) {
+          // The list may name classes a different version of a library doesn't have
+          log.debug("Couldn't preload {}: {}", line, e.toString());
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Couldn't read " + PRELOAD_CLASSES_RESOURCE + ": " + e);
+    } finally {
+      IOUtils.closeQuietly(inputStream);
+    }
+    return loaded;
+  }
+
+  /**
+   * Look up the ConceptMap hosts, so the first request finds them in the JVM's DNS cache
+   */
+  static void resolveHosts(ConceptMapClientConfig config) {
+    Set<String> hosts = new LinkedHashSet<>();
+    for (String endpoint : new String[] {config.getTraversalEndpoint(),
+        config.getIdLocatorEndpoint()}) {
+      try {
+        String host = new URI(endpoint).getHost();
+        if (host != null) {
+          hosts.add(host);
+        }
+      } catch (Exception e) {
+        log.warn("Couldn't parse endpoint " + endpoint + ": " + e);
+      }
+    }
+    for (String host : hosts) {
+      try {
+        InetAddress.getAllByName(host);
+      } catch (IOException e) {
+        log.warn("Couldn't resolve " + host + ": " + e);
+      }
+    }
+  }
+
+  /**
+   * Initialize the default SSL context and its cipher suites, which the first HTTPS connection
+   * would otherwise do
+   */
+  static void initTls() {
+    try {
+      SSLContext.getDefault().createSSLEngine().getSupportedCipherSuites();
+    } catch (GeneralSecurityException e) {
+      log.warn("Couldn't initialize TLS: " + e);
+    }
+  }
+
+  /**
+   * Run the bundled sample request and traversal response through the code that parses them
+   * and builds the answer, without calling the speechlet or the ConceptMap service
+   */
+  static void parseSamples(ConceptMapClientConfig config, RelationshipIndex relationshipIndex) {
+    try {
+      SpeechletRequestEnvelope requestEnvelope =
+          SpeechletRequestEnvelope.fromJson(readResource(SAMPLE_REQUEST_RESOURCE));
+      Intent intent = ((IntentRequest) requestEnvelope.getRequest()).getIntent();
+      String itemValue = WordUtils.capitalize(intent.getSlot("Item").getValue());
+      Relationship relationship =
+          relationshipIndex.resolve(intent.getSlot("Relationship").getValue());
+
+      ClaimsInfo claimsInfo = new TraversalResponseParser(config.getMaxLabels())
+          .parse(new ByteArrayInputStream(readResource(SAMPLE_TRAVERSAL_RESOURCE)), "Q615");
+      claimsInfo = ClaimsCodec.decode(ClaimsCodec.encode(claimsInfo));
+      String speech = itemValue + " "
+          + (relationship != null ? relationship.getPhrasing() : "") + " \n"
+          + claimsInfo.toItemLabelsSpeech();
+
+      PlainTextOutputSpeech outputSpeech = new PlainTextOutputSpeech();
+      outputSpeech.setText(speech);
+      StandardCard card = new StandardCard();
+      card.setTitle(itemValue);
+      card.setText(speech);
+      Image image = new Image();
+      image.setSmallImageUrl(claimsInfo.getPictureUrl());
+      card.setImage(image);
+      SpeechletResponseEnvelope responseEnvelope = new SpeechletResponseEnvelope();
+      responseEnvelope.setResponse(SpeechletResponse.newTellResponse(outputSpeech, card));
+      responseEnvelope.setSessionAttributes(requestEnvelope.getSession().getAttributes());
+      responseEnvelope.toJsonBytes();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Couldn't parse the warm-up samples: " + e);
+    }
+  }
+
+  private static byte[] readResource(String resource) throws IOException {
+    InputStream inputStream = Warmup.class.getResourceAsStream(resource);
+    if (inputStream == null) {
+      throw new IOException("Missing resource " + resource);
+    }
+    try {
+      return IOUtils.toByteArray(inputStream);
+    } finally {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-request stages that turn a traversal response into speech
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClaimsBenchmark {
+
+  @Param({"1", "20", "200"})
+  public int itemCount;
+
+  private byte[] traversalBody;
+  private TraversalResponseParser parser;
+  private ClaimsInfo claimsInfo;
+
+  @Setup
+  public void setUp() throws IOException {
+    traversalBody = ConceptMapPayloads.traversal(ConceptMapPayloads.ITEM_ID, itemCount);
+    parser = new TraversalResponseParser(Integer.MAX_VALUE);
+    claimsInfo = parseTraversal();
+  }
+
+  @Benchmark
+  public ClaimsInfo parseTraversal() throws IOException {
+    return parser.parse(new ByteArrayInputStream(traversalBody), ConceptMapPayloads.ITEM_ID);
+  }
+
+  @Benchmark
+  public String toItemLabelsSpeech() {
+    return claimsInfo.toItemLabelsSpeech();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Options given to the perf tools as {@code --name=value}, or {@code --name} for true
+ */
+public class CommandLineOptions {
+  private final Map<String, String> values = new LinkedHashMap<>();
+
+  public CommandLineOptions(String[] args) {
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("Expected --name=value but got " + arg);
+      }
+      int equals = arg.indexOf('=');
+      if (equals < 0) {
+        values.put(arg.substring(2), "true");
+      }
+      else {
+        values.put(arg.substring(2, equals), arg.substring(equals + 1));
+      }
+    }
+  }
+
+  public boolean has(String name) {
+    return values.containsKey(name);
+  }
+
+  public String get(String name, String defaultValue) {
+    String value = values.get(name);
+    return value != null ? value : defaultValue;
+  }
+
+  public int getInt(String name, int defaultValue) {
+    String value = values.get(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  public double getDouble(String name, double defaultValue) {
+    String value = values.get(name);
+    return value != null ? Double.parseDouble(value) : defaultValue;
+  }
+
+  public boolean getBoolean(String name, boolean defaultValue) {
+    String value = values.get(name);
+    return value != null ? Boolean.parseBoolean(value) : defaultValue;
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return values.toString();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds response bodies shaped like those of the ConceptMap service, for benchmarks and stubs
+ */
+public final class ConceptMapPayloads {
+  public static final String ITEM_ID = "Q615";
+  public static final String ITEM_NAME = "Lionel Messi";
+  public static final String PICTURE_BASE_URL =
+      "https://commons.wikimedia.org/wiki/Special:FilePath/";
+  public static final String PICTURE_URL = PICTURE_BASE_URL + "Lionel_Messi_20180626.jpg";
+  public static final String PICTURE_TARGET =
+      "https://upload.wikimedia.org/wikipedia/commons/b/b4/Lionel_Messi_20180626.jpg";
+
+  private static final String[] CLUB_NAMES = {
+      "FC Barcelona", "Argentina national football team", "Paris Saint-Germain F.C.",
+      "Inter Miami CF", "FC Barcelona B", "Newell's Old Boys", "Club Atl\u00e9tico River Plate",
+      "Real Club Deportivo de La Coru\u00f1a", "Sevilla F\u00fatbol Club", "Olympique Lyonnais"
+  };
+
+  private ConceptMapPayloads() {
+  }
+
+  /**
+   * @return a traversal response for the item, with itemCount related items as well as the item
+   */
+  public static byte[] traversal(String itemId, int itemCount) {
+    return traversal(itemId, itemCount, PICTURE_BASE_URL);
+  }
+
+  /**
+   * @return a traversal response for the item, whose picture URLs all start with pictureBaseUrl
+   */
+  public static byte[] traversal(String itemId, int itemCount, String pictureBaseUrl) {
+    StringBuilder json = new StringBuilder("{\"item\":[");
+    appendItem(json, itemId, ITEM_NAME, pictureBaseUrl + "Lionel_Messi_20180626.jpg");
+    for (int i = 0; i < itemCount; i++) {
+      json.append(',');
+      String label = CLUB_NAMES[i % CLUB_NAMES.length]
+          + (i < CLUB_NAMES.length ? "" : " " + (i / CLUB_NAMES.length + 1));
+      appendItem(json, "Q" + (7156 + i), label,
+          pictureBaseUrl + "Club_" + i + ".svg");
+    }
+    json.append("],\"link\":[");
+    for (int i = 0; i < itemCount; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"source\":\"").append(itemId).append("\",\"target\":\"Q").append(7156 + i)
+          .append("\",\"label\":\"member of sports team\",\"propId\":\"P54\"}");
+    }
+    json.append("]}");
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return an idlocator response for the item
+   */
+  public static byte[] idLocator(String itemId) {
+    return ("{\"itemId\":\"" + itemId + "\"}").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void appendItem(StringBuilder json, String id, String label, String picture) {
+    json.append("{\"id\":\"").append(id)
+        .append("\",\"label\":\"").append(label)
+        .append("\",\"description\":\"").append(label).append(" description")
+        .append("\",\"picture\":\"").append(picture)
+        .append("\"}");
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A stand-in for the ConceptMap service, for load testing the skill without touching
+ * conceptmap.cfapps.io. It serves /idlocator and /traversal from {@link StubFixtures}, and
+ * /picture/ URLs that redirect to /image/ like the Wikimedia picture URLs in real responses.
+ * <p>
+ * Faults are injected with these options, which apply to every endpoint unless given for one of
+ * them with a prefix, as in {@code --traversal.latency=lognormal:300:0.8}:
+ * <ul>
+ *   <li>{@code --latency} a {@link LatencyDistribution} added before answering</li>
+ *   <li>{@code --errorRate} the fraction of requests answered with {@code --errorStatus}</li>
+ *   <li>{@code --dripRate} the fraction of bodies written {@code --dripBytes} at a time, every
+ *   {@code --dripIntervalMillis}</li>
+ * </ul>
+ * Other options are {@code --port}, {@code --fixtures} for a fixture directory, {@code
+ * --redirectPictures=false} to serve pictures without a redirect, {@code --syntheticIds=false} to
+ * not find names without a fixture, and {@code --syntheticItems} for the size of made up
+ * traversals. Point the skill at the stub with the {@code traversalEndpoint} and {@code
+ * idLocatorEndpoint} settings.
+ * <p>
+ * Like the real service, JSON bodies are gzip compressed for clients that accept it, and carry
+ * an ETag and Last-Modified date so unchanged ones can be revalidated with a 304. Turn these off
+ * with {@code --gzip=false} and {@code --validators=false} to measure what they save.
+ */
+public class ConceptMapStubServer extends AbstractHandler {
+  private static final Logger log = LoggerFactory.getLogger(ConceptMapStubServer.class);
+
+  private static final String[] ENDPOINTS = {"idlocator", "traversal", "picture", "image"};
+  private static final byte[] IMAGE_BODY = new byte[2048];
+
+  private final StubFixtures fixtures;
+  private final boolean redirectPictures;
+  private final boolean gzip;
+  private final boolean validators;
+  // Fixtures don't change while the stub runs, so they were all last modified when it started
+  private final long lastModifiedMillis = System.currentTimeMillis() / 1000 * 1000;
+  private final Map<String, Faults> faults = new HashMap<>();
+
+  public ConceptMapStubServer(CommandLineOptions options) throws IOException {
+    String fixtureDirectory = options.get("fixtures", null);
+    this.fixtures = new StubFixtures(fixtureDirectory != null ? new File(fixtureDirectory) : null,
+        options.getBoolean("syntheticIds", true), options.getInt("syntheticItems", 20));
+    this.redirectPictures = options.getBoolean("redirectPictures", true);
+    this.gzip = options.getBoolean("gzip", true);
+    this.validators = options.getBoolean("validators", true);
+    for (String endpoint : ENDPOINTS) {
+      faults.put(endpoint, new Faults(options, endpoint));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+    Server server = createServer(options);
+    server.start();
+    String baseUrl = "http://localhost:" + getPort(server);
+    log.info("ConceptMap stub listening, run the skill with"
+        + " -Djavafxpert.conceptmap.traversalEndpoint=" + baseUrl + "/traversal"
+        + " -Djavafxpert.conceptmap.idLocatorEndpoint=" + baseUrl + "/idlocator");
+    server.join();
+  }
+
+  /**
+   * Create a stub server, ready to be started. A port of 0 picks a free port.
+   */
+  public static Server createServer(CommandLineOptions options) throws IOException {
+    Server server = new Server(new QueuedThreadPool(options.getInt("threads", 200)));
+    ServerConnector connector = new ServerConnector(server);
+    connector.setPort(options.getInt("port", 9090));
+    server.addConnector(connector);
+    server.setHandler(new ConceptMapStubServer(options));
+    return server;
+  }
+
+  public static int getPort(Server server) {
+    return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+  }
+
+  public StubFixtures getFixtures() {
+    return fixtures;
+  }
+
+  @Override
+  public void handle(String target, Request baseRequest, HttpServletRequest request,
+                     HttpServletResponse response) throws IOException {
+    baseRequest.setHandled(true);
+    String endpoint = endpointOf(target);
+    if (endpoint == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    Faults endpointFaults = faults.get(endpoint);
+    Random random = ThreadLocalRandom.current();
+    sleep(endpointFaults.latency.sampleMillis(random));
+    if (random.nextDouble() < endpointFaults.errorRate) {
+      response.sendError(endpointFaults.errorStatus);
+      return;
+    }
+
+    String baseUrl = request.getScheme() + "://" + request.getHeader("Host");
+    byte[] body;
+    switch (endpoint) {
+      case "idlocator":
+        body = fixtures.idLocator(request.getParameter("name"));
+        break;
+      case "traversal":
+        String itemId = request.getParameter("id");
+        if (itemId == null) {
+          response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+          return;
+        }
+        body = fixtures.traversal(itemId, baseUrl + "/picture/");
+        break;
+      case "picture":
+        if (redirectPictures) {
+          response.setStatus(HttpServletResponse.SC_FOUND);
+          response.setHeader("Location",
+              baseUrl + "/image/" + target.substring("/picture/".length()));
+          return;
+        }
+        body = IMAGE_BODY;
+        break;
+      default:
+        body = IMAGE_BODY;
+    }
+
+    if (body != IMAGE_BODY) {
+      if (validators && isNotModified(body, request, response)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      String acceptEncoding = request.getHeader("Accept-Encoding");
+      if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+        body = compress(body);
+        response.setHeader("Content-Encoding", "gzip");
+      }
+    }
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(body == IMAGE_BODY ? "image/png" : "application/json;charset=UTF-8");
+    if (random.nextDouble() < endpointFaults.dripRate) {
+      drip(body, response, endpointFaults);
+    }
+    else {
+      response.setContentLength(body.length);
+      response.getOutputStream().write(body);
+    }
+  }
+
+  /**
+   * Set the body's validators, and check them against the request's
+   *
+   * @return whether the request's copy of the body is current
+   */
+  private boolean isNotModified(byte[] body, HttpServletRequest request,
+                                HttpServletResponse response) {
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    String etag = "\"" + Long.toHexString(crc.getValue()) + "\"";
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", lastModifiedMillis);
+
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      return ifNoneMatch.equals(etag);
+    }
+    long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    return ifModifiedSince >= lastModifiedMillis;
+  }
+
+  private static byte[] compress(byte[] body) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+    GZIPOutputStream out = new GZIPOutputStream(compressed);
+    out.write(body);
+    out.close();
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Write the body a few bytes at a time, like a congested or overloaded upstream
+   */
+  private static void drip(byte[] body, HttpServletResponse response, Faults endpointFaults)
+      throws IOException {
+    OutputStream out = response.getOutputStream();
+    for (int offset = 0; offset < body.length; offset += endpointFaults.dripBytes) {
+      out.write(body, offset, Math.min(endpointFaults.dripBytes, body.length - offset));
+      response.flushBuffer();
+      sleep(endpointFaults.dripIntervalMillis);
+    }
+  }
+
+  private static String endpointOf(String target) {
+    if (target.equals("/idlocator")) {
+      return "idlocator";
+    }
+    if (target.equals("/traversal")) {
+      return "traversal";
+    }
+    if (target.startsWith("/picture/")) {
+      return "picture";
+    }
+    if (target.startsWith("/image/")) {
+      return "image";
+    }
+    return null;
+  }
+
+  private static void sleep(long millis) throws IOException {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while injecting latency", e);
+    }
+  }
+
+  /**
+   * The faults injected into one endpoint
+   */
+  private static class Faults {
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final int errorStatus;
+    private final double dripRate;
+    private final int dripBytes;
+    private final long dripIntervalMillis;
+
+    Faults(CommandLineOptions options, String endpoint) {
+      this.latency = LatencyDistribution.parse(get(options, endpoint, "latency", "none"));
+      this.errorRate = Double.parseDouble(get(options, endpoint, "errorRate", "0"));
+      this.errorStatus = Integer.parseInt(get(options, endpoint, "errorStatus", "503"));
+      this.dripRate = Double.parseDouble(get(options, endpoint, "dripRate", "0"));
+      this.dripBytes = Math.max(1, Integer.parseInt(get(options, endpoint, "dripBytes", "64")));
+      this.dripIntervalMillis = Long.parseLong(get(options, endpoint, "dripIntervalMillis", "50"));
+    }
+
+    private static String get(CommandLineOptions options, String endpoint, String name,
+                              String defaultValue) {
+      return options.get(endpoint + "." + name, options.get(name, defaultValue));
+    }
+  }
+}
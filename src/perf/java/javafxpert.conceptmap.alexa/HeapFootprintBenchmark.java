@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the heap held by cached claims in the compact {@link ClaimsInfo} against the list of
+ * label and Q-ID strings it replaced, by building the same claims both ways and measuring the
+ * heap in use after a full collection. As in the caches, every item's labels are fresh strings,
+ * as parsing a response makes them, drawn from a smaller set of distinct labels such as club
+ * names. Options are:
+ * <ul>
+ *   <li>{@code --items}, the number of cached claims, 100000 by default</li>
+ *   <li>{@code --labelsPerItem}, the related items in each</li>
+ *   <li>{@code --distinctLabels}, the size of the set the labels are drawn from</li>
+ * </ul>
+ * Run it with a fixed heap and the serial collector, e.g. {@code -Xms2g -Xmx2g -XX:+UseSerialGC},
+ * for steady numbers.
+ */
+public class HeapFootprintBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+    int items = options.getInt("items", 100000);
+    int labelsPerItem = options.getInt("labelsPerItem", 8);
+    int distinctLabels = options.getInt("distinctLabels", 5000);
+
+    String[] labels = new String[distinctLabels];
+    for (int i = 0; i < distinctLabels; i++) {
+      labels[i] = "Club Deportivo Number " + i;
+    }
+
+    long baseline = usedHeap();
+    List<LegacyClaims> legacy = buildLegacy(items, labelsPerItem, labels);
+    long legacyBytes = usedHeap() - baseline;
+    report("list of strings", legacyBytes, items);
+    legacy.clear();
+    legacy = null;
+
+    baseline = usedHeap();
+    List<ClaimsInfo> compact = buildCompact(items, labelsPerItem, labels);
+    long compactBytes = usedHeap() - baseline;
+    report("compact", compactBytes, items);
+
+    long encodedBytes = 0;
+    for (ClaimsInfo claimsInfo : compact) {
+      encodedBytes += ClaimsCodec.encode(claimsInfo).length;
+    }
+    System.out.printf("%-16s %8.1f bytes per item encoded%n", "codec", (double) encodedBytes / items);
+    System.out.printf("compact holds %.1f%% of the heap, %s%n",
+        100.0 * compactBytes / legacyBytes, LabelInterner.getDefault());
+  }
+
+  private static List<LegacyClaims> buildLegacy(int items, int labelsPerItem, String[] labels) {
+    Random random = new Random(42);
+    List<LegacyClaims> claims = new ArrayList<>(items);
+    for (int i = 0; i < items; i++) {
+      LegacyClaims legacyClaims = new LegacyClaims();
+      legacyClaims.pictureUrl = pictureUrl(i);
+      for (int j = 0; j < labelsPerItem; j++) {
+        int label = random.nextInt(labels.length);
+        legacyClaims.itemIds.add(new String("Q" + (1000 + label)));
+        legacyClaims.itemLabels.add(new String(labels[label].toCharArray()));
+      }
+      claims.add(legacyClaims);
+    }
+    return claims;
+  }
+
+  private static List<ClaimsInfo> buildCompact(int items, int labelsPerItem, String[] labels) {
+    Random random = new Random(42);
+    List<ClaimsInfo> claims = new ArrayList<>(items);
+    for (int i = 0; i < items; i++) {
+      ClaimsInfo claimsInfo = new ClaimsInfo();
+      claimsInfo.setPictureUrl(pictureUrl(i));
+      for (int j = 0; j < labelsPerItem; j++) {
+        int label = random.nextInt(labels.length);
+        claimsInfo.addItem("Q" + (1000 + label), new String(labels[label].toCharArray()));
+      }
+      claimsInfo.trimToSize();
+      claims.add(claimsInfo);
+    }
+    return claims;
+  }
+
+  private static String pictureUrl(int item) {
+    return ConceptMapPayloads.PICTURE_BASE_URL + "Item_" + item + ".jpg";
+  }
+
+  private static void report(String form, long bytes, int items) {
+    System.out.printf("%-16s %8.1f bytes per item, %6.1f MB in all%n", form,
+        (double) bytes / items, bytes / (1024.0 * 1024.0));
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * Claims as they were held before, as lists of strings
+   */
+  private static class LegacyClaims {
+    private String pictureUrl;
+    private final List<String> itemLabels = new ArrayList<>();
+    private final List<String> itemIds = new ArrayList<>();
+  }
+}
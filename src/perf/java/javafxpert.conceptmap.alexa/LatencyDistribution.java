@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.util.Random;
+
+/**
+ * A distribution of injected latencies, parsed from a spec such as:
+ * <ul>
+ *   <li>{@code none}</li>
+ *   <li>{@code fixed:40} for 40ms every time</li>
+ *   <li>{@code uniform:20:120} for between 20ms and 120ms</li>
+ *   <li>{@code exponential:50} for a mean of 50ms</li>
+ *   <li>{@code lognormal:80:0.6} for a median of 80ms with a sigma of 0.6, a long tail like that of
+ *   most real services</li>
+ * </ul>
+ */
+public class LatencyDistribution {
+  private final String spec;
+  private final String type;
+  private final double first;
+  private final double second;
+
+  private LatencyDistribution(String spec, String type, double first, double second) {
+    this.spec = spec;
+    this.type = type;
+    this.first = first;
+    this.second = second;
+  }
+
+  public static LatencyDistribution parse(String spec) {
+    String[] parts = spec.trim().split(":");
+    String type = parts[0].toLowerCase();
+    double first = parts.length > 1 ? Double.parseDouble(parts[1]) : 0;
+    double second = parts.length > 2 ? Double.parseDouble(parts[2]) : 0;
+    if (!type.equals("none") && !type.equals("fixed") && !type.equals("uniform")
+        && !type.equals("exponential") && !type.equals("lognormal")) {
+      throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+    }
+    return new LatencyDistribution(spec, type, first, second);
+  }
+
+  /**
+   * @return a latency drawn from the distribution, in milliseconds
+   */
+  public long sampleMillis(Random random) {
+    double millis;
+    switch (type) {
+      case "fixed":
+        millis = first;
+        break;
+      case "uniform":
+        millis = first + random.nextDouble() * (second - first);
+        break;
+      case "exponential":
+        millis = -first * Math.log(1 - random.nextDouble());
+        break;
+      case "lognormal":
+        millis = first * Math.exp(second * random.nextGaussian());
+        break;
+      default:
+        millis = 0;
+    }
+    return Math.max(0, Math.round(millis));
+  }
+
+  @java.lang.Override
+  public java.lang.String toString() {
+    return spec;
+  }
+}
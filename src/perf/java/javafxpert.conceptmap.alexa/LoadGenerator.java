@@ -0,0 +1,414 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazon.speech.Sdk;
+import com.amazonaws.util.json.JSONException;
+import com.amazonaws.util.json.JSONObject;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.server.Server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fires OneshotClaimsIntent requests at the skill at a steady rate and reports the latency
+ * distribution and a breakdown of the outcomes. Requests go to a
+ * {@link ConceptMapSpeechletRequestStreamHandler} in this JVM by default, as Lambda would invoke
+ * it, or to the {@link Launcher} endpoint with {@code --target=http://localhost:8888/conceptmap}.
+ * <p>
+ * The load is open: requests are sent on schedule whether or not earlier ones have finished, and
+ * latency is measured from when a request was due, so a stall shows up in the histogram rather
+ * than slowing the load down. Options are:
+ * <ul>
+ *   <li>{@code --rps}, {@code --seconds} and {@code --warmupSeconds}, whose requests aren't
+ *   reported</li>
+ *   <li>{@code --concurrency}, the most requests in flight before new ones are counted as
+ *   dropped</li>
+ *   <li>{@code --names} a file of item names, one per line, otherwise those with stub
+ *   fixtures</li>
+ *   <li>{@code --relationships} a comma separated list of relationship phrases</li>
+ *   <li>{@code --signed} to sign HTTP requests as Alexa does, with a throwaway key and the
+ *   {@code --certUrl} header. Only Amazon's certificate passes the SDK's check, so against a
+ *   server that checks signatures this measures the cost of rejecting requests; load test with
+ *   the check disabled.</li>
+ *   <li>{@code --stub} to also start a {@link ConceptMapStubServer} with the same options and
+ *   point the in-process skill at it</li>
+ * </ul>
+ */
+public class LoadGenerator {
+  static final String APPLICATION_ID =
+      "amzn1.echo-sdk-ams.app.24713bc9-5eab-4604-bb8a-5f182f70ddb0";
+  private static final String DEFAULT_CERT_URL =
+      "https://s3.amazonaws.com/echo.api/echo-api-cert-4.pem";
+  private static final String DROPPED = "dropped, client saturated";
+
+  private final CommandLineOptions options;
+  private final List<String> names;
+  private final List<String> relationships;
+  private final String target;
+  private final LatencyHistogram histogram = new LatencyHistogram();
+  private final ConcurrentMap<String, AtomicLong> outcomes = new ConcurrentHashMap<>();
+  private final ConceptMapSpeechletRequestStreamHandler handler;
+  private final CloseableHttpClient httpClient;
+  private final PrivateKey signingKey;
+
+  public LoadGenerator(CommandLineOptions options, List<String> names)
+      throws GeneralSecurityException {
+    this.options = options;
+    this.names = names;
+    this.relationships = Arrays.asList(options.get("relationships", "teams").split(","));
+    this.target = options.get("target", "inprocess");
+    boolean inProcess = "inprocess".equals(target);
+    this.handler = inProcess ? new ConceptMapSpeechletRequestStreamHandler() : null;
+    int concurrency = options.getInt("concurrency", 200);
+    this.httpClient = inProcess ? null
+        : HttpClients.custom().setMaxConnTotal(concurrency).setMaxConnPerRoute(concurrency).build();
+    if (!inProcess && options.getBoolean("signed", false)) {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance(Sdk.SIGNATURE_KEY_TYPE);
+      generator.initialize(2048);
+      this.signingKey = generator.generateKeyPair().getPrivate();
+    }
+    else {
+      this.signingKey = null;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+
+    Server stub = null;
+    if (options.getBoolean("stub", false)) {
+      stub = ConceptMapStubServer.createServer(options);
+      stub.start();
+      String baseUrl = "http://localhost:" + ConceptMapStubServer.getPort(stub);
+      System.setProperty(ConceptMapClientConfig.PROPERTY_PREFIX + "traversalEndpoint",
+          baseUrl + "/traversal");
+      System.setProperty(ConceptMapClientConfig.PROPERTY_PREFIX + "idLocatorEndpoint",
+          baseUrl + "/idlocator");
+    }
+
+    List<String> names;
+    if (options.has("names")) {
+      names = FileUtils.readLines(new File(options.get("names", null)), StandardCharsets.UTF_8);
+    }
+    else {
+      names = new StubFixtures(null, true, 0).getNames();
+    }
+
+    LoadGenerator generator = new LoadGenerator(options, names);
+    try {
+      generator.run();
+    } finally {
+      generator.close();
+      if (stub != null) {
+        stub.stop();
+      }
+    }
+  }
+
+  /**
+   * Send requests at the configured rate, then print the report
+   */
+  public void run() throws InterruptedException {
+    double rps = options.getDouble("rps", 20);
+    int seconds = options.getInt("seconds", 30);
+    int warmupSeconds = options.getInt("warmupSeconds", 5);
+    int concurrency = options.getInt("concurrency", 200);
+
+    ThreadPoolExecutor workers = new ThreadPoolExecutor(concurrency, concurrency, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new DaemonThreadFactory("load"));
+    workers.prestartAllCoreThreads();
+
+    long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rps);
+    long startNanos = System.nanoTime();
+    final long measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    long endNanos = measureFromNanos + TimeUnit.SECONDS.toNanos(seconds);
+    System.out.println("Sending " + rps + " requests/second to " + target + " for "
+        + warmupSeconds + "s warm-up and " + seconds + "s measured");
+
+    for (long sent = 0; ; sent++) {
+      final long dueNanos = startNanos + sent * periodNanos;
+      if (dueNanos >= endNanos) {
+        break;
+      }
+      long waitNanos;
+      while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(waitNanos);
+      }
+
+      final byte[] envelope = newEnvelope(sent);
+      try {
+        workers.execute(new Runnable() {
+          @Override
+          public void run() {
+            String outcome = send(envelope);
+            if (dueNanos >= measureFromNanos) {
+              histogram.recordNanos(System.nanoTime() - dueNanos);
+              count(outcome);
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        if (dueNanos >= measureFromNanos) {
+          count(DROPPED);
+        }
+      }
+    }
+
+    workers.shutdown();
+    workers.awaitTermination(1, TimeUnit.MINUTES);
+    report(seconds);
+  }
+
+  private String send(byte[] envelope) {
+    try {
+      String responseBody;
+      if (handler != null) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(envelope), out, null);
+        responseBody = new String(out.toByteArray(), StandardCharsets.UTF_8);
+      }
+      else {
+        HttpPost post = new HttpPost(target);
+        post.setEntity(new ByteArrayEntity(envelope, ContentType.APPLICATION_JSON));
+        if (signingKey != null) {
+          post.setHeader(Sdk.SIGNATURE_REQUEST_HEADER, sign(envelope));
+          post.setHeader(Sdk.SIGNATURE_CERTIFICATE_CHAIN_URL_REQUEST_HEADER,
+              options.get("certUrl", DEFAULT_CERT_URL));
+        }
+        CloseableHttpResponse response = httpClient.execute(post);
+        try {
+          responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+          int statusCode = response.getStatusLine().getStatusCode();
+          if (statusCode != 200) {
+            return "HTTP " + statusCode;
+          }
+        } finally {
+          response.close();
+        }
+      }
+      return classify(responseBody);
+    } catch (Exception e) {
+      return e.getClass().getSimpleName();
+    }
+  }
+
+  /**
+   * Name the outcome of a request from the speech in the skill's response
+   */
+  private static String classify(String responseBody) throws JSONException {
+    JSONObject outputSpeech = new JSONObject(responseBody).getJSONObject("response")
+        .getJSONObject("outputSpeech");
+    String speech = outputSpeech.has("text") ? outputSpeech.getString("text")
+        : outputSpeech.optString("ssml");
+    if (speech.contains("experiencing a problem")) {
+      return "upstream problem";
+    }
+    if (speech.startsWith("Couldn't locate an Item ID")) {
+      return "item not located";
+    }
+    if (speech.endsWith(" not found")) {
+      return "item not found";
+    }
+    if (speech.startsWith("Sorry, I don't know the relationship")) {
+      return "relationship unknown";
+    }
+    return "ok";
+  }
+
+  private String sign(byte[] envelope) throws GeneralSecurityException {
+    Signature signature = Signature.getInstance(Sdk.SIGNATURE_ALGORITHM);
+    signature.initSign(signingKey);
+    signature.update(envelope);
+    return Base64.encodeBase64String(signature.sign());
+  }
+
+  /**
+   * Build the JSON request Alexa would send for the nth OneshotClaimsIntent
+   */
+  private byte[] newEnvelope(long n) {
+    return newEnvelope(options.get("applicationId", APPLICATION_ID),
+        "amzn1.echo-api.session.load-" + n, names.get((int) (n % names.size())),
+        relationships.get((int) (n % relationships.size())));
+  }
+
+  /**
+   * Build the JSON request Alexa would send for a OneshotClaimsIntent
+   */
+  static byte[] newEnvelope(String applicationId, String sessionId, String itemName,
+                            String relationship) {
+    try {
+      String requestId = "amzn1.echo-api.request." + UUID.randomUUID();
+      SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+      timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+      JSONObject slots = new JSONObject()
+          .put("Item", new JSONObject()
+              .put("name", "Item")
+              .put("value", itemName))
+          .put("Relationship", new JSONObject()
+              .put("name", "Relationship")
+              .put("value", relationship));
+      JSONObject envelope = new JSONObject()
+          .put("version", Sdk.VERSION)
+          .put("session", new JSONObject()
+              .put("new", true)
+              .put("sessionId", sessionId)
+              .put("application", new JSONObject()
+                  .put("applicationId", applicationId))
+              .put("attributes", new JSONObject())
+              .put("user", new JSONObject().put("userId", "amzn1.ask.account.load")))
+          .put("request", new JSONObject()
+              .put("type", "IntentRequest")
+              .put("requestId", requestId)
+              .put("timestamp", timestampFormat.format(new Date()))
+              .put("intent", new JSONObject()
+                  .put("name", "OneshotClaimsIntent")
+                  .put("slots", slots)));
+      return envelope.toString().getBytes(StandardCharsets.UTF_8);
+    } catch (JSONException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void count(String outcome) {
+    AtomicLong counter = outcomes.get(outcome);
+    if (counter == null) {
+      outcomes.putIfAbsent(outcome, new AtomicLong());
+      counter = outcomes.get(outcome);
+    }
+    counter.incrementAndGet();
+  }
+
+  private void report(int seconds) {
+    System.out.println();
+    System.out.printf("Completed:  %d requests, %.1f/second%n", histogram.getCount(),
+        (double) histogram.getCount() / seconds);
+    System.out.println("Latency:    " + histogram);
+    System.out.println();
+    System.out.println("Latency histogram:");
+    long completed = Math.max(1, histogram.getCount());
+    long low = 0;
+    for (long high = 1000; low <= histogram.getMaxMicros(); high *= 2) {
+      long between = histogram.getCountBetween(low, high);
+      if (between > 0) {
+        char[] bar = new char[(int) (between * 50 / completed)];
+        Arrays.fill(bar, '#');
+        System.out.printf("  %6d - %6d ms %8d  %s%n", low / 1000, high / 1000, between,
+            new String(bar));
+      }
+      low = high;
+    }
+    System.out.println();
+    System.out.println("Outcomes:");
+    long total = 0;
+    for (AtomicLong counter : outcomes.values()) {
+      total += counter.get();
+    }
+    for (Map.Entry<String, AtomicLong> outcome : new TreeMap<>(outcomes).entrySet()) {
+      System.out.printf("  %-28s %8d  %5.1f%%%n", outcome.getKey(), outcome.getValue().get(),
+          outcome.getValue().get() * 100.0 / total);
+    }
+    if (handler != null) {
+      System.out.println();
+      System.out.println("Stages in this JVM, including warm-up:");
+      for (Map.Entry<String, String> stage
+          : ConceptMapMetrics.getDefault().getStageSummaries().entrySet()) {
+        System.out.printf("  %-16s %s%n", stage.getKey(), stage.getValue());
+      }
+      reportHedging(ConceptMapMetrics.getDefault().getCounters());
+      reportSnapshot(ConceptMapMetrics.getDefault());
+    }
+  }
+
+  /**
+   * Print how many calls to each endpoint were hedged and how many backups won, if hedging is
+   * enabled
+   */
+  private static void reportHedging(Map<String, Long> counters) {
+    boolean first = true;
+    for (String endpoint : ConceptMapClient.ENDPOINTS) {
+      Long calls = counters.get("hedge." + endpoint + ".calls");
+      if (calls == null || calls == 0) {
+        continue;
+      }
+      if (first) {
+        System.out.println();
+        System.out.println("Hedging in this JVM, including warm-up:");
+        first = false;
+      }
+      long hedged = counters.get("hedge." + endpoint + ".hedged");
+      long won = counters.get("hedge." + endpoint + ".won");
+      System.out.printf("  %-16s %8d calls, %5.1f%% hedged, %5.1f%% of hedges won,"
+              + " %d over budget, hedging after %d ms%n", endpoint, calls,
+          hedged * 100.0 / calls, hedged > 0 ? won * 100.0 / hedged : 0,
+          counters.get("hedge." + endpoint + ".budgetExhausted"),
+          counters.get("hedge." + endpoint + ".delayMillis"));
+    }
+  }
+
+  /**
+   * Print how many questions were answered from the answer snapshot, if there is one
+   */
+  private static void reportSnapshot(ConceptMapMetrics metrics) {
+    Map<String, Long> counters = metrics.getCounters();
+    if (!counters.containsKey("snapshot.entries")) {
+      return;
+    }
+    System.out.println();
+    System.out.printf("Answer snapshot of %d entries, in this JVM including warm-up:"
+            + " %d served, %d stale, %d missed, %d%% served%n", counters.get("snapshot.entries"),
+        metrics.getCount("snapshot.served"), metrics.getCount("snapshot.stale"),
+        metrics.getCount("snapshot.missed"), counters.get("snapshot.servedPercent"));
+  }
+
+  private void close() throws Exception {
+    if (httpClient != null) {
+      httpClient.close();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ConceptMapTransport} that answers from the upstream responses in a
+ * {@link TrafficRecorder} recording. Responses for a URL are handed out in the order they were
+ * recorded, starting over once they run out, except that an unconditional request is never
+ * answered with a 304. A call that failed when recorded fails again, and one that was never
+ * recorded fails and is counted as a miss, as the replay has strayed from the recording. URLs
+ * are matched on their path and query, so the recording is replayed whichever ConceptMap
+ * endpoints are configured.
+ */
+public class ReplayConceptMapTransport implements ConceptMapTransport {
+  private final Map<String, List<TrafficRecorder.Record>> responses = new HashMap<>();
+  private final Map<String, AtomicInteger> positions = new HashMap<>();
+  private final boolean upstreamDelays;
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param upstreamDelays whether to take as long to answer as the recorded call took
+   */
+  public ReplayConceptMapTransport(List<TrafficRecorder.Record> records, boolean upstreamDelays) {
+    for (TrafficRecorder.Record record : records) {
+      if (!record.isEnvelope()) {
+        String key = toKey(record.getUrl());
+        List<TrafficRecorder.Record> forUrl = responses.get(key);
+        if (forUrl == null) {
+          forUrl = new ArrayList<>();
+          responses.put(key, forUrl);
+          positions.put(key, new AtomicInteger());
+        }
+        forUrl.add(record);
+      }
+    }
+    this.upstreamDelays = upstreamDelays;
+  }
+
+  @Override
+  public ConceptMapResponse execute(ConceptMapRequest request) throws IOException {
+    calls.incrementAndGet();
+    TrafficRecorder.Record record = next(request);
+    if (record == null) {
+      misses.incrementAndGet();
+      throw new IOException("Not in the recording: " + request.getUrl());
+    }
+    if (upstreamDelays) {
+      try {
+        TimeUnit.MICROSECONDS.sleep(record.getElapsedMicros());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted replaying " + request.getUrl());
+      }
+    }
+    if (record.getStatusCode() == 0) {
+      throw new IOException(new String(record.getBody(), StandardCharsets.UTF_8));
+    }
+    return new ConceptMapResponse(record.getStatusCode(), record.getHeaders(),
+        new ByteArrayInputStream(record.getBody()), null);
+  }
+
+  private TrafficRecorder.Record next(ConceptMapRequest request) {
+    String key = toKey(request.getUrl());
+    List<TrafficRecorder.Record> forUrl = responses.get(key);
+    if (forUrl == null) {
+      return null;
+    }
+    boolean conditional = request.getHeaders().containsKey("If-None-Match")
+        || request.getHeaders().containsKey("If-Modified-Since");
+    AtomicInteger position = positions.get(key);
+    for (int i = 0; i < forUrl.size(); i++) {
+      TrafficRecorder.Record record =
+          forUrl.get((position.getAndIncrement() & Integer.MAX_VALUE) % forUrl.size());
+      if (conditional || record.getStatusCode() != 304) {
+        return record;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the URL without its scheme and host
+   */
+  private static String toKey(String url) {
+    int scheme = url.indexOf("://");
+    int path = scheme >= 0 ? url.indexOf('/', scheme + 3) : 0;
+    return path >= 0 ? url.substring(path) : "/";
+  }
+
+  @Override
+  public int prewarm(String url, int connections, int connectTimeoutMillis) {
+    return 0;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  public long getCalls() {
+    return calls.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazon.speech.slu.Intent;
+import com.amazon.speech.slu.Slot;
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.LaunchRequest;
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.SpeechletException;
+import com.amazon.speech.speechlet.SpeechletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole speechlet requests against an in-process stub of the ConceptMap endpoints.
+ * With cache set to "cold" every request goes through the id lookup, traversal, parse and
+ * picture redirect; with "warm" they are answered from the client's caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpeechletBenchmark {
+
+  @Param({"1", "20", "200"})
+  public int itemCount;
+
+  @Param({"cold", "warm"})
+  public String cache;
+
+  private ConceptMapClient conceptMapClient;
+  private ConceptMapSpeechlet speechlet;
+  private IntentRequest intentRequest;
+  private LaunchRequest launchRequest;
+  private Session session;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    if ("cold".equals(cache)) {
+      config.setItemIdCacheSize(0);
+      config.setClaimsCacheMaxBytes(0);
+      config.setPictureCacheSize(0);
+    }
+    conceptMapClient = new ConceptMapClient(config, new StubConceptMapTransport(itemCount));
+    speechlet = new ConceptMapSpeechlet(conceptMapClient);
+
+    Map<String, Slot> slots = new HashMap<>();
+    slots.put("Item", Slot.builder().withName("Item").withValue("lionel messi").build());
+    slots.put("Relationship", Slot.builder().withName("Relationship").withValue("teams").build());
+    intentRequest = IntentRequest.builder()
+        .withRequestId("benchmark-request")
+        .withIntent(Intent.builder().withName("OneshotClaimsIntent").withSlots(slots).build())
+        .build();
+    launchRequest = LaunchRequest.builder().withRequestId("benchmark-launch").build();
+    session = Session.builder().withSessionId("benchmark-session").withIsNew(true).build();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    conceptMapClient.close();
+  }
+
+  @Benchmark
+  public String locateItemId() throws IOException {
+    return conceptMapClient.locateItemId(ConceptMapPayloads.ITEM_NAME, new Deadline(5000));
+  }
+
+  @Benchmark
+  public ClaimsInfo fetchClaims() throws IOException {
+    return conceptMapClient.fetchClaims(ConceptMapPayloads.ITEM_ID, "f", "P54", 1,
+        new Deadline(5000));
+  }
+
+  @Benchmark
+  public SpeechletResponse onIntent() throws SpeechletException {
+    return speechlet.onIntent(intentRequest, session);
+  }
+
+  @Benchmark
+  public SpeechletResponse onLaunch() throws SpeechletException {
+    return speechlet.onLaunch(launchRequest, session);
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.eclipse.jetty.server.Server;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Measures how long a fresh container takes to answer its first request, by starting a new JVM
+ * for each run as Lambda would, constructing the handler and sending it a OneshotClaimsIntent.
+ * Each run reports the time from JVM start to the handler being constructed, which is Lambda's
+ * init phase, and to the first response, with warm-up on and off. The ConceptMap service is
+ * played by a {@link ConceptMapStubServer} in this JVM, so only the skill's own start-up is
+ * measured. Options are:
+ * <ul>
+ *   <li>{@code --runs}, the number of JVMs to start for each mode</li>
+ *   <li>{@code --modes}, a comma separated list of {@code warm} and {@code cold}</li>
+ *   <li>{@code --jvmArgs}, space separated options for the started JVMs, such as
+ *   {@code -XX:TieredStopAtLevel=1}</li>
+ *   <li>{@code --preloadList} to instead list the library classes the first request loads that
+ *   warm-up didn't, the source of {@code warmup/preload-classes.txt}</li>
+ * </ul>
+ */
+public class StartupBenchmark {
+  private static final String CHILD = "--child";
+  private static final String RESULT_PREFIX = "STARTUP ";
+  private static final String WARMED_MARKER = "STARTUP-WARMED";
+  private static final String ANSWERED_MARKER = "STARTUP-ANSWERED";
+  private static final List<String> METRICS =
+      Arrays.asList("jvmToMain", "init", "firstResponse", "timeToFirstResponse", "secondResponse");
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && CHILD.equals(args[0])) {
+      runChild();
+      return;
+    }
+
+    CommandLineOptions options = new CommandLineOptions(args);
+    Server stub = ConceptMapStubServer.createServer(options);
+    stub.start();
+    try {
+      String baseUrl = "http://localhost:" + ConceptMapStubServer.getPort(stub);
+      if (options.getBoolean("preloadList", false)) {
+        for (String className : listPreloadClasses(options, baseUrl)) {
+          System.out.println(className);
+        }
+        return;
+      }
+
+      int runs = options.getInt("runs", 5);
+      for (String mode : options.get("modes", "warm,cold").split(",")) {
+        Map<String, List<Long>> results = new LinkedHashMap<>();
+        for (int run = 0; run < runs; run++) {
+          Map<String, Long> result = parseResult(runJvm(options, baseUrl, mode, false));
+          for (Map.Entry<String, Long> metric : result.entrySet()) {
+            if (!results.containsKey(metric.getKey())) {
+              results.put(metric.getKey(), new ArrayList<Long>());
+            }
+            results.get(metric.getKey()).add(metric.getValue());
+          }
+        }
+        report(mode, runs, results);
+      }
+    } finally {
+      stub.stop();
+    }
+  }
+
+  /**
+   * Start a JVM running {@link #runChild()} and wait for its output
+   */
+  private static List<String> runJvm(CommandLineOptions options, String baseUrl, String mode,
+                                     boolean verboseClass) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+    String jvmArgs = options.get("jvmArgs", "").trim();
+    if (jvmArgs.length() > 0) {
+      command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+    }
+    if (verboseClass) {
+      command.add("-verbose:class");
+      command.add("-D" + ConceptMapClientConfig.PROPERTY_PREFIX + "warmupPreloadClasses=false");
+    }
+    command.add("-cp");
+    command.add(getClassPath());
+    command.add("-D" + ConceptMapClientConfig.PROPERTY_PREFIX + "traversalEndpoint="
+        + baseUrl + "/traversal");
+    command.add("-D" + ConceptMapClientConfig.PROPERTY_PREFIX + "idLocatorEndpoint="
+        + baseUrl + "/idlocator");
+    command.add("-D" + ConceptMapClientConfig.PROPERTY_PREFIX + "warmupEnabled="
+        + "warm".equals(mode));
+    command.add(StartupBenchmark.class.getName());
+    command.add(CHILD);
+
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    List<String> lines = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    if (process.waitFor() != 0) {
+      throw new IllegalStateException("Startup run failed: " + lines);
+    }
+    return lines;
+  }
+
+  /**
+   * The class path this class was loaded from, which under exec:java isn't java.class.path
+   */
+  private static String getClassPath() {
+    ClassLoader classLoader = StartupBenchmark.class.getClassLoader();
+    if (!(classLoader instanceof URLClassLoader)) {
+      return System.getProperty("java.class.path");
+    }
+    StringBuilder classPath = new StringBuilder();
+    for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+      if (classPath.length() > 0) {
+        classPath.append(File.pathSeparatorChar);
+      }
+      try {
+        classPath.append(new File(url.toURI()).getPath());
+      } catch (URISyntaxException e) {
+        classPath.append(url.getPath());
+      }
+    }
+    return classPath.toString();
+  }
+
+  /**
+   * Construct the handler and send it two requests, as a fresh Lambda container would, and
+   * print how long each took
+   */
+  private static void runChild() throws IOException {
+    long jvmToMain = ManagementFactory.getRuntimeMXBean().getUptime();
+    byte[] firstEnvelope = newEnvelope("Lionel Messi");
+    byte[] secondEnvelope = newEnvelope("Cristiano Ronaldo");
+
+    long start = System.nanoTime();
+    ConceptMapSpeechletRequestStreamHandler handler = new ConceptMapSpeechletRequestStreamHandler();
+    long init = (System.nanoTime() - start) / 1000000;
+    System.out.println(WARMED_MARKER);
+
+    start = System.nanoTime();
+    String firstAnswer = invoke(handler, firstEnvelope);
+    long firstResponse = (System.nanoTime() - start) / 1000000;
+    long timeToFirstResponse = ManagementFactory.getRuntimeMXBean().getUptime();
+    System.out.println(ANSWERED_MARKER);
+
+    start = System.nanoTime();
+    invoke(handler, secondEnvelope);
+    long secondResponse = (System.nanoTime() - start) / 1000000;
+
+    if (!firstAnswer.contains("outputSpeech")) {
+      throw new IllegalStateException("Unexpected first response " + firstAnswer);
+    }
+    System.out.println(RESULT_PREFIX + "jvmToMain=" + jvmToMain + " init=" + init
+        + " firstResponse=" + firstResponse + " timeToFirstResponse=" + timeToFirstResponse
+        + " secondResponse=" + secondResponse);
+    System.exit(0);
+  }
+
+  private static byte[] newEnvelope(String itemName) {
+    return LoadGenerator.newEnvelope(LoadGenerator.APPLICATION_ID,
+        "amzn1.echo-api.session.startup", itemName, "teams");
+  }
+
+  private static String invoke(ConceptMapSpeechletRequestStreamHandler handler, byte[] envelope)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    handler.handleRequest(new ByteArrayInputStream(envelope), out, null);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static Map<String, Long> parseResult(List<String> lines) {
+    for (String line : lines) {
+      if (line.startsWith(RESULT_PREFIX)) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (String pair : line.substring(RESULT_PREFIX.length()).split(" ")) {
+          int equals = pair.indexOf('=');
+          result.put(pair.substring(0, equals), Long.parseLong(pair.substring(equals + 1)));
+        }
+        return result;
+      }
+    }
+    throw new IllegalStateException("No result from startup run: " + lines);
+  }
+
+  /**
+   * Run a cold JVM with class loading logged, and collect the library and skill classes loaded
+   * while answering the first request
+   */
+  private static TreeSet<String> listPreloadClasses(CommandLineOptions options, String baseUrl)
+      throws IOException, InterruptedException {
+    TreeSet<String> classNames = new TreeSet<>();
+    boolean answering = false;
+    for (String line : runJvm(options, baseUrl, "warm", true)) {
+      if (line.equals(WARMED_MARKER)) {
+        answering = true;
+      }
+      else if (line.equals(ANSWERED_MARKER)) {
+        break;
+      }
+      else if (answering && line.contains("[class,load]") && line.contains("source: file:")) {
+        String className = line.substring(line.indexOf("[class,load]") + 12).trim();
+        className = className.substring(0, className.indexOf(' '));
+        // Anonymous classes are numbered by the compiler, so their names don't last
+        if (!className.matches(".*\\$[0-9].*")) {
+          classNames.add(className);
+        }
+      }
+    }
+    return classNames;
+  }
+
+  private static void report(String mode, int runs, Map<String, List<Long>> results) {
+    System.out.println();
+    System.out.println("Warm-up " + ("warm".equals(mode) ? "on" : "off") + ", " + runs
+        + " JVMs, milliseconds:");
+    System.out.printf("  %-20s %8s %8s %8s%n", "", "min", "median", "max");
+    for (String metric : METRICS) {
+      List<Long> values = results.get(metric);
+      Collections.sort(values);
+      System.out.printf("  %-20s %8d %8d %8d%n", metric, values.get(0),
+          values.get(values.size() / 2), values.get(values.size() - 1));
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An in-process {@link ConceptMapTransport} that answers the idlocator, traversal and picture
+ * redirect calls from prebuilt payloads, without touching the network
+ */
+public class StubConceptMapTransport implements ConceptMapTransport {
+  private static final Map<String, String> JSON_HEADERS =
+      Collections.singletonMap("Content-Type", "application/json;charset=UTF-8");
+
+  private final byte[] idLocatorBody;
+  private final byte[] traversalBody;
+
+  public StubConceptMapTransport(int itemCount) {
+    this.idLocatorBody = ConceptMapPayloads.idLocator(ConceptMapPayloads.ITEM_ID);
+    this.traversalBody = ConceptMapPayloads.traversal(ConceptMapPayloads.ITEM_ID, itemCount);
+  }
+
+  @Override
+  public ConceptMapResponse execute(ConceptMapRequest request) {
+    String url = request.getUrl();
+    if (url.contains("/idlocator")) {
+      return new ConceptMapResponse(200, JSON_HEADERS, new ByteArrayInputStream(idLocatorBody),
+          null);
+    }
+    if (url.contains("/traversal")) {
+      return new ConceptMapResponse(200, JSON_HEADERS, new ByteArrayInputStream(traversalBody),
+          null);
+    }
+    return new ConceptMapResponse(302,
+        Collections.singletonMap("Location", ConceptMapPayloads.PICTURE_TARGET), null, null);
+  }
+
+  @Override
+  public int prewarm(String url, int connections, int connectTimeoutMillis) {
+    return 0;
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Response bodies for the stub ConceptMap server. They are read from a fixture directory laid
+ * out as {@code idlocator.tsv} (name, tab, Item ID per line) and {@code traversal/<itemId>.json},
+ * or from the bundled {@code /stub} fixtures when no directory is given. Picture URLs in a
+ * traversal fixture are written as {@code {{pictureBaseUrl}}name}, so they can point back at the
+ * stub.
+ * <p>
+ * Names and items without a fixture are answered with synthetic data, so a load test isn't
+ * limited to the handful of items that have fixtures.
+ */
+public class StubFixtures {
+  private static final String PICTURE_BASE_URL_TOKEN = "{{pictureBaseUrl}}";
+
+  private final File directory;
+  private final Map<String, String> itemIds = new ConcurrentHashMap<>();
+  private final Map<String, String> traversals = new ConcurrentHashMap<>();
+  private final List<String> names = new ArrayList<>();
+  private final boolean syntheticIds;
+  private final int syntheticItems;
+
+  /**
+   * @param directory the fixture directory, or null for the bundled fixtures
+   * @param syntheticIds whether names without a fixture get a made up Item ID rather than none
+   * @param syntheticItems the number of related items in a made up traversal response
+   */
+  public StubFixtures(File directory, boolean syntheticIds, int syntheticItems) throws IOException {
+    this.directory = directory;
+    this.syntheticIds = syntheticIds;
+    this.syntheticItems = syntheticItems;
+
+    InputStream in = open("idlocator.tsv");
+    if (in != null) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] columns = line.split("\t");
+          if (columns.length == 2 && !line.startsWith("#")) {
+            names.add(columns[0]);
+            itemIds.put(normalize(columns[0]), columns[1]);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * @return the names that have fixtures, for a load generator to ask about
+   */
+  public List<String> getNames() {
+    return Collections.unmodifiableList(names);
+  }
+
+  /**
+   * @return the body of the idlocator response for a name
+   */
+  public byte[] idLocator(String name) {
+    String itemId = name != null ? itemIds.get(normalize(name)) : null;
+    if (itemId == null && name != null && syntheticIds) {
+      itemId = "Q" + (1000000 + (normalize(name).hashCode() & 0x7fffffff) % 9000000);
+    }
+    return ConceptMapPayloads.idLocator(itemId != null ? itemId : "");
+  }
+
+  /**
+   * @return the body of the traversal response for an item
+   */
+  public byte[] traversal(String itemId, String pictureBaseUrl) throws IOException {
+    String template = traversals.get(itemId);
+    if (template == null) {
+      InputStream in = itemId.matches("Q[0-9]+") ? open("traversal/" + itemId + ".json") : null;
+      if (in == null) {
+        return ConceptMapPayloads.traversal(itemId, syntheticItems, pictureBaseUrl);
+      }
+      try {
+        template = IOUtils.toString(in, StandardCharsets.UTF_8.name());
+      } finally {
+        in.close();
+      }
+      traversals.put(itemId, template);
+    }
+    return template.replace(PICTURE_BASE_URL_TOKEN, pictureBaseUrl)
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private InputStream open(String path) throws IOException {
+    if (directory == null) {
+      return StubFixtures.class.getResourceAsStream("/stub/" + path);
+    }
+    File file = new File(directory, path);
+    return file.isFile() ? new FileInputStream(file) : null;
+  }
+
+  private static String normalize(String name) {
+    return name.trim().toLowerCase(Locale.ENGLISH);
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazon.speech.json.SpeechletRequestEnvelope;
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.SpeechletRequest;
+import com.amazon.speech.speechlet.SpeechletRequestHandler;
+import com.amazon.speech.speechlet.verifier.SpeechletRequestVerifier;
+import com.amazon.speech.speechlet.verifier.SpeechletResponseVerifier;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the envelopes in a {@link TrafficRecorder} recording through the speechlet, one at a
+ * time in the order they arrived, with the ConceptMap calls answered from the recording by a
+ * {@link ReplayConceptMapTransport}, and reports the latency and allocation of each intent. Each
+ * pass starts with a new client, so its caches fill the same way every time. Options are:
+ * <ul>
+ *   <li>{@code --recording} the file to replay</li>
+ *   <li>{@code --speed}, {@code 1} to send envelopes as far apart as they arrived, {@code 2} for
+ *   twice as fast, or {@code max}, the default, for one straight after another</li>
+ *   <li>{@code --upstreamDelays} to answer each ConceptMap call as slowly as it was answered when
+ *   recorded</li>
+ *   <li>{@code --warmupPasses}, whose requests aren't reported, and {@code --passes}</li>
+ *   <li>{@code --save} a file to keep the report in, and {@code --baseline} a report saved by
+ *   another build to compare with, flagging intents that got more than {@code --tolerance}
+ *   percent slower at the median or allocate that much more. {@code --failOnRegression} exits
+ *   with status 1 if any did.</li>
+ * </ul>
+ * Envelopes are sent through the SDK's request handler, as Lambda's would be, but without the
+ * application ID and timestamp checks, which a recording would fail. Allocation is that of the
+ * thread handling the request, so work handed to the traversal and picture threads isn't
+ * counted. To compare two builds:
+ * <pre>
+ *   mvn -Pperf compile exec:java@replay -Dexec.args="--recording=traffic.rec --save=before.tsv"
+ *   git checkout candidate
+ *   mvn -Pperf compile exec:java@replay -Dexec.args="--recording=traffic.rec --baseline=before.tsv"
+ * </pre>
+ */
+public class TrafficReplay {
+  private static final String ALL = "(all)";
+
+  private final CommandLineOptions options;
+  private final List<TrafficRecorder.Record> records;
+  private final List<Envelope> envelopes = new ArrayList<>();
+  private final SpeechletRequestHandler requestHandler = new SpeechletRequestHandler(
+      Collections.<SpeechletRequestVerifier>emptyList(),
+      Collections.<SpeechletResponseVerifier>emptyList());
+  private final com.sun.management.ThreadMXBean threadMXBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private final Map<String, IntentStats> stats = new TreeMap<>();
+  private long upstreamCalls;
+  private long upstreamMisses;
+
+  public TrafficReplay(CommandLineOptions options, List<TrafficRecorder.Record> records)
+      throws IOException {
+    this.options = options;
+    this.records = records;
+    for (TrafficRecorder.Record record : records) {
+      if (record.isEnvelope()) {
+        envelopes.add(new Envelope(record));
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (!options.has("recording")) {
+      System.err.println("Usage: TrafficReplay --recording=file [--speed=max|1] [--passes=3]"
+          + " [--save=report.tsv] [--baseline=report.tsv]");
+      System.exit(2);
+    }
+
+    List<TrafficRecorder.Record> records;
+    InputStream in = new BufferedInputStream(new FileInputStream(options.get("recording", null)));
+    try {
+      records = TrafficRecorder.read(in);
+    } finally {
+      in.close();
+    }
+
+    TrafficReplay replay = new TrafficReplay(options, records);
+    replay.run();
+    Map<String, IntentStats> report = replay.report();
+    if (options.has("save")) {
+      save(report, new File(options.get("save", null)), options.get("recording", null));
+    }
+    if (options.has("baseline")) {
+      boolean regressed = compare(load(new File(options.get("baseline", null))), report,
+          options.getDouble("tolerance", 20));
+      if (regressed && options.getBoolean("failOnRegression", false)) {
+        System.exit(1);
+      }
+    }
+  }
+
+  /**
+   * Run the warm-up and measured passes
+   */
+  public void run() throws IOException, InterruptedException {
+    if (envelopes.isEmpty()) {
+      System.out.println("No envelopes in the recording");
+      return;
+    }
+    int warmupPasses = options.getInt("warmupPasses", 1);
+    int passes = options.getInt("passes", 3);
+    String speed = options.get("speed", "max");
+    System.out.println("Replaying " + envelopes.size() + " envelopes and "
+        + (records.size() - envelopes.size()) + " upstream responses at " + speed
+        + (speed.equals("max") ? "" : "x") + " speed, " + warmupPasses + " warm-up and " + passes
+        + " measured passes");
+
+    for (int pass = 0; pass < warmupPasses + passes; pass++) {
+      replayPass(pass >= warmupPasses, speed.equals("max") ? 0 : Double.parseDouble(speed));
+    }
+  }
+
+  private void replayPass(boolean measured, double speed)
+      throws IOException, InterruptedException {
+    ConceptMapClientConfig config = ConceptMapClientConfig.fromSystemProperties();
+    config.setDynamoTableName(null);
+    config.setRecordingPath(null);
+    ReplayConceptMapTransport transport = new ReplayConceptMapTransport(records,
+        options.getBoolean("upstreamDelays", false));
+    ConceptMapClient conceptMapClient = new ConceptMapClient(config, transport);
+    ConceptMapSpeechlet speechlet = new ConceptMapSpeechlet(conceptMapClient);
+
+    long startNanos = System.nanoTime();
+    long firstMillis = envelopes.get(0).timeMillis;
+    long threadId = Thread.currentThread().getId();
+    try {
+      for (Envelope envelope : envelopes) {
+        if (speed > 0) {
+          long dueNanos = startNanos
+              + (long) (TimeUnit.MILLISECONDS.toNanos(envelope.timeMillis - firstMillis) / speed);
+          long waitNanos;
+          while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+          }
+        }
+
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long beforeNanos = System.nanoTime();
+        boolean failed = false;
+        try {
+          requestHandler.handleSpeechletCall(speechlet, envelope.payload);
+        } catch (Exception e) {
+          failed = true;
+        }
+        long nanos = System.nanoTime() - beforeNanos;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (measured) {
+          stats(envelope.intent).record(nanos, allocated, failed);
+          stats(ALL).record(nanos, allocated, failed);
+        }
+      }
+    } finally {
+      conceptMapClient.close();
+    }
+    if (measured) {
+      upstreamCalls += transport.getCalls();
+      upstreamMisses += transport.getMisses();
+    }
+  }
+
+  private IntentStats stats(String intent) {
+    IntentStats intentStats = stats.get(intent);
+    if (intentStats == null) {
+      intentStats = new IntentStats();
+      stats.put(intent, intentStats);
+    }
+    return intentStats;
+  }
+
+  /**
+   * Print the measured passes' latency and allocation by intent
+   *
+   * @return the report, by intent
+   */
+  public Map<String, IntentStats> report() {
+    System.out.println();
+    System.out.printf("  %-28s %8s %7s %9s %9s %9s %12s%n", "intent", "requests", "failed",
+        "p50 ms", "p90 ms", "p99 ms", "alloc KB/req");
+    for (Map.Entry<String, IntentStats> intent : stats.entrySet()) {
+      IntentStats intentStats = intent.getValue();
+      intentStats.summarize();
+      System.out.printf("  %-28s %8d %7d %9.2f %9.2f %9.2f %12.1f%n", intent.getKey(),
+          intentStats.count, intentStats.failed, intentStats.p50Micros / 1000.0,
+          intentStats.p90Micros / 1000.0, intentStats.p99Micros / 1000.0,
+          intentStats.getAllocatedPerRequest() / 1024.0);
+    }
+    System.out.println();
+    System.out.println("ConceptMap calls: " + upstreamCalls + ", not in the recording: "
+        + upstreamMisses);
+    return stats;
+  }
+
+  /**
+   * Write a report as tab separated values, for comparing a later build with
+   */
+  static void save(Map<String, IntentStats> report, File file, String recording)
+      throws IOException {
+    StringBuilder text = new StringBuilder();
+    text.append("# replay of ").append(recording).append(" at ").append(new Date()).append('\n');
+    text.append("# intent\trequests\tfailed\tp50Micros\tp90Micros\tp99Micros\tallocatedBytes\n");
+    for (Map.Entry<String, IntentStats> intent : report.entrySet()) {
+      IntentStats intentStats = intent.getValue();
+      text.append(intent.getKey()).append('\t').append(intentStats.count)
+          .append('\t').append(intentStats.failed)
+          .append('\t').append(intentStats.p50Micros)
+          .append('\t').append(intentStats.p90Micros)
+          .append('\t').append(intentStats.p99Micros)
+          .append('\t').append(intentStats.allocatedBytes).append('\n');
+    }
+    FileUtils.writeStringToFile(file, text.toString(), StandardCharsets.UTF_8);
+    System.out.println("Saved the report to " + file);
+  }
+
+  static Map<String, IntentStats> load(File file) throws IOException {
+    Map<String, IntentStats> report = new TreeMap<>();
+    for (String line : FileUtils.readLines(file, StandardCharsets.UTF_8)) {
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\t");
+      IntentStats intentStats = new IntentStats();
+      intentStats.count = Long.parseLong(fields[1]);
+      intentStats.failed = Long.parseLong(fields[2]);
+      intentStats.p50Micros = Long.parseLong(fields[3]);
+      intentStats.p90Micros = Long.parseLong(fields[4]);
+      intentStats.p99Micros = Long.parseLong(fields[5]);
+      intentStats.allocatedBytes = Long.parseLong(fields[6]);
+      report.put(fields[0], intentStats);
+    }
+    return report;
+  }
+
+  /**
+   * Print how each intent's latency and allocation changed from the baseline
+   *
+   * @return whether any intent got slower or allocates more by more than the tolerance
+   */
+  static boolean compare(Map<String, IntentStats> baseline, Map<String, IntentStats> report,
+                         double tolerancePercent) {
+    System.out.println();
+    System.out.println("Compared with the baseline:");
+    System.out.printf("  %-28s %16s %16s %16s %20s%n", "intent", "p50 ms", "p90 ms", "p99 ms",
+        "alloc KB/req");
+    boolean regressed = false;
+    for (Map.Entry<String, IntentStats> intent : report.entrySet()) {
+      IntentStats before = baseline.get(intent.getKey());
+      IntentStats after = intent.getValue();
+      if (before == null) {
+        System.out.printf("  %-28s not in the baseline%n", intent.getKey());
+        continue;
+      }
+      double p50Change = change(before.p50Micros, after.p50Micros);
+      double allocatedChange =
+          change(before.getAllocatedPerRequest(), after.getAllocatedPerRequest());
+      boolean intentRegressed = p50Change > tolerancePercent
+          || allocatedChange > tolerancePercent;
+      regressed |= intentRegressed;
+      System.out.printf("  %-28s %7.2f %+7.1f%% %7.2f %+7.1f%% %7.2f %+7.1f%%"
+          + " %10.1f %+7.1f%%%s%n", intent.getKey(),
+          after.p50Micros / 1000.0, p50Change,
+          after.p90Micros / 1000.0, change(before.p90Micros, after.p90Micros),
+          after.p99Micros / 1000.0, change(before.p99Micros, after.p99Micros),
+          after.getAllocatedPerRequest() / 1024.0, allocatedChange,
+          intentRegressed ? "  REGRESSED" : "");
+    }
+    return regressed;
+  }
+
+  private static double change(double before, double after) {
+    return before > 0 ? (after - before) * 100 / before : 0;
+  }
+
+  /**
+   * An envelope to replay, and the intent it's reported under
+   */
+  private static class Envelope {
+    private final byte[] payload;
+    private final long timeMillis;
+    private final String intent;
+
+    Envelope(TrafficRecorder.Record record) throws IOException {
+      this.payload = record.getBody();
+      this.timeMillis = record.getTimeMillis();
+      SpeechletRequest request = SpeechletRequestEnvelope.fromJson(payload).getRequest();
+      this.intent = request instanceof IntentRequest
+          ? ((IntentRequest) request).getIntent().getName()
+          : request.getClass().getSimpleName();
+    }
+  }
+
+  /**
+   * The latency and allocation of the requests for an intent
+   */
+  static class IntentStats {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long count;
+    private long failed;
+    private long allocatedBytes;
+    private long p50Micros;
+    private long p90Micros;
+    private long p99Micros;
+
+    void record(long nanos, long allocated, boolean failed) {
+      histogram.recordNanos(nanos);
+      count++;
+      if (failed) {
+        this.failed++;
+      }
+      allocatedBytes += allocated;
+    }
+
+    void summarize() {
+      p50Micros = histogram.getValueAtPercentile(50);
+      p90Micros = histogram.getValueAtPercentile(90);
+      p99Micros = histogram.getValueAtPercentile(99);
+    }
+
+    double getAllocatedPerRequest() {
+      return count > 0 ? (double) allocatedBytes / count : 0;
+    }
+  }
+}
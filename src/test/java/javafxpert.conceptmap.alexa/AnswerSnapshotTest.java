@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class AnswerSnapshotTest {
+  private static final String PICTURE_TARGET = "https://upload.wikimedia.org/Messi.jpg";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<String, String> itemIds = new HashMap<>();
+  private ConceptMapClient conceptMapClient;
+  private RelationshipIndex relationshipIndex;
+  private Relationship teams;
+  private Relationship spouses;
+
+  @Before
+  public void setUp() {
+    // Sorted differently by their unsigned UTF-8 bytes than by their signed bytes, or than
+    // Strings are by their UTF-16 chars
+    itemIds.put("Lionel Messi", "Q615");
+    itemIds.put("Zinedine Zidane", "Q1835");
+    itemIds.put("\u00c9ric Cantona", "Q182");
+    itemIds.put("A\uff21", "Q1");
+    itemIds.put("A\ud83d\ude00", "Q2");
+
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    config.setHedgingEnabled(false);
+    conceptMapClient = new ConceptMapClient(config, new StubTransport(), null);
+    relationshipIndex = RelationshipIndex.getDefault();
+    teams = relationshipIndex.resolve("teams");
+    spouses = relationshipIndex.resolve("spouses");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    conceptMapClient.close();
+  }
+
+  @Test
+  public void findsEveryAnswerItWasBuiltWith() throws Exception {
+    AnswerSnapshot snapshot = build(
+        "# item\trelationships",
+        "lionel messi\tteams,spouses",
+        "Zinedine Zidane",
+        "\u00c9ric Cantona\tclubs",
+        "A\uff21\tteams",
+        "A\ud83d\ude00\tteams");
+
+    assertEquals(6, snapshot.size());
+    for (String itemName : itemIds.keySet()) {
+      AnswerSnapshot.Answer answer = snapshot.lookup(itemName, teams);
+      assertEquals(itemName, itemIds.get(itemName), answer.getItemId());
+      assertEquals(Collections.singletonList("Club of " + itemIds.get(itemName)),
+          answer.getClaimsInfo().getItemLabels());
+      assertFalse(answer.isStale(60000));
+    }
+    assertEquals(PICTURE_TARGET, snapshot.lookup(" LIONEL  messi", teams).getPictureUrl());
+    assertNull(snapshot.lookup("Zinedine Zidane", teams).getPictureUrl());
+    assertEquals("Spouse of Q615",
+        snapshot.lookup("Lionel Messi", spouses).getClaimsInfo().getItemLabel(0));
+  }
+
+  @Test
+  public void missesQuestionsItWasNotBuiltWith() throws Exception {
+    AnswerSnapshot snapshot = build(
+        "Lionel Messi",
+        "\u00c9ric Cantona",
+        "A\uff21",
+        "A\ud83d\ude00",
+        "Diego Maradona");
+
+    assertEquals(4, snapshot.size());
+    assertNull(snapshot.lookup("Lionel Messi", spouses));
+    assertNull(snapshot.lookup("Diego Maradona", teams));
+    for (String itemName : Arrays.asList("A", "Lionel", "Lionel Messi Jr", "\u00c9",
+        "A\uff21A", "A\ud83d\ude01", "Zinedine Zidane")) {
+      assertNull(itemName, snapshot.lookup(itemName, teams));
+    }
+  }
+
+  private AnswerSnapshot build(String... lines) throws IOException {
+    File questions = folder.newFile();
+    Files.write(questions.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    File snapshotFile = folder.newFile();
+    AnswerSnapshotBuilder.build(questions, snapshotFile, conceptMapClient, relationshipIndex);
+    return AnswerSnapshot.open(snapshotFile);
+  }
+
+  /**
+   * Answers the idlocator from the item IDs, and every traversal with one related item named
+   * after the relationship and the item. Only Q615 has a picture, which redirects.
+   */
+  private class StubTransport implements ConceptMapTransport {
+
+    @Override
+    public ConceptMapResponse execute(ConceptMapRequest request) throws IOException {
+      String url = request.getUrl();
+      if (url.contains("/idlocator?")) {
+        String name = URLDecoder.decode(parameter(url, "name"), StandardCharsets.UTF_8.name());
+        String itemId = itemIds.get(name);
+        return json("{\"itemId\":\"" + (itemId != null ? itemId : "") + "\"}");
+      }
+      if (url.contains("/traversal?")) {
+        String itemId = parameter(url, "id");
+        String prefix = "P26".equals(parameter(url, "prop")) ? "Spouse of " : "Club of ";
+        String picture = "Q615".equals(itemId)
+            ? ",\"picture\":\"http://commons.wikimedia.org/wiki/Special:FilePath/Messi.jpg\"" : "";
+        return json("{\"item\":[{\"id\":\"" + itemId + "\"" + picture + "},"
+            + "{\"id\":\"Q9" + itemId.substring(1) + "\",\"label\":\"" + prefix + itemId + "\"}]}");
+      }
+      if (url.startsWith("http://commons.wikimedia.org/")) {
+        return new ConceptMapResponse(302, Collections.singletonMap("Location", PICTURE_TARGET),
+            null, null);
+      }
+      throw new IOException("Unexpected request for " + url);
+    }
+
+    private String parameter(String url, String name) {
+      for (String parameter : url.substring(url.indexOf('?') + 1).split("&")) {
+        if (parameter.startsWith(name + "=")) {
+          return parameter.substring(name.length() + 1);
+        }
+      }
+      return null;
+    }
+
+    private ConceptMapResponse json(String body) {
+      return new ConceptMapResponse(200,
+          Collections.singletonMap("Content-Type", "application/json"),
+          new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    @Override
+    public int prewarm(String url, int connections, int connectTimeoutMillis) {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
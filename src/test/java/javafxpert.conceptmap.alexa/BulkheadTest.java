@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BulkheadTest {
+
+  @Test
+  public void refusesCallsOverTheLimit() throws Exception {
+    Bulkhead bulkhead = new Bulkhead("test", 2);
+    bulkhead.acquire();
+    bulkhead.acquire();
+    try {
+      bulkhead.acquire();
+      fail("A full bulkhead should refuse calls");
+    } catch (CallNotPermittedException e) {
+      assertEquals(1, bulkhead.getRejected());
+    }
+
+    bulkhead.release();
+    bulkhead.acquire();
+    assertEquals(2, bulkhead.getInFlight());
+  }
+
+  @Test
+  public void eachEndpointCanTakeTheWholeConnectionPool() {
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    config.setMaxConnections(20);
+    for (String endpoint : ConceptMapClient.ENDPOINTS) {
+      assertEquals(20, ConceptMapClient.bulkheadMaxConcurrentCalls(config, endpoint));
+    }
+  }
+
+  @Test
+  public void configuredLimitOnlyLowersThePoolSize() {
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    config.setMaxConnections(20);
+    config.setBulkheadMaxConcurrentCalls(5);
+    assertEquals(5, ConceptMapClient.bulkheadMaxConcurrentCalls(config,
+        ConceptMapClient.ENDPOINT_TRAVERSAL));
+
+    config.setBulkheadMaxConcurrentCalls(100);
+    assertEquals(20, ConceptMapClient.bulkheadMaxConcurrentCalls(config,
+        ConceptMapClient.ENDPOINT_IDLOCATOR));
+  }
+
+  @Test
+  public void everyEndpointGetsACall() {
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    config.setMaxConnections(0);
+    for (String endpoint : ConceptMapClient.ENDPOINTS) {
+      assertEquals(1, ConceptMapClient.bulkheadMaxConcurrentCalls(config, endpoint));
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+  private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(2000);
+
+  private ConceptMapClientConfig config;
+
+  @Before
+  public void setUp() {
+    config = new ConceptMapClientConfig();
+    config.setBreakerWindowSize(4);
+    config.setBreakerMinimumCalls(4);
+    config.setBreakerFailureRateThreshold(0.5);
+    config.setBreakerSlowCallMillis(1000);
+    config.setBreakerSlowCallRateThreshold(0.75);
+    config.setBreakerOpenMillis(60000);
+    config.setBreakerHalfOpenCalls(2);
+  }
+
+  @Test
+  public void staysClosedUntilTheMinimumCalls() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    for (int i = 0; i < 3; i++) {
+      breaker.acquirePermission();
+      breaker.onFailure(FAST_NANOS);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void opensAtTheFailureRate() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    record(breaker, true, true, false, false);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(1, breaker.getOpened());
+  }
+
+  @Test
+  public void staysClosedBelowTheFailureRate() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    record(breaker, true, false, false, false, false, false);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void oldOutcomesLeaveTheWindow() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    // The first failure has left the window of four by the time the second one comes
+    record(breaker, true, false, false, false, false, true);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void opensAtTheSlowCallRate() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    for (int i = 0; i < 3; i++) {
+      breaker.acquirePermission();
+      breaker.onSuccess(SLOW_NANOS);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    breaker.acquirePermission();
+    breaker.onSuccess(SLOW_NANOS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void openRefusesCalls() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    record(breaker, true, true, true, true);
+    try {
+      breaker.acquirePermission();
+      fail("An open circuit should refuse calls");
+    } catch (CallNotPermittedException e) {
+      assertEquals(1, breaker.getRejected());
+    }
+  }
+
+  @Test
+  public void halfOpenClosesAfterItsTrialCallsSucceed() throws Exception {
+    config.setBreakerOpenMillis(0);
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    record(breaker, true, true, true, true);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    breaker.acquirePermission();
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    breaker.acquirePermission();
+    breaker.onSuccess(FAST_NANOS);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    breaker.onSuccess(FAST_NANOS);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(1, breaker.getClosed());
+
+    // The window starts over, so the failures from before it opened don't count
+    record(breaker, true, false, false);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void halfOpenReopensOnAFailedTrialCall() throws Exception {
+    config.setBreakerOpenMillis(0);
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    record(breaker, true, true, true, true);
+
+    breaker.acquirePermission();
+    breaker.onFailure(FAST_NANOS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(2, breaker.getOpened());
+  }
+
+  @Test
+  public void halfOpenReopensOnASlowTrialCall() throws Exception {
+    config.setBreakerOpenMillis(0);
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    record(breaker, true, true, true, true);
+
+    breaker.acquirePermission();
+    breaker.onSuccess(SLOW_NANOS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void halfOpenLimitsTrialCalls() throws Exception {
+    config.setBreakerOpenMillis(0);
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    record(breaker, true, true, true, true);
+
+    breaker.acquirePermission();
+    breaker.acquirePermission();
+    try {
+      breaker.acquirePermission();
+      fail("Only two trial calls should be let through");
+    } catch (CallNotPermittedException e) {
+      assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    // A trial call that was never made hands its place back
+    breaker.onNotAttempted();
+    breaker.acquirePermission();
+  }
+
+  @Test
+  public void notAttemptedCallsAreNotRecorded() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("test", config);
+    for (int i = 0; i < 10; i++) {
+      breaker.acquirePermission();
+      breaker.onNotAttempted();
+    }
+    record(breaker, true, false, false, false);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  private static void record(CircuitBreaker breaker, boolean... failures) throws Exception {
+    for (boolean failure : failures) {
+      breaker.acquirePermission();
+      if (failure) {
+        breaker.onFailure(FAST_NANOS);
+      }
+      else {
+        breaker.onSuccess(FAST_NANOS);
+      }
+    }
+  }
+}
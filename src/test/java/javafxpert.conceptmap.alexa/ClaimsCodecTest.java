@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ClaimsCodecTest {
+
+  @Test
+  public void roundTripsClaimsWithValidators() throws Exception {
+    ClaimsInfo claimsInfo = new ClaimsInfo();
+    claimsInfo.setPictureUrl("http://commons.wikimedia.org/wiki/Special:FilePath/Messi.jpg");
+    claimsInfo.setEtag("\"5e1f-abc\"");
+    claimsInfo.setLastModified("Sat, 01 Oct 2016 10:00:00 GMT");
+    claimsInfo.addItem(10333, "Argentina national football team");
+    claimsInfo.addItem(7156, "FC Barcelona");
+    claimsInfo.addItem(Integer.MAX_VALUE, "Selecci\u00f3n de f\u00fatbol sub-20");
+    claimsInfo.addItem("P54", "Not a Q-ID");
+
+    ClaimsInfo decoded = ClaimsCodec.decode(ClaimsCodec.encode(claimsInfo));
+    assertEquals(claimsInfo.getPictureUrl(), decoded.getPictureUrl());
+    assertEquals(claimsInfo.getEtag(), decoded.getEtag());
+    assertEquals(claimsInfo.getLastModified(), decoded.getLastModified());
+    assertEquals(claimsInfo.getItemLabels(), decoded.getItemLabels());
+    assertEquals(Arrays.asList("Q10333", "Q7156", "Q" + Integer.MAX_VALUE, null),
+        Arrays.asList(decoded.getItemId(0), decoded.getItemId(1), decoded.getItemId(2),
+            decoded.getItemId(3)));
+  }
+
+  @Test
+  public void roundTripsClaimsWithoutOptionalFields() throws Exception {
+    ClaimsInfo decoded = ClaimsCodec.decode(ClaimsCodec.encode(new ClaimsInfo()));
+    assertNull(decoded.getPictureUrl());
+    assertNull(decoded.getEtag());
+    assertNull(decoded.getLastModified());
+    assertEquals(0, decoded.getItemCount());
+  }
+
+  @Test
+  public void rejectsAnUnknownVersion() {
+    byte[] encoded = ClaimsCodec.encode(new ClaimsInfo());
+    encoded[0] = 2;
+    try {
+      ClaimsCodec.decode(encoded);
+      fail("Claims in an unknown encoding should be undecodable");
+    } catch (IOException e) {
+      assertEquals("Unknown claims encoding version 2", e.getMessage());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsTruncatedClaims() throws Exception {
+    ClaimsInfo claimsInfo = new ClaimsInfo();
+    claimsInfo.addItem(615, "Lionel Messi");
+    byte[] encoded = ClaimsCodec.encode(claimsInfo);
+    ClaimsCodec.decode(Arrays.copyOf(encoded, encoded.length - 3));
+  }
+
+  @Test
+  public void roundTripsVarIntsAcrossByteBoundaries() throws Exception {
+    int[] values = {0, 1, 127, 128, 16383, 16384, 2097151, 2097152, Integer.MAX_VALUE};
+    int[] lengths = {1, 1, 1, 2, 2, 3, 3, 4, 5};
+    for (int i = 0; i < values.length; i++) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      ClaimsCodec.writeVarInt(out, values[i]);
+      out.flush();
+      assertEquals("Length of " + values[i], lengths[i], bytes.size());
+      assertEquals(values[i], ClaimsCodec.readVarInt(
+          new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConceptMapClientTest {
+  private ConceptMapClientConfig config;
+  private ConceptMapClient conceptMapClient;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    config = new ConceptMapClientConfig();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (conceptMapClient != null) {
+      conceptMapClient.close();
+    }
+  }
+
+  @Test
+  public void locatesItemsConcurrentlyAtTheDefaultConfig() throws Exception {
+    final int calls = 8;
+    final CountDownLatch allInFlight = new CountDownLatch(calls);
+    // Each call is held until they're all in flight, so none is refused only if all fit at once
+    conceptMapClient = new ConceptMapClient(config, new StubTransport() {
+      @Override
+      public ConceptMapResponse execute(ConceptMapRequest request) throws IOException {
+        allInFlight.countDown();
+        try {
+          allInFlight.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return json("{\"itemId\":\"Q1\"}");
+      }
+    }, null);
+
+    executor = Executors.newFixedThreadPool(calls);
+    List<Future<String>> itemIds = new ArrayList<>();
+    for (int i = 0; i < calls; i++) {
+      final String itemValue = "Item " + i;
+      itemIds.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws IOException {
+          return conceptMapClient.locateItemId(itemValue, new Deadline(5000));
+        }
+      }));
+    }
+    for (Future<String> itemId : itemIds) {
+      assertEquals("Q1", itemId.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(0, conceptMapClient.getBulkhead(ConceptMapClient.ENDPOINT_IDLOCATOR)
+        .getRejected());
+  }
+
+  @Test
+  public void remembersANameTheServiceDoesNotKnow() throws Exception {
+    final AtomicInteger lookups = new AtomicInteger();
+    conceptMapClient = new ConceptMapClient(config, new StubTransport() {
+      @Override
+      public ConceptMapResponse execute(ConceptMapRequest request) {
+        lookups.incrementAndGet();
+        return json("{}");
+      }
+    }, null);
+
+    assertEquals("", conceptMapClient.locateItemId("Nobody", new Deadline(5000)));
+    assertEquals("", conceptMapClient.locateItemId("Nobody", new Deadline(5000)));
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  public void doesNotRememberAnUnparseableAnswer() throws Exception {
+    final AtomicInteger lookups = new AtomicInteger();
+    conceptMapClient = new ConceptMapClient(config, new StubTransport() {
+      @Override
+      public ConceptMapResponse execute(ConceptMapRequest request) {
+        return json(lookups.incrementAndGet() == 1 ? "<html>Bad gateway" : "{\"itemId\":\"Q615\"}");
+      }
+    }, null);
+
+    try {
+      conceptMapClient.locateItemId("Lionel Messi", new Deadline(5000));
+      fail("An unparseable answer doesn't say whether the service knows the name");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Couldn't parse idlocator response"));
+    }
+    assertEquals("Q615", conceptMapClient.locateItemId("Lionel Messi", new Deadline(5000)));
+    assertEquals(2, lookups.get());
+  }
+
+  private static ConceptMapResponse json(String body) {
+    return new ConceptMapResponse(200,
+        Collections.singletonMap("Content-Type", "application/json"),
+        new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), null);
+  }
+
+  private abstract static class StubTransport implements ConceptMapTransport {
+
+    @Override
+    public int prewarm(String url, int connections, int connectTimeoutMillis) {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Runs against DynamoDB Local in a JVM of its own, and is skipped unless the dynamodb-local
+ * profile has resolved it: {@code mvn -Pdynamodb-local test}
+ */
+public class DynamoDbCacheTest {
+  private static final String DYNAMODB_LOCAL_DIR = System.getProperty("dynamodb.local.dir");
+  private static final long STARTUP_MILLIS = 60000;
+  private static final long FLUSH_MILLIS = 10000;
+
+  private static Process dynamoDbLocal;
+  private static String endpoint;
+  private static AmazonDynamoDB dynamoDb;
+
+  private ConceptMapClientConfig config;
+  private DynamoDbCache cache;
+
+  @BeforeClass
+  public static void startDynamoDbLocal() throws IOException, InterruptedException {
+    assumeNotNull(DYNAMODB_LOCAL_DIR);
+    File directory = new File(DYNAMODB_LOCAL_DIR);
+    byte[] classpath = Files.readAllBytes(new File(directory, "classpath.txt").toPath());
+    File serverLog = new File(directory, "server.log");
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    dynamoDbLocal = new ProcessBuilder(
+        new File(System.getProperty("java.home"), "bin/java").getPath(),
+        "-Dsqlite4java.library.path=" + directory.getAbsolutePath(),
+        "-cp", new String(classpath, StandardCharsets.UTF_8).trim(),
+        "com.amazonaws.services.dynamodbv2.local.main.ServerRunner",
+        "-inMemory", "-disableTelemetry", "-port", Integer.toString(port))
+        .directory(directory)
+        .redirectErrorStream(true)
+        .redirectOutput(serverLog)
+        .start();
+    endpoint = "http://localhost:" + port;
+
+    dynamoDb = DynamoDbCache.createClient(newConfig());
+    long giveUpAt = System.currentTimeMillis() + STARTUP_MILLIS;
+    while (true) {
+      try {
+        dynamoDb.listTables();
+        return;
+      } catch (AmazonServiceException e) {
+        // Up, but refusing the requests
+        throw e;
+      } catch (AmazonClientException e) {
+        // Still starting up, unless it has already exited
+        try {
+          fail("DynamoDB Local exited with " + dynamoDbLocal.exitValue() + ", see " + serverLog);
+        } catch (IllegalThreadStateException running) {
+          if (System.currentTimeMillis() > giveUpAt) {
+            throw e;
+          }
+        }
+        Thread.sleep(250);
+      }
+    }
+  }
+
+  @AfterClass
+  public static void stopDynamoDbLocal() {
+    if (dynamoDb != null) {
+      dynamoDb.shutdown();
+    }
+    if (dynamoDbLocal != null) {
+      dynamoDbLocal.destroy();
+    }
+  }
+
+  @Before
+  public void setUp() {
+    config = newConfig();
+    config.setDynamoTableName("conceptmap-cache-" + UUID.randomUUID());
+    DynamoDbCache.createTable(dynamoDb, config.getDynamoTableName());
+    cache = new DynamoDbCache(config);
+  }
+
+  @After
+  public void tearDown() {
+    if (cache != null) {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void readsBackFlushedWrites() {
+    cache.putAsync("claims:?id=Q615", bytes("FC Barcelona"), 60000);
+    cache.putAsync("itemId:lionel messi", bytes("Q615"), 60000);
+    assertTrue(cache.flush(FLUSH_MILLIS));
+    assertEquals(2, cache.getWrites());
+
+    assertArrayEquals(bytes("FC Barcelona"), cache.get("claims:?id=Q615"));
+    assertArrayEquals(bytes("Q615"), cache.get("itemId:lionel messi"));
+    assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void missesAbsentAndExpiredKeys() {
+    cache.putAsync("itemId:diego maradona", bytes("Q17121"), -1000);
+    assertTrue(cache.flush(FLUSH_MILLIS));
+
+    assertNull(cache.get("itemId:diego maradona"));
+    assertNull(cache.get("itemId:zinedine zidane"));
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.getErrors());
+  }
+
+  @Test
+  public void writesMoreThanOneBatch() {
+    for (int i = 0; i < 60; i++) {
+      cache.putAsync("itemId:" + i, bytes("Q" + i), 60000);
+    }
+    assertTrue(cache.flush(FLUSH_MILLIS));
+    assertEquals(60, cache.getWrites());
+    for (int i = 0; i < 60; i++) {
+      assertArrayEquals(bytes("Q" + i), cache.get("itemId:" + i));
+    }
+  }
+
+  @Test
+  public void latestValueForAKeyWins() {
+    // Queued before the writer can take any of them, so they go in one batch
+    for (int i = 0; i < 10; i++) {
+      cache.putAsync("claims:?id=Q615", bytes("version " + i), 60000);
+    }
+    assertTrue(cache.flush(FLUSH_MILLIS));
+    assertArrayEquals(bytes("version 9"), cache.get("claims:?id=Q615"));
+  }
+
+  @Test
+  public void missingTableFailsQuietly() {
+    cache.close();
+    config.setDynamoTableName("conceptmap-cache-missing");
+    cache = new DynamoDbCache(config);
+
+    assertNull(cache.get("itemId:lionel messi"));
+    cache.putAsync("itemId:lionel messi", bytes("Q615"), 60000);
+    assertTrue(cache.flush(FLUSH_MILLIS));
+    assertEquals(0, cache.getWrites());
+    assertEquals(1, cache.getWritesDropped());
+    assertTrue(cache.getErrors() > 1);
+  }
+
+  private static ConceptMapClientConfig newConfig() {
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    config.setDynamoEndpoint(endpoint);
+    // DynamoDB Local is slower to answer than the service
+    config.setDynamoTimeoutMillis(5000);
+    return config;
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
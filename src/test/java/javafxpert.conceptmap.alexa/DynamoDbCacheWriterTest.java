@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the write-behind against a stub client that fails the way it's told to, so unlike
+ * {@link DynamoDbCacheTest} it needs no DynamoDB Local
+ */
+public class DynamoDbCacheWriterTest {
+  private static final long FLUSH_MILLIS = 5000;
+
+  // What each batch write does in turn: throw the exception, or succeed when null
+  private final Queue<RuntimeException> outcomes = new LinkedList<>();
+  private final AtomicInteger batchWrites = new AtomicInteger();
+  private DynamoDbCache cache;
+
+  @Before
+  public void setUp() {
+    ConceptMapClientConfig config = new ConceptMapClientConfig();
+    config.setDynamoTableName("conceptmap-cache");
+    AmazonDynamoDB dynamoDb = (AmazonDynamoDB) Proxy.newProxyInstance(
+        AmazonDynamoDB.class.getClassLoader(), new Class<?>[] {AmazonDynamoDB.class},
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!"batchWriteItem".equals(method.getName())) {
+              return null;
+            }
+            batchWrites.incrementAndGet();
+            RuntimeException outcome;
+            synchronized (outcomes) {
+              outcome = outcomes.poll();
+            }
+            if (outcome != null) {
+              throw outcome;
+            }
+            return new BatchWriteItemResult();
+          }
+        });
+    cache = new DynamoDbCache(config, dynamoDb);
+  }
+
+  @After
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Test
+  public void keepsWritingAfterAnUnexpectedFailure() {
+    outcomes.add(new IllegalStateException("Unexpected"));
+    cache.putAsync("itemId:lionel messi", bytes("Q615"), 60000);
+    assertTrue(cache.flush(FLUSH_MILLIS));
+    assertEquals(1, cache.getWritesDropped());
+    assertEquals(1, cache.getErrors());
+    // Not retried, as it wasn't a failure to reach DynamoDB
+    assertEquals(1, batchWrites.get());
+
+    cache.putAsync("itemId:diego maradona", bytes("Q17121"), 60000);
+    assertTrue(cache.flush(FLUSH_MILLIS));
+    assertEquals(1, cache.getWrites());
+  }
+
+  @Test
+  public void dropsAWriteThatFailsEveryAttempt() {
+    for (int i = 0; i < 3; i++) {
+      outcomes.add(new AmazonClientException("Unable to execute HTTP request"));
+    }
+    cache.putAsync("itemId:lionel messi", bytes("Q615"), 60000);
+    assertTrue(cache.flush(FLUSH_MILLIS));
+    assertEquals(3, batchWrites.get());
+    assertEquals(3, cache.getErrors());
+    assertEquals(1, cache.getWritesDropped());
+    assertEquals(0, cache.getWrites());
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiringLruCacheTest {
+
+  @Test
+  public void evictsTheLeastRecentlyUsedEntry() {
+    ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, 60000);
+    cache.put("lionel messi", "Q615");
+    cache.put("zinedine zidane", "Q1835");
+    // Reading an entry makes it the most recently used
+    assertEquals("Q615", cache.get("lionel messi"));
+    cache.put("eric cantona", "Q182");
+
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+    assertNull(cache.get("zinedine zidane"));
+    assertEquals("Q615", cache.get("lionel messi"));
+    assertEquals("Q182", cache.get("eric cantona"));
+  }
+
+  @Test
+  public void dropsEntriesOnceTheirTimeToLiveHasPassed() throws Exception {
+    ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 60000);
+    cache.put("lionel messi", "Q615");
+    cache.put("diego maradona", "", 1);
+    Thread.sleep(20);
+
+    assertNull(cache.get("diego maradona"));
+    assertEquals("Q615", cache.get("lionel messi"));
+    assertEquals(1, cache.getExpirations());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void keepsNothingWhenDisabled() {
+    ExpiringLruCache<String, String> noEntries = new ExpiringLruCache<>(0, 60000);
+    noEntries.put("lionel messi", "Q615");
+    assertEquals(0, noEntries.size());
+
+    ExpiringLruCache<String, String> noTtl = new ExpiringLruCache<>(10, 0);
+    noTtl.put("lionel messi", "Q615");
+    noTtl.put("zinedine zidane", "Q1835", -1);
+    assertEquals(0, noTtl.size());
+    assertNull(noTtl.get("lionel messi"));
+  }
+
+  @Test
+  public void staysWithinItsBoundsUnderConcurrentUse() throws Exception {
+    final ExpiringLruCache<Integer, Integer> cache = new ExpiringLruCache<>(50, 60000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        final int offset = thread * 1000;
+        results.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int wrong = 0;
+            for (int i = 0; i < 2000; i++) {
+              int key = offset + i % 100;
+              cache.put(key, key * 2);
+              Integer value = cache.get(key);
+              if (value != null && value != key * 2) {
+                wrong++;
+              }
+            }
+            return wrong;
+          }
+        }));
+      }
+      for (Future<Integer> result : results) {
+        assertEquals(0, result.get(10, TimeUnit.SECONDS).intValue());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(50, cache.size());
+    assertTrue(cache.getEvictions() >= 8 * 2000 - 50);
+    assertEquals(8 * 2000, cache.getHits() + cache.getMisses());
+  }
+}
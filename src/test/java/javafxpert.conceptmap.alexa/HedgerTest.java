@@ -0,0 +1,244 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgerTest {
+  private static final String ENDPOINT = ConceptMapClient.ENDPOINT_TRAVERSAL;
+  private static final int MIN_DELAY_MILLIS = 20;
+
+  private final ConceptMapClientConfig config = new ConceptMapClientConfig();
+  private Hedger hedger;
+
+  @Before
+  public void setUp() {
+    config.setHedgeMinDelayMillis(MIN_DELAY_MILLIS);
+  }
+
+  @After
+  public void tearDown() {
+    if (hedger != null) {
+      hedger.close();
+    }
+  }
+
+  @Test
+  public void waitsForEnoughCallsBeforeHedging() throws Exception {
+    hedger = new Hedger(config);
+    ScriptedAttempt quick = new ScriptedAttempt(0, 0);
+    for (int i = 0; i < 19; i++) {
+      call(quick);
+    }
+    assertEquals(-1, hedger.getDelayMillis(ENDPOINT));
+
+    call(quick);
+    // Calls this quick are given the least time before they're hedged
+    assertEquals(MIN_DELAY_MILLIS, hedger.getDelayMillis(ENDPOINT));
+    assertEquals(-1, hedger.getDelayMillis(ConceptMapClient.ENDPOINT_IDLOCATOR));
+    assertEquals(0, hedger.getHedged(ENDPOINT));
+  }
+
+  @Test
+  public void takesTheBackupsAnswerAndAbortsTheSlowCall() throws Exception {
+    warmUp();
+    ScriptedAttempt slow = new ScriptedAttempt(5000, 0);
+    ConceptMapRequest request = newRequest();
+
+    long startMillis = System.currentTimeMillis();
+    ConceptMapResponse response = execute(request, slow);
+    assertTrue(System.currentTimeMillis() - startMillis < 2500);
+
+    assertEquals("backup", body(response));
+    assertTrue(request.isAborted());
+    assertEquals(1, slow.backups.size());
+    assertFalse(slow.backups.get(0).isAborted());
+    assertEquals(1, hedger.getHedged(ENDPOINT));
+    assertEquals(1, hedger.getWon(ENDPOINT));
+  }
+
+  @Test
+  public void takesTheCallsAnswerAndAbortsTheBackup() throws Exception {
+    warmUp();
+    ScriptedAttempt slowBackup = new ScriptedAttempt(200, 5000);
+    ConceptMapRequest request = newRequest();
+
+    assertEquals("primary", body(execute(request, slowBackup)));
+    assertFalse(request.isAborted());
+    assertEquals(1, slowBackup.backups.size());
+    slowBackup.backupsDone.await(5, TimeUnit.SECONDS);
+    assertTrue(slowBackup.backups.get(0).isAborted());
+    assertEquals(1, hedger.getHedged(ENDPOINT));
+    assertEquals(0, hedger.getWon(ENDPOINT));
+  }
+
+  @Test
+  public void fallsBackToTheBackupWhenTheCallFails() throws Exception {
+    warmUp();
+    ScriptedAttempt failing = new ScriptedAttempt(200, 400);
+    failing.primaryFails = true;
+
+    assertEquals("backup", body(execute(newRequest(), failing)));
+    assertEquals(1, hedger.getWon(ENDPOINT));
+  }
+
+  @Test
+  public void failsACallThatFailsBeforeItIsHedged() throws Exception {
+    warmUp();
+    ScriptedAttempt failing = new ScriptedAttempt(0, 0);
+    failing.primaryFails = true;
+
+    try {
+      execute(newRequest(), failing);
+      fail("The call failed with nothing to fall back on");
+    } catch (IOException e) {
+      assertEquals("Server returned HTTP 500", e.getMessage());
+    }
+    assertEquals(0, hedger.getHedged(ENDPOINT));
+  }
+
+  @Test
+  public void stopsHedgingWhenTheBudgetIsUsedUp() throws Exception {
+    config.setHedgeBudgetPercent(0);
+    warmUp();
+    // No budget is earned, so only the allowance for bursts is left
+    for (int i = 0; i < 10; i++) {
+      assertEquals("backup", body(execute(newRequest(), new ScriptedAttempt(5000, 0))));
+    }
+
+    ScriptedAttempt unhedged = new ScriptedAttempt(200, 0);
+    assertEquals("primary", body(execute(newRequest(), unhedged)));
+    assertEquals(0, unhedged.backups.size());
+    assertEquals(10, hedger.getHedged(ENDPOINT));
+    assertEquals(1, hedger.getBudgetExhausted(ENDPOINT));
+  }
+
+  @Test
+  public void sendsNoBackupWithoutTimeLeftForIt() throws Exception {
+    warmUp();
+    ScriptedAttempt slow = new ScriptedAttempt(200, 0);
+    ConceptMapRequest request = new ConceptMapRequest("http://conceptmap.cfapps.io/traversal",
+        1000, MIN_DELAY_MILLIS);
+
+    assertEquals("primary", body(execute(request, slow)));
+    assertEquals(0, slow.backups.size());
+  }
+
+  /**
+   * Make enough quick calls that slower ones are hedged after the least delay
+   */
+  private void warmUp() throws IOException {
+    hedger = new Hedger(config);
+    ScriptedAttempt quick = new ScriptedAttempt(0, 0);
+    for (int i = 0; i < 20; i++) {
+      call(quick);
+    }
+  }
+
+  private void call(ScriptedAttempt attempt) throws IOException {
+    execute(newRequest(), attempt).close();
+  }
+
+  private ConceptMapResponse execute(ConceptMapRequest request, ScriptedAttempt attempt)
+      throws IOException {
+    attempt.primaries.add(request);
+    return hedger.execute(ENDPOINT, request, attempt);
+  }
+
+  private static ConceptMapRequest newRequest() {
+    return new ConceptMapRequest("http://conceptmap.cfapps.io/traversal?id=Q615", 1000, 5000);
+  }
+
+  private static String body(ConceptMapResponse response) throws IOException {
+    try {
+      byte[] body = new byte[64];
+      int length = response.getBody().read(body);
+      return new String(body, 0, length, StandardCharsets.UTF_8);
+    } finally {
+      response.close();
+    }
+  }
+
+  /**
+   * Answers the call after one delay and its backup after another, unless the request is
+   * aborted first, as a transport would
+   */
+  private static class ScriptedAttempt implements Hedger.Attempt {
+    private final long primaryMillis;
+    private final long backupMillis;
+    private volatile boolean primaryFails;
+    private final List<ConceptMapRequest> backups = new CopyOnWriteArrayList<>();
+    private final CountDownLatch backupsDone = new CountDownLatch(1);
+    private final Set<ConceptMapRequest> primaries = new CopyOnWriteArraySet<>();
+
+    ScriptedAttempt(long primaryMillis, long backupMillis) {
+      this.primaryMillis = primaryMillis;
+      this.backupMillis = backupMillis;
+    }
+
+    @Override
+    public ConceptMapResponse call(ConceptMapRequest request) throws IOException {
+      // Backups are copies of the call's request
+      boolean primary = primaries.contains(request);
+      if (!primary) {
+        backups.add(request);
+      }
+      final CountDownLatch aborted = new CountDownLatch(1);
+      request.setAbortHandler(new Closeable() {
+        @Override
+        public void close() {
+          aborted.countDown();
+        }
+      });
+      try {
+        if (aborted.await(primary ? primaryMillis : backupMillis, TimeUnit.MILLISECONDS)) {
+          throw new IOException("Aborted");
+        }
+        if (primary && primaryFails) {
+          throw new IOException("Server returned HTTP 500");
+        }
+        return new ConceptMapResponse(200, Collections.<String, String>emptyMap(),
+            new ByteArrayInputStream((primary ? "primary" : "backup")
+                .getBytes(StandardCharsets.UTF_8)), null);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        if (!primary) {
+          backupsDone.countDown();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LabelDictionaryTest {
+  // Sorted differently by their unsigned UTF-8 bytes than by their signed bytes, or than Strings
+  // are by their UTF-16 chars: an accented letter after z, and a letter from the end of the basic
+  // plane before one from beyond it
+  private static final String ACCENTED = "\u00e9ric cantona";
+  private static final String FULLWIDTH = "a\uff41";
+  private static final String SUPPLEMENTARY = "a\ud83d\ude00";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void findsEveryLabelAndAlias() throws Exception {
+    LabelDictionary dictionary = build(
+        "# label\tqid",
+        "Lionel Messi\tQ615",
+        "Leo Messi\tQ615",
+        "\u00c9ric Cantona\tQ182",
+        "Zinedine Zidane\tQ1835",
+        "a\uff21\tQ1",
+        SUPPLEMENTARY + "\tQ2",
+        "lionel   messi\tQ999",
+        "Member of sports team\tP54",
+        "\tQ3");
+
+    assertEquals(6, dictionary.size());
+    assertEquals("Q615", dictionary.lookup("Lionel Messi"));
+    assertEquals("Q615", dictionary.lookup("  leo  MESSI "));
+    assertEquals("Q182", dictionary.lookup(ACCENTED));
+    assertEquals("Q1835", dictionary.lookup("zinedine zidane"));
+    assertEquals("Q1", dictionary.lookup(FULLWIDTH));
+    assertEquals("Q2", dictionary.lookup(SUPPLEMENTARY));
+  }
+
+  @Test
+  public void missesLabelsItDoesNotHold() throws Exception {
+    LabelDictionary dictionary = build(
+        "Lionel Messi\tQ615",
+        ACCENTED + "\tQ182",
+        FULLWIDTH + "\tQ1",
+        SUPPLEMENTARY + "\tQ2");
+
+    for (String label : Arrays.asList("", "a", "aa", "lionel", "lionel messi jr", "zz",
+        "\u00e9", "\u00e9ric cantonas", "a\uff41a", "a\ud83d\ude01", "\uffff")) {
+      assertNull(label, dictionary.lookup(label));
+    }
+  }
+
+  @Test
+  public void findsLabelsAmongManyAcrossTheBasicPlaneAndBeyond() throws Exception {
+    String[] pieces = {"a", "z", " ", "\u00e9", "\u00ff", "\u4e2d", "\uff41", "\ud83d\ude00",
+        "\ud800\udc00"};
+    Random random = new Random(615);
+    Map<String, Integer> qidsByLabel = new LinkedHashMap<>();
+    while (qidsByLabel.size() < 500) {
+      StringBuilder label = new StringBuilder();
+      int length = 1 + random.nextInt(6);
+      for (int i = 0; i < length; i++) {
+        label.append(pieces[random.nextInt(pieces.length)]);
+      }
+      String normalized = LabelDictionary.normalize(label.toString());
+      if (normalized.length() > 0 && !qidsByLabel.containsKey(normalized)) {
+        qidsByLabel.put(normalized, qidsByLabel.size() + 1);
+      }
+    }
+
+    List<String> lines = new ArrayList<>();
+    for (Map.Entry<String, Integer> label : qidsByLabel.entrySet()) {
+      lines.add(label.getKey() + "\tQ" + label.getValue());
+    }
+    LabelDictionary dictionary = build(lines.toArray(new String[lines.size()]));
+
+    assertEquals(qidsByLabel.size(), dictionary.size());
+    for (Map.Entry<String, Integer> label : qidsByLabel.entrySet()) {
+      assertEquals(label.getKey(), "Q" + label.getValue(), dictionary.lookup(label.getKey()));
+      // None of the labels has a q in it
+      assertNull(dictionary.lookup(label.getKey() + "q"));
+    }
+  }
+
+  @Test
+  public void rejectsAnythingElse() throws Exception {
+    File file = folder.newFile("labels.dict");
+    Files.write(file.toPath(), "Lionel Messi\tQ615".getBytes(StandardCharsets.UTF_8));
+    try {
+      LabelDictionary.open(file);
+      fail("A label dump isn't a dictionary");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("is not a label dictionary"));
+    }
+  }
+
+  private LabelDictionary build(String... lines) throws IOException {
+    File dump = folder.newFile();
+    Files.write(dump.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    File dictionaryFile = folder.newFile();
+    LabelDictionaryBuilder.build(dump, dictionaryFile);
+    return LabelDictionary.open(dictionaryFile);
+  }
+}
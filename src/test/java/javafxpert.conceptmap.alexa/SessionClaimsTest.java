@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import com.amazon.speech.speechlet.Session;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SessionClaimsTest {
+  private final Relationship teams = new Relationship("teams", "P54", "f", "has been a member of");
+
+  @Test
+  public void pagesThroughTheLabelsAcrossRequests() {
+    Session session = newSession();
+    SessionClaims answer = new SessionClaims("Lionel Messi", "Q615", teams, Arrays.asList(
+        "FC Barcelona", "Argentina", "Inter Miami", "Paris Saint-Germain", "Newell's"));
+    assertEquals("FC Barcelona,\nArgentina,\n", answer.nextPage(2));
+    assertEquals(3, answer.getRemaining());
+    answer.saveTo(session);
+
+    // Each "more" comes with the attributes the previous response left in the session
+    SessionClaims more = SessionClaims.fromSession(session);
+    assertEquals("Inter Miami,\nParis Saint-Germain,\n", more.nextPage(2));
+    more.saveTo(session);
+
+    SessionClaims last = SessionClaims.fromSession(session);
+    assertEquals(1, last.getRemaining());
+    assertEquals("Newell's,\n", last.nextPage(2));
+    assertEquals(0, last.getRemaining());
+    assertEquals("", last.nextPage(2));
+    assertEquals("Q615", last.getItemId());
+    assertEquals("P54", last.getPropId());
+    assertEquals("f", last.getDirection());
+  }
+
+  @Test
+  public void speaksTheRestWithoutAPageSize() {
+    SessionClaims answer = new SessionClaims("Lionel Messi", "Q615", teams,
+        Arrays.asList("FC Barcelona", "Argentina", "Inter Miami"));
+    assertEquals("FC Barcelona,\n", answer.nextPage(1));
+    assertEquals("Argentina,\n and Inter Miami,\n", answer.nextPage(0));
+    assertEquals(0, answer.getRemaining());
+  }
+
+  @Test
+  public void keepsLabelsApartWhateverTheyHold() {
+    Session session = newSession();
+    new SessionClaims("Lionel Messi", "Q615", teams,
+        Arrays.asList("FC\nBarcelona", "", "Argentina")).saveTo(session);
+
+    assertEquals(Arrays.asList("FC Barcelona", "", "Argentina"),
+        SessionClaims.fromSession(session).getItemLabels());
+
+    new SessionClaims("Lionel Messi", "Q615", teams, Collections.<String>emptyList())
+        .saveTo(session);
+    SessionClaims empty = SessionClaims.fromSession(session);
+    assertEquals(0, empty.getItemLabels().size());
+    assertEquals(0, empty.getRemaining());
+  }
+
+  @Test
+  public void isForTheItemItAnswered() {
+    SessionClaims answer = new SessionClaims("Lionel Messi", "Q615", teams,
+        Collections.singletonList("FC Barcelona"));
+    assertTrue(answer.isFor("lionel messi"));
+    assertFalse(answer.isFor("Zinedine Zidane"));
+    assertFalse(answer.isFor(null));
+  }
+
+  @Test
+  public void findsNothingInANewSession() {
+    assertNull(SessionClaims.fromSession(newSession()));
+  }
+
+  @Test
+  public void forgetsTheAnswerOnceCleared() {
+    Session session = newSession();
+    session.setAttribute("unrelated", "kept");
+    new SessionClaims("Lionel Messi", "Q615", teams,
+        Arrays.asList("FC Barcelona", "Argentina")).saveTo(session);
+
+    SessionClaims.clear(session);
+    assertNull(SessionClaims.fromSession(session));
+    assertEquals(Collections.singletonMap("unrelated", "kept"), session.getAttributes());
+  }
+
+  private static Session newSession() {
+    return Session.builder().withSessionId("test-session").withIsNew(true).build();
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final SingleFlight<String, String> flights = new SingleFlight<>();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void waitersShareTheLeadersLoad() throws Exception {
+    BlockingLoader leader = new BlockingLoader("Q615");
+    Future<String> led = load(leader, 5000);
+    leader.started.await();
+    Future<String> waited = load(new FailingLoader(new IOException("Should not be called")), 5000);
+    awaitCoalesced(1);
+
+    leader.release.countDown();
+    assertEquals("Q615", led.get(5, TimeUnit.SECONDS));
+    assertEquals("Q615", waited.get(5, TimeUnit.SECONDS));
+    assertEquals(1, flights.getLoads());
+    assertEquals(0, flights.getInFlight());
+  }
+
+  @Test
+  public void leaderFailureFailsTheWaiters() throws Exception {
+    BlockingLoader leader = new BlockingLoader(new IOException("Server returned HTTP 500"));
+    Future<String> led = load(leader, 5000);
+    leader.started.await();
+    Future<String> waited = load(new FailingLoader(new IOException("Should not be called")), 5000);
+    awaitCoalesced(1);
+
+    leader.release.countDown();
+    assertFailsWith(led, IOException.class, "Server returned HTTP 500");
+    assertFailsWith(waited, IOException.class, "Server returned HTTP 500");
+    assertEquals(1, flights.getLoads());
+  }
+
+  @Test
+  public void leaderRuntimeExceptionFailsEveryoneWithAnIOException() throws Exception {
+    BlockingLoader leader = new BlockingLoader(new IllegalStateException("Unexpected token"));
+    Future<String> led = load(leader, 5000);
+    leader.started.await();
+    Future<String> waited = load(new FailingLoader(new IOException("Should not be called")), 5000);
+    awaitCoalesced(1);
+
+    leader.release.countDown();
+    assertFailsWith(led, IOException.class, null);
+    assertFailsWith(waited, IOException.class, "Unexpected token");
+  }
+
+  @Test
+  public void waiterRetriesWhenTheLeaderRanOutOfItsOwnTime() throws Exception {
+    BlockingLoader leader = new BlockingLoader(new DeadlineExceededException("Budget exhausted"));
+    Future<String> led = load(leader, 5000);
+    leader.started.await();
+    CountingLoader retry = new CountingLoader("Q615");
+    Future<String> waited = load(retry, 5000);
+    awaitCoalesced(1);
+
+    leader.release.countDown();
+    assertFailsWith(led, DeadlineExceededException.class, "Budget exhausted");
+    assertEquals("Q615", waited.get(5, TimeUnit.SECONDS));
+    assertEquals(1, retry.calls.get());
+    assertEquals(2, flights.getLoads());
+  }
+
+  @Test
+  public void waiterGivesUpAtItsOwnDeadline() throws Exception {
+    BlockingLoader leader = new BlockingLoader("Q615");
+    Future<String> led = load(leader, 5000);
+    leader.started.await();
+    Future<String> waited = load(new FailingLoader(new IOException("Should not be called")), 50);
+
+    assertFailsWith(waited, DeadlineExceededException.class, null);
+    leader.release.countDown();
+    assertEquals("Q615", led.get(5, TimeUnit.SECONDS));
+  }
+
+  private Future<String> load(final StaleWhileRevalidateCache.Loader<String, String> loader,
+                              final long budgetMillis) {
+    return executor.submit(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return flights.load("key", loader, new Deadline(budgetMillis));
+      }
+    });
+  }
+
+  private void awaitCoalesced(long coalesced) throws InterruptedException {
+    long giveUpAt = System.currentTimeMillis() + 5000;
+    while (flights.getCoalesced() < coalesced) {
+      assertTrue("Waiter never joined the load", System.currentTimeMillis() < giveUpAt);
+      Thread.sleep(5);
+    }
+    // Joined the load, give it a moment to start waiting on it
+    Thread.sleep(20);
+  }
+
+  private static void assertFailsWith(Future<String> future, Class<? extends Exception> type,
+                                      String message) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("Expected " + type.getSimpleName());
+    } catch (ExecutionException e) {
+      assertEquals(type, e.getCause().getClass());
+      if (message != null) {
+        assertEquals(message, e.getCause().getMessage());
+      }
+    }
+  }
+
+  /**
+   * Answers, or fails, once released
+   */
+  private static class BlockingLoader implements StaleWhileRevalidateCache.Loader<String, String> {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final String value;
+    private final Exception failure;
+
+    BlockingLoader(String value) {
+      this.value = value;
+      this.failure = null;
+    }
+
+    BlockingLoader(Exception failure) {
+      this.value = null;
+      this.failure = failure;
+    }
+
+    @Override
+    public String load(String key) throws IOException {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      }
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      return value;
+    }
+  }
+
+  private static class CountingLoader implements StaleWhileRevalidateCache.Loader<String, String> {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final String value;
+
+    CountingLoader(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public String load(String key) {
+      calls.incrementAndGet();
+      return value;
+    }
+  }
+
+  private static class FailingLoader implements StaleWhileRevalidateCache.Loader<String, String> {
+    private final IOException failure;
+
+    FailingLoader(IOException failure) {
+      this.failure = failure;
+    }
+
+    @Override
+    public String load(String key) throws IOException {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class StaleWhileRevalidateCacheTest {
+  private static final StaleWhileRevalidateCache.Weigher<String> LENGTH =
+      new StaleWhileRevalidateCache.Weigher<String>() {
+        @Override
+        public long weigh(String value) {
+          return value.length();
+        }
+      };
+
+  private final QueueingExecutor refreshExecutor = new QueueingExecutor();
+  private final CountingLoader refreshLoader = new CountingLoader("refreshed");
+
+  @Test
+  public void answersFreshEntriesWithoutLoading() throws Exception {
+    StaleWhileRevalidateCache<String, String> cache = newCache(60000, 60000, 1000);
+    CountingLoader loader = new CountingLoader("loaded");
+
+    assertEquals("loaded", cache.get("Q615", loader));
+    assertEquals("loaded", cache.get("Q615", loader));
+    assertEquals(1, loader.calls.get());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+    assertEquals(0, refreshExecutor.tasks.size());
+  }
+
+  @Test
+  public void servesStaleEntriesWhileRefreshingThemOnce() throws Exception {
+    StaleWhileRevalidateCache<String, String> cache = newCache(0, 60000, 1000);
+    cache.put("Q615", "stale");
+    CountingLoader loader = new CountingLoader("loaded");
+
+    assertEquals("stale", cache.get("Q615", loader));
+    assertEquals("stale", cache.get("Q615", loader));
+    assertEquals(0, loader.calls.get());
+    assertEquals(2, cache.getStaleHits());
+    // However many requests see it stale, it's refreshed once
+    assertEquals(1, refreshExecutor.tasks.size());
+
+    refreshExecutor.runAll();
+    assertEquals(1, refreshLoader.calls.get());
+    assertEquals(1, cache.getRefreshes());
+    assertEquals("refreshed", cache.getIfPresent("Q615"));
+    // Refreshed, and stale again straight away, so the next request refreshes it again
+    assertEquals("refreshed", cache.get("Q615", loader));
+    assertEquals(1, refreshExecutor.tasks.size());
+  }
+
+  @Test
+  public void keepsTheStaleEntryWhenItsRefreshFails() throws Exception {
+    StaleWhileRevalidateCache<String, String> cache = new StaleWhileRevalidateCache<>(0, 60000,
+        1000, LENGTH, new FailingLoader(), refreshExecutor);
+    cache.put("Q615", "stale");
+
+    assertEquals("stale", cache.get("Q615", new CountingLoader("loaded")));
+    refreshExecutor.runAll();
+    assertEquals(1, cache.getRefreshFailures());
+    assertEquals("stale", cache.get("Q615", new CountingLoader("loaded")));
+    assertEquals(1, refreshExecutor.tasks.size());
+  }
+
+  @Test
+  public void makesTheCallerLoadAnEntryTooStaleToServe() throws Exception {
+    StaleWhileRevalidateCache<String, String> cache = newCache(0, 0, 1000);
+    cache.put("Q615", "too stale");
+    CountingLoader loader = new CountingLoader("loaded");
+
+    assertEquals("loaded", cache.get("Q615", loader));
+    assertEquals(1, loader.calls.get());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0, refreshExecutor.tasks.size());
+  }
+
+  @Test
+  public void failsWhenTheCallersLoadFails() throws Exception {
+    StaleWhileRevalidateCache<String, String> cache = newCache(60000, 60000, 1000);
+    try {
+      cache.get("Q615", new FailingLoader());
+      fail("Nothing cached to fall back on");
+    } catch (IOException e) {
+      assertEquals("Server returned HTTP 500", e.getMessage());
+    }
+    assertNull(cache.getIfPresent("Q615"));
+    assertEquals(-1, cache.getAgeMillis("Q615"));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedEntriesOverTheWeightCap() throws Exception {
+    StaleWhileRevalidateCache<String, String> cache = newCache(60000, 60000, 10);
+    cache.put("Q1", "aaaa");
+    cache.put("Q2", "bbbb");
+    // Reading an entry makes it the most recently used
+    assertEquals("aaaa", cache.get("Q1", new FailingLoader()));
+    cache.put("Q3", "cccc");
+
+    assertEquals(2, cache.size());
+    assertEquals(8, cache.getWeight());
+    assertEquals(1, cache.getEvictions());
+    assertNull(cache.getIfPresent("Q2"));
+
+    // Replacing an entry reweighs it
+    cache.put("Q1", "a");
+    assertEquals(5, cache.getWeight());
+    // A value heavier than the whole cache isn't kept, and doesn't evict anything
+    cache.put("Q4", "dddddddddddd");
+    assertNull(cache.getIfPresent("Q4"));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void forgetsARejectedRefresh() throws Exception {
+    final AtomicInteger rejected = new AtomicInteger();
+    StaleWhileRevalidateCache<String, String> cache = new StaleWhileRevalidateCache<>(0, 60000,
+        1000, LENGTH, refreshLoader, new Executor() {
+          @Override
+          public void execute(Runnable task) {
+            if (rejected.getAndIncrement() == 0) {
+              throw new RejectedExecutionException("Queue full");
+            }
+            refreshExecutor.execute(task);
+          }
+        });
+    cache.put("Q615", "stale");
+
+    assertEquals("stale", cache.get("Q615", new FailingLoader()));
+    assertEquals(0, refreshExecutor.tasks.size());
+    // The rejected refresh isn't left marked as in progress
+    assertEquals("stale", cache.get("Q615", new FailingLoader()));
+    assertEquals(1, refreshExecutor.tasks.size());
+  }
+
+  private StaleWhileRevalidateCache<String, String> newCache(long freshMillis,
+                                                            long maxStaleMillis,
+                                                            long maxWeight) {
+    return new StaleWhileRevalidateCache<>(freshMillis, maxStaleMillis, maxWeight, LENGTH,
+        refreshLoader, refreshExecutor);
+  }
+
+  /**
+   * Holds on to background refreshes until the test runs them
+   */
+  private static class QueueingExecutor implements Executor {
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      List<Runnable> queued = new ArrayList<>(tasks);
+      tasks.clear();
+      for (Runnable task : queued) {
+        task.run();
+      }
+    }
+  }
+
+  private static class CountingLoader implements StaleWhileRevalidateCache.Loader<String, String> {
+    private final String value;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    CountingLoader(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public String load(String key) {
+      calls.incrementAndGet();
+      return value;
+    }
+  }
+
+  private static class FailingLoader implements StaleWhileRevalidateCache.Loader<String, String> {
+
+    @Override
+    public String load(String key) throws IOException {
+      throw new IOException("Server returned HTTP 500");
+    }
+  }
+}
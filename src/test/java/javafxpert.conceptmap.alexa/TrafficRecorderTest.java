@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TrafficRecorderTest {
+  private static final String URL = "http://conceptmap.cfapps.io/traversal?id=Q615";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTripsEnvelopesAndUpstreamResponses() throws Exception {
+    File file = folder.newFile("traffic.cmrc");
+    byte[] envelope = "{\"version\":\"1.0\"}".getBytes(StandardCharsets.UTF_8);
+    byte[] body = "{\"items\":[]}".getBytes(StandardCharsets.UTF_8);
+    Map<String, String> headers = new HashMap<>();
+    headers.put("Content-Type", "application/json");
+    headers.put("ETag", "\"5e1f\"");
+    headers.put("Set-Cookie", "session=1");
+
+    TrafficRecorder recorder = new TrafficRecorder(file, 16, 5000);
+    recorder.recordEnvelope(envelope);
+    recorder.recordUpstream(URL, 200, headers, 1234, body);
+    recorder.recordUpstream(URL, 0, null, 56, "Read timed out".getBytes(StandardCharsets.UTF_8));
+    assertTrue(recorder.flush());
+    recorder.close();
+    assertEquals(3, recorder.getRecords());
+    assertEquals(file.length(), recorder.getBytesWritten());
+
+    List<TrafficRecorder.Record> records = read(file);
+    assertEquals(3, records.size());
+
+    TrafficRecorder.Record recordedEnvelope = records.get(0);
+    assertTrue(recordedEnvelope.isEnvelope());
+    assertNull(recordedEnvelope.getUrl());
+    assertArrayEquals(envelope, recordedEnvelope.getBody());
+
+    TrafficRecorder.Record upstream = records.get(1);
+    assertFalse(upstream.isEnvelope());
+    assertEquals(URL, upstream.getUrl());
+    assertEquals(200, upstream.getStatusCode());
+    assertEquals(1234, upstream.getElapsedMicros());
+    assertArrayEquals(body, upstream.getBody());
+    // Only the headers the client reads are recorded
+    assertEquals(2, upstream.getHeaders().size());
+    assertEquals("application/json", upstream.getHeaders().get("content-type"));
+    assertEquals("\"5e1f\"", upstream.getHeaders().get("ETag"));
+
+    TrafficRecorder.Record failed = records.get(2);
+    assertEquals(0, failed.getStatusCode());
+    assertEquals(0, failed.getHeaders().size());
+    assertEquals("Read timed out", new String(failed.getBody(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void laterRecordersAppendToTheFile() throws Exception {
+    File file = folder.newFile("traffic.cmrc");
+    for (int i = 0; i < 2; i++) {
+      TrafficRecorder recorder = new TrafficRecorder(file, 16, 5000);
+      recorder.recordEnvelope(new byte[] {(byte) i});
+      recorder.close();
+    }
+
+    List<TrafficRecorder.Record> records = read(file);
+    assertEquals(2, records.size());
+    assertArrayEquals(new byte[] {0}, records.get(0).getBody());
+    assertArrayEquals(new byte[] {1}, records.get(1).getBody());
+  }
+
+  @Test
+  public void ignoresATruncatedLastBlock() throws Exception {
+    File file = folder.newFile("traffic.cmrc");
+    TrafficRecorder recorder = new TrafficRecorder(file, 16, 5000);
+    recorder.recordEnvelope("first".getBytes(StandardCharsets.UTF_8));
+    assertTrue(recorder.flush());
+    long firstBlockEnd = file.length();
+    recorder.recordEnvelope("second".getBytes(StandardCharsets.UTF_8));
+    assertTrue(recorder.flush());
+    recorder.close();
+    long secondBlockEnd = file.length();
+    assertTrue(secondBlockEnd > firstBlockEnd + 2);
+
+    // Cut the second block short in its deflated records, then in its lengths
+    for (long length : new long[] {secondBlockEnd - 1, firstBlockEnd + 1}) {
+      try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+        truncated.setLength(length);
+      }
+      List<TrafficRecorder.Record> records = read(file);
+      assertEquals("Records left at length " + length, 1, records.size());
+      assertEquals("first", new String(records.get(0).getBody(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void rejectsAnythingElse() throws Exception {
+    try {
+      TrafficRecorder.read(ascii("CMAS\u0001"));
+      fail("A snapshot isn't a recording");
+    } catch (IOException e) {
+      assertEquals("Not a ConceptMap traffic recording", e.getMessage());
+    }
+    try {
+      TrafficRecorder.read(ascii("CMRC\u0002"));
+      fail("A later version should be unreadable");
+    } catch (IOException e) {
+      assertEquals("Unsupported recording version 2", e.getMessage());
+    }
+  }
+
+  @Test
+  public void dropsRecordsOnceWritingFails() throws Exception {
+    File directory = folder.newFolder("unwritable");
+    // The writer can't open a directory, so it gives up and nothing is left to wait for
+    TrafficRecorder recorder = new TrafficRecorder(directory, 1, 5000);
+    recorder.recordEnvelope(new byte[] {1});
+    recorder.recordEnvelope(new byte[] {2});
+    assertFalse(recorder.flush());
+    recorder.close();
+    assertEquals(0, recorder.getRecords());
+    assertEquals(2, recorder.getDropped());
+  }
+
+  private static InputStream ascii(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static List<TrafficRecorder.Record> read(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return TrafficRecorder.read(in);
+    }
+  }
+}
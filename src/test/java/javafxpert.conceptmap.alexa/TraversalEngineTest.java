@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package javafxpert.conceptmap.alexa;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraversalEngineTest {
+  private static final String PICTURE = "http://commons.wikimedia.org/wiki/Special:FilePath/Q1.jpg";
+
+  private final Relationship teammates =
+      new Relationship("teammates", "P54/P54", "f/r", "has played alongside");
+  // Q1 has played for three teams, two of which Q3 has also played for
+  private final Map<String, List<String>> related = new HashMap<>();
+  private final ConcurrentMap<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+  private final ConceptMapMetrics metrics = new ConceptMapMetrics();
+  private ConceptMapClientConfig config;
+  private ConceptMapClient conceptMapClient;
+  private TraversalEngine traversalEngine;
+
+  @Before
+  public void setUp() {
+    related.put("Q1", Arrays.asList("Q10", "Q11", "Q12"));
+    related.put("Q10", Arrays.asList("Q2", "Q3", "Q1"));
+    related.put("Q11", Arrays.asList("Q3", "Q1", "Q4"));
+    related.put("Q12", Collections.singletonList("Q5"));
+    config = new ConceptMapClientConfig();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (traversalEngine != null) {
+      traversalEngine.shutdown();
+    }
+    if (conceptMapClient != null) {
+      conceptMapClient.close();
+    }
+  }
+
+  @Test
+  public void findsEachRelatedItemOnce() throws Exception {
+    ClaimsInfo teammatesOfQ1 = traverse("Q1");
+
+    assertEquals(Arrays.asList("Item 2", "Item 3", "Item 4", "Item 5"),
+        sorted(teammatesOfQ1.getItemLabels()));
+    assertEquals(PICTURE, teammatesOfQ1.getPictureUrl());
+    assertEquals(4, fetches());
+  }
+
+  @Test
+  public void fetchesNoMoreThanMaxNodesItems() throws Exception {
+    config.setTraversalMaxNodes(3);
+    ClaimsInfo teammatesOfQ1 = traverse("Q1");
+
+    // Q1 and two of its teams
+    assertEquals(3, fetches());
+    assertEquals(0, fetches.get("Q12") != null ? fetches.get("Q12").get() : 0);
+    assertEquals(Arrays.asList("Item 2", "Item 3", "Item 4"),
+        sorted(teammatesOfQ1.getItemLabels()));
+  }
+
+  @Test
+  public void stopsOnceItHasFoundMaxLabels() throws Exception {
+    config.setMaxLabels(2);
+    config.setTraversalParallelism(1);
+    ClaimsInfo teammatesOfQ1 = traverse("Q1");
+
+    assertEquals(Arrays.asList("Item 2", "Item 3"), teammatesOfQ1.getItemLabels());
+    assertEquals(2, fetches());
+    assertEquals(1, metrics.getCount("traversal.earlyStop"));
+  }
+
+  @Test
+  public void answersWithTheItemsItCouldFetch() throws Exception {
+    related.remove("Q11");
+    ClaimsInfo teammatesOfQ1 = traverse("Q1");
+
+    assertEquals(Arrays.asList("Item 2", "Item 3", "Item 5"),
+        sorted(teammatesOfQ1.getItemLabels()));
+  }
+
+  @Test
+  public void failsWhenAHopCouldFetchNothing() throws Exception {
+    related.remove("Q10");
+    related.remove("Q11");
+    related.remove("Q12");
+    try {
+      traverse("Q1");
+      fail("No team could be fetched");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Server returned HTTP response code"));
+    }
+  }
+
+  @Test
+  public void answersARepeatQuestionFromTheClaimsCache() throws Exception {
+    ClaimsInfo first = traverse("Q1");
+    ClaimsInfo second = traverseAgain("Q1");
+
+    assertEquals(first.getItemLabels(), second.getItemLabels());
+    assertEquals(4, fetches());
+    assertEquals(1, metrics.getCount("traversal.cached"));
+  }
+
+  @Test
+  public void refusesRelationshipsDeeperThanMaxDepth() throws Exception {
+    config.setTraversalMaxDepth(1);
+    try {
+      traverse("Q1");
+      fail("Teammates take two hops");
+    } catch (IOException e) {
+      assertEquals("Relationship teammates takes 2 hops, more than traversalMaxDepth 1",
+          e.getMessage());
+    }
+    assertEquals(0, fetches());
+  }
+
+  private ClaimsInfo traverse(String itemId) throws IOException {
+    conceptMapClient = new ConceptMapClient(config, new StubTransport(), null);
+    traversalEngine = new TraversalEngine(conceptMapClient, metrics);
+    return traverseAgain(itemId);
+  }
+
+  private ClaimsInfo traverseAgain(String itemId) throws IOException {
+    return traversalEngine.traverse(itemId, teammates, new Deadline(5000), 0);
+  }
+
+  private int fetches() {
+    int total = 0;
+    for (AtomicInteger itemFetches : fetches.values()) {
+      total += itemFetches.get();
+    }
+    return total;
+  }
+
+  private static List<String> sorted(List<String> labels) {
+    List<String> sorted = new ArrayList<>(labels);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Answers each traversal with the item's related items, labelled "Item" and their number, and
+   * fails for items it has none for. Only Q1 has a picture.
+   */
+  private class StubTransport implements ConceptMapTransport {
+
+    @Override
+    public ConceptMapResponse execute(ConceptMapRequest request) throws IOException {
+      String url = request.getUrl();
+      String itemId = url.substring(url.indexOf("?id=") + 4, url.indexOf('&'));
+      fetches.putIfAbsent(itemId, new AtomicInteger());
+      fetches.get(itemId).incrementAndGet();
+      if (!related.containsKey(itemId)) {
+        return new ConceptMapResponse(500, Collections.<String, String>emptyMap(),
+            new ByteArrayInputStream(new byte[0]), null);
+      }
+
+      StringBuilder body = new StringBuilder("{\"item\":[{\"id\":\"").append(itemId).append('"');
+      if ("Q1".equals(itemId)) {
+        body.append(",\"picture\":\"").append(PICTURE).append('"');
+      }
+      body.append('}');
+      for (String relatedId : related.get(itemId)) {
+        body.append(",{\"id\":\"").append(relatedId)
+            .append("\",\"label\":\"Item ").append(relatedId.substring(1)).append("\"}");
+      }
+      body.append("]}");
+      return new ConceptMapResponse(200,
+          Collections.singletonMap("Content-Type", "application/json"),
+          new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    @Override
+    public int prewarm(String url, int connections, int connectTimeoutMillis) {
+      return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}